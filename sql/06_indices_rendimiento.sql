@@ -0,0 +1,23 @@
+-- ============================================
+-- SISTEMA DE GESTIÓN DE VENTAS - COZY BOOKS
+-- Paso 7: Índices de Rendimiento
+-- Base de Datos: MySQL 8.0
+-- ============================================
+
+USE cozy_books;
+
+-- ============================================
+-- PAGINACIÓN DEL CATÁLOGO
+-- ============================================
+-- LibroRepository.listarPagina() recorre el catálogo por
+-- (tipo_libro, titulo, id_libro); InnoDB agrega la clave primaria
+-- al final del índice secundario, por lo que cada página es un
+-- rango del índice en lugar de un recorrido completo de la tabla.
+CREATE INDEX idx_libro_tipo_titulo ON LIBRO (tipo_libro, titulo);
+
+-- ============================================
+-- PAGINACIÓN DE VENTAS
+-- ============================================
+-- VentaRepository.listarPagina() recorre (fecha, id_venta) en orden
+-- descendente; idx_venta_fecha (fecha) ya incluye id_venta como
+-- clave primaria implícita, por lo que no requiere un índice nuevo.
@@ -0,0 +1,36 @@
+-- ============================================
+-- SISTEMA DE GESTIÓN DE VENTAS - COZY BOOKS
+-- Paso 8: Reservas de Stock
+-- Base de Datos: MySQL 8.0
+-- ============================================
+
+USE cozy_books;
+
+-- ============================================
+-- TABLA: RESERVA_STOCK
+-- ============================================
+-- Al agregar un libro físico al carrito se descuenta su stock con
+-- "UPDATE LIBRO ... WHERE stock >= ?" y se registra aquí la reserva.
+-- Si la venta se confirma la reserva se consume; si se cancela, o vence
+-- sin confirmarse, se elimina y la cantidad vuelve a LIBRO.stock.
+-- Eliminar la fila es lo que decide quién devuelve el stock, por lo que
+-- la cancelación y el liberador de vencidas nunca lo reponen dos veces.
+CREATE TABLE RESERVA_STOCK (
+    id_reserva INT AUTO_INCREMENT PRIMARY KEY,
+    cantidad INT NOT NULL CHECK (cantidad > 0),
+    creada_en TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    vence_en TIMESTAMP NOT NULL,
+
+    -- Clave foránea
+    id_libro INT NOT NULL,
+
+    INDEX idx_reserva_vence (vence_en),
+    INDEX idx_reserva_libro (id_libro),
+
+    CONSTRAINT fk_reserva_libro
+        FOREIGN KEY (id_libro)
+        REFERENCES LIBRO(id_libro)
+        ON DELETE CASCADE
+        ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+COMMENT = 'Stock retenido por carritos en curso hasta que la venta se confirma, se cancela o vence';
@@ -0,0 +1,37 @@
+-- ============================================
+-- SISTEMA DE GESTIÓN DE VENTAS - COZY BOOKS
+-- Paso 9: Stock en Memoria (días de alta demanda)
+-- Base de Datos: MySQL 8.0
+-- ============================================
+
+USE cozy_books;
+
+-- ============================================
+-- TABLA: DIARIO_STOCK
+-- ============================================
+-- Con el stock en memoria activo (ver StockEnMemoria) las variaciones
+-- de stock se escriben primero en un diario local y se vuelcan a
+-- LIBRO.stock por lotes. Cada volcado guarda, en la misma transacción,
+-- la última secuencia del diario que incluye; al recuperar el diario
+-- tras una caída solo se reaplican los registros posteriores, así un
+-- volcado que llegó a confirmarse nunca se aplica dos veces.
+CREATE TABLE DIARIO_STOCK (
+    id_diario INT PRIMARY KEY,
+    ultima_secuencia BIGINT NOT NULL,
+    actualizado_en TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+COMMENT = 'Última secuencia del diario local de stock ya volcada a LIBRO.stock';
+
+-- ============================================
+-- TABLA: DIARIO_STOCK_TRANSACCION
+-- ============================================
+-- Las variaciones hechas dentro de una transacción (por ejemplo una venta)
+-- se escriben en el diario antes del commit, marcadas con un identificador
+-- que se inserta aquí en la misma transacción. Al recuperar el diario solo
+-- se reaplican las de transacciones con marca; el volcado que las lleva a
+-- LIBRO.stock borra la marca en su misma transacción.
+CREATE TABLE DIARIO_STOCK_TRANSACCION (
+    id_transaccion BIGINT PRIMARY KEY,
+    creado_en TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+COMMENT = 'Transacciones confirmadas cuyas variaciones del diario de stock aún no se volcaron';
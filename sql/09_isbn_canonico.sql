@@ -0,0 +1,42 @@
+-- ============================================
+-- SISTEMA DE GESTIÓN DE VENTAS - COZY BOOKS
+-- Paso 10: ISBN canónico único
+-- Base de Datos: MySQL 8.0
+-- ============================================
+
+USE cozy_books;
+
+-- ============================================
+-- COLUMNA: LIBRO.isbn_canonico
+-- ============================================
+-- El ISBN se guarda tal como se escribió ("978-0307474728", "0307474720"),
+-- así que la restricción UNIQUE de LIBRO.isbn no detecta el mismo libro
+-- escrito de otra forma. isbn_canonico guarda su forma ISBN-13 de 13
+-- dígitos sin guiones (ver Isbn.canonizar), o NULL si el ISBN no es
+-- válido; la aplicación la completa al registrar y actualizar libros, y
+-- la unicidad y las búsquedas por ISBN se hacen sobre esta columna.
+ALTER TABLE LIBRO ADD COLUMN isbn_canonico CHAR(13) NULL AFTER isbn;
+
+-- Completar los libros existentes: sin guiones ni espacios...
+UPDATE LIBRO SET isbn_canonico = REPLACE(REPLACE(isbn, '-', ''), ' ', '')
+WHERE isbn IS NOT NULL;
+
+-- ...descartando lo que no tiene forma de ISBN-10 ni de ISBN-13...
+UPDATE LIBRO SET isbn_canonico = NULL
+WHERE isbn_canonico NOT REGEXP '^([0-9]{13}|[0-9]{9}[0-9Xx])$';
+
+-- ...y pasando los ISBN-10 a ISBN-13: prefijo 978, los primeros 9 dígitos
+-- y un nuevo dígito de control (pesos 1 y 3 alternados; 38 = 9 + 7*3 + 8)
+UPDATE LIBRO SET isbn_canonico = CONCAT('978', LEFT(isbn_canonico, 9),
+    (10 - (38 + 3 * SUBSTRING(isbn_canonico, 1, 1) + SUBSTRING(isbn_canonico, 2, 1)
+              + 3 * SUBSTRING(isbn_canonico, 3, 1) + SUBSTRING(isbn_canonico, 4, 1)
+              + 3 * SUBSTRING(isbn_canonico, 5, 1) + SUBSTRING(isbn_canonico, 6, 1)
+              + 3 * SUBSTRING(isbn_canonico, 7, 1) + SUBSTRING(isbn_canonico, 8, 1)
+              + 3 * SUBSTRING(isbn_canonico, 9, 1)) % 10) % 10)
+WHERE CHAR_LENGTH(isbn_canonico) = 10;
+
+-- Si este índice falla por duplicados, hay libros cargados dos veces con el
+-- ISBN escrito de distinta forma; se listan con:
+--   SELECT isbn_canonico, GROUP_CONCAT(id_libro) FROM LIBRO
+--   WHERE isbn_canonico IS NOT NULL GROUP BY isbn_canonico HAVING COUNT(*) > 1;
+ALTER TABLE LIBRO ADD UNIQUE INDEX uq_libro_isbn_canonico (isbn_canonico);
@@ -1,7 +1,17 @@
 package com.cozybooks;
 
 import com.cozybooks.view.MenuView;
+import com.cozybooks.repository.AutorRepository;
+import com.cozybooks.repository.EscritorVentas;
+import com.cozybooks.repository.LibroRepository;
+import com.cozybooks.repository.ReservaStockRepository;
+import com.cozybooks.repository.StockEnMemoria;
+import com.cozybooks.repository.VentaRepository;
+import com.cozybooks.util.ArchivoTickets;
 import com.cozybooks.util.DBConnection;
+import com.cozybooks.util.GeneradorTicketAsincrono;
+
+import java.sql.SQLException;
 
 /**
  * Clase principal de la aplicación Cozy Books
@@ -14,11 +24,44 @@ public class Main {
         try {
             // Verificar conexión a la base de datos
             System.out.println("Verificando conexión a la base de datos...");
-            DBConnection.getConnection();
+            DBConnection.inicializar();
             
             if (DBConnection.isConnectionActive()) {
                 System.out.println("✓ Conexión a la base de datos establecida correctamente.");
                 
+                // Precargar autores; si falla se consultan directamente en la base de datos
+                try {
+                    AutorRepository.precargarCache();
+                } catch (SQLException e) {
+                    System.out.println("Aviso: No se pudo precargar la caché de autores: " + e.getMessage());
+                }
+                
+                // Índice de búsqueda de libros; si falla, las búsquedas usan LIKE en la base de datos
+                try {
+                    LibroRepository.construirIndiceBusqueda();
+                } catch (SQLException e) {
+                    System.out.println("Aviso: No se pudo construir el índice de búsqueda: " + e.getMessage());
+                }
+                
+                // Stock en memoria para días de alta demanda (-Dcozybooks.stockEnMemoria=true).
+                // Aunque no se active, se reaplica lo que haya quedado en su diario tras una caída.
+                try {
+                    if (Boolean.getBoolean("cozybooks.stockEnMemoria")) {
+                        StockEnMemoria.activar();
+                        System.out.println("Stock en memoria activado.");
+                    } else {
+                        StockEnMemoria.recuperarDiario();
+                    }
+                } catch (SQLException e) {
+                    System.out.println("Aviso: No se pudo preparar el stock en memoria: " + e.getMessage());
+                }
+                
+                // Devuelve al catálogo el stock de carritos abandonados (también los de ejecuciones anteriores)
+                ReservaStockRepository.iniciarLiberador();
+                
+                // Elimina las ventas PENDIENTE que dejaron carritos abandonados
+                VentaRepository.iniciarLimpiezaPendientes();
+                
                 // Iniciar la aplicación
                 MenuView menuView = new MenuView();
                 menuView.iniciar();
@@ -41,6 +84,12 @@ public class Main {
             System.out.println("\nAsegúrese de haber ejecutado los scripts SQL de configuración.");
         } finally {
             // Cerrar conexión
+            EscritorVentas.detenerInstancia();
+            GeneradorTicketAsincrono.detenerInstancia();
+            ArchivoTickets.cerrarInstancia();
+            ReservaStockRepository.detenerLiberador();
+            VentaRepository.detenerLimpiezaPendientes();
+            StockEnMemoria.desactivar();
             DBConnection.closeConnection();
         }
     }
@@ -4,12 +4,17 @@ import com.cozybooks.model.Autor;
 import com.cozybooks.model.Libro;
 import com.cozybooks.repository.AutorRepository;
 import com.cozybooks.repository.LibroRepository;
+import com.cozybooks.repository.Pagina;
+import com.cozybooks.search.AutocompletadoTrie;
+import com.cozybooks.util.Isbn;
 
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Scanner;
 
 public class LibroController {
+    private static final int TAMAÑO_PAGINA = 20;
+
     private LibroRepository libroRepository;
     private AutorRepository autorRepository;
     private Scanner scanner;
@@ -34,6 +39,10 @@ public class LibroController {
             System.out.print("ISBN (opcional): ");
             String isbn = scanner.nextLine().trim();
             if (isbn.isEmpty()) isbn = null;
+            if (isbn != null && !Isbn.esValido(isbn)) {
+                System.out.println("Error: El ISBN no es un ISBN-10 o ISBN-13 válido.");
+                return;
+            }
             
             System.out.print("Editorial: ");
             String editorial = scanner.nextLine().trim();
@@ -261,28 +270,40 @@ public class LibroController {
         try {
             System.out.println("\n=== LISTAR LIBROS ===");
             
-            List<Libro> libros = libroRepository.listar();
+            Pagina<Libro> pagina = libroRepository.listarPagina(null, TAMAÑO_PAGINA);
             
-            if (libros.isEmpty()) {
+            if (pagina.getElementos().isEmpty()) {
                 System.out.println("No hay libros registrados.");
                 return;
             }
             
-            System.out.printf("%-5s %-40s %-20s %-15s %-8s %-10s %-15s %-8s%n", 
-                "ID", "Título", "Autor ID", "Editorial", "Año", "Precio", "Tipo", "Stock");
-            System.out.println("=".repeat(130));
-            
-            for (Libro libro : libros) {
-                System.out.printf("%-5d %-40s %-20d %-15s %-8d %-10.2f %-15s %-8d%n",
-                    libro.getIdLibro(),
-                    libro.getTitulo().length() > 40 ? libro.getTitulo().substring(0, 37) + "..." : libro.getTitulo(),
-                    libro.getIdAutor(),
-                    libro.getEditorial(),
-                    libro.getAño(),
-                    libro.getPrecio(),
-                    libro.getTipoLibro(),
-                    libro.getStock()
-                );
+            while (true) {
+                System.out.printf("%-5s %-40s %-20s %-15s %-8s %-10s %-15s %-8s%n", 
+                    "ID", "Título", "Autor ID", "Editorial", "Año", "Precio", "Tipo", "Stock");
+                System.out.println("=".repeat(130));
+                
+                for (Libro libro : pagina.getElementos()) {
+                    System.out.printf("%-5d %-40s %-20d %-15s %-8d %-10.2f %-15s %-8d%n",
+                        libro.getIdLibro(),
+                        libro.getTitulo().length() > 40 ? libro.getTitulo().substring(0, 37) + "..." : libro.getTitulo(),
+                        libro.getIdAutor(),
+                        libro.getEditorial(),
+                        libro.getAño(),
+                        libro.getPrecio(),
+                        libro.getTipoLibro(),
+                        libro.getStock()
+                    );
+                }
+                
+                if (!pagina.hayMas()) {
+                    break;
+                }
+                
+                System.out.print("\nPresione Enter para ver más libros (q para terminar): ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
+                }
+                pagina = libroRepository.listarPagina(pagina.getTokenSiguiente(), TAMAÑO_PAGINA);
             }
             
         } catch (Exception e) {
@@ -294,7 +315,17 @@ public class LibroController {
         try {
             System.out.println("\n=== BUSCAR LIBRO ===");
             
-            System.out.print("Ingrese criterio de búsqueda (título, ISBN o género): ");
+            System.out.println("Modo de búsqueda:");
+            System.out.println("1. Búsqueda exacta (título, autor, ISBN, género o editorial)");
+            System.out.println("2. Búsqueda aproximada por título o autor (tolera errores de tipeo)");
+            System.out.print("Seleccione (1-2): ");
+            int modo = Integer.parseInt(scanner.nextLine().trim());
+            if (modo != 1 && modo != 2) {
+                System.out.println("Error: Opción inválida.");
+                return;
+            }
+            
+            System.out.print("Ingrese criterio de búsqueda: ");
             String criterio = scanner.nextLine().trim();
             
             if (criterio.isEmpty()) {
@@ -302,7 +333,7 @@ public class LibroController {
                 return;
             }
             
-            List<Libro> libros = libroRepository.buscar(criterio);
+            List<Libro> libros = modo == 1 ? libroRepository.buscar(criterio) : libroRepository.buscarAproximado(criterio);
             
             if (libros.isEmpty()) {
                 System.out.println("No se encontraron libros con el criterio: " + criterio);
@@ -331,6 +362,40 @@ public class LibroController {
         }
     }
 
+    public void autocompletar() {
+        System.out.println("\n=== AUTOCOMPLETAR TÍTULO O AUTOR ===");
+        if (!LibroRepository.autocompletadoDisponible()) {
+            System.out.println("Error: El autocompletado no está disponible. Use la búsqueda de libros.");
+            return;
+        }
+        
+        System.out.println("Escriba el comienzo de un título o autor (Enter vacío para salir).");
+        while (true) {
+            System.out.print("\n> ");
+            String prefijo = scanner.nextLine();
+            if (prefijo.trim().isEmpty()) {
+                return;
+            }
+            
+            long inicio = System.nanoTime();
+            List<AutocompletadoTrie.Sugerencia> sugerencias = libroRepository.sugerir(prefijo);
+            long microsegundos = (System.nanoTime() - inicio) / 1000;
+            
+            if (sugerencias.isEmpty()) {
+                System.out.println("Sin sugerencias.");
+                continue;
+            }
+            for (AutocompletadoTrie.Sugerencia sugerencia : sugerencias) {
+                System.out.printf("  %-8s %-6d %-50s %6d vendidos%n",
+                    sugerencia.esLibro() ? "[Libro]" : "[Autor]",
+                    sugerencia.getId(),
+                    sugerencia.getTexto(),
+                    sugerencia.getVendidos());
+            }
+            System.out.println("(" + sugerencias.size() + " sugerencias en " + microsegundos + " µs)");
+        }
+    }
+
     public void actualizarStock(int idLibro, int cantidad) {
         try {
             libroRepository.actualizarStock(idLibro, cantidad);
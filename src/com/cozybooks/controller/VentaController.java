@@ -3,19 +3,36 @@ package com.cozybooks.controller;
 import com.cozybooks.model.*;
 import com.cozybooks.repository.*;
 import com.cozybooks.util.ArchivoService;
+import com.cozybooks.util.ArchivoTickets;
 import com.cozybooks.util.DBConnection;
+import com.cozybooks.util.GeneradorTicket;
+import com.cozybooks.util.GeneradorTicketAsincrono;
+import com.cozybooks.util.Isbn;
+import com.cozybooks.util.RegeneradorTickets;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 public class VentaController {
+    private static final int TAMAÑO_PAGINA = 20;
+
     private VentaRepository ventaRepository;
     private DetalleVentaRepository detalleVentaRepository;
     private ClienteRepository clienteRepository;
     private LibroRepository libroRepository;
+    private TicketRepository ticketRepository;
+    private ReservaStockRepository reservaStockRepository;
     private Scanner scanner;
 
     public VentaController() {
@@ -23,6 +40,8 @@ public class VentaController {
         this.detalleVentaRepository = new DetalleVentaRepository();
         this.clienteRepository = new ClienteRepository();
         this.libroRepository = new LibroRepository();
+        this.ticketRepository = new TicketRepository();
+        this.reservaStockRepository = new ReservaStockRepository();
         this.scanner = new Scanner(System.in);
     }
 
@@ -41,93 +60,122 @@ public class VentaController {
             
             System.out.println("Cliente seleccionado: " + cliente.getNombre());
             
-            Venta venta = iniciarVenta(idCliente);
+            // El carrito se arma en memoria; la venta se inserta recién al confirmarla
             List<DetalleVenta> detalles = new ArrayList<>();
             List<Libro> libros = new ArrayList<>();
+            List<ReservaStock> reservas = new ArrayList<>();
+            boolean confirmada = false;
             
-            boolean continuar = true;
-            while (continuar) {
-                System.out.print("ID del libro a agregar (0 para finalizar): ");
-                int idLibro = Integer.parseInt(scanner.nextLine().trim());
+            try {
+                boolean continuar = true;
+                while (continuar) {
+                    System.out.print("ID o ISBN del libro a agregar (0 para finalizar): ");
+                    String entrada = scanner.nextLine().trim();
                 
-                if (idLibro == 0) {
-                    continuar = false;
-                    break;
+                    if (entrada.equals("0")) {
+                        continuar = false;
+                        break;
+                    }
+                
+                    // Un ISBN válido (tipeado o leído con el lector de códigos) se resuelve por el índice ISBN
+                    Libro libro;
+                    if (Isbn.esValido(entrada)) {
+                        libro = libroRepository.obtenerPorIsbn(entrada);
+                        if (libro == null) {
+                            System.out.println("Error: No se encontró el libro con ISBN: " + entrada);
+                            continue;
+                        }
+                    } else {
+                        int idLibro = Integer.parseInt(entrada);
+                        libro = libroRepository.obtenerPorId(idLibro);
+                        if (libro == null) {
+                            System.out.println("Error: No se encontró el libro con ID: " + idLibro);
+                            continue;
+                        }
+                    }
+                
+                    System.out.print("Cantidad: ");
+                    int cantidad = Integer.parseInt(scanner.nextLine().trim());
+                
+                    if (cantidad <= 0) {
+                        System.out.println("Error: La cantidad debe ser mayor a 0.");
+                        continue;
+                    }
+                
+                    // El stock de los libros físicos se retiene al agregarlos, no al confirmar
+                    if (libro.getTipoLibro() == Libro.TipoLibro.FISICO) {
+                        ReservaStock reserva = reservaStockRepository.reservar(libro.getIdLibro(), cantidad);
+                        if (reserva == null) {
+                            Libro actual = libroRepository.obtenerPorId(libro.getIdLibro());
+                            System.out.println("Error: Stock insuficiente. Disponible: " +
+                                (actual != null ? actual.getStock() : 0));
+                            continue;
+                        }
+                        reservas.add(reserva);
+                    }
+                
+                    DetalleVenta detalle = new DetalleVenta(cantidad, libro.getPrecio(), 0, libro.getIdLibro());
+                    detalles.add(detalle);
+                    libros.add(libro);
+                
+                    System.out.println("Libro agregado: " + libro.getTitulo() + " x" + cantidad + " = $" + detalle.getSubtotal());
                 }
                 
-                Libro libro = libroRepository.obtenerPorId(idLibro);
-                if (libro == null) {
-                    System.out.println("Error: No se encontró el libro con ID: " + idLibro);
-                    continue;
+                if (detalles.isEmpty()) {
+                    System.out.println("Error: Debe agregar al menos un libro a la venta.");
+                    return;
                 }
                 
-                System.out.print("Cantidad: ");
-                int cantidad = Integer.parseInt(scanner.nextLine().trim());
+                System.out.println("\nResumen de la venta:");
+                BigDecimal total = BigDecimal.ZERO;
+                for (int i = 0; i < detalles.size(); i++) {
+                    DetalleVenta detalle = detalles.get(i);
+                    Libro libro = libros.get(i);
+                    System.out.println("- " + libro.getTitulo() + " x" + detalle.getCantidad() + " = $" + detalle.getSubtotal());
+                    total = total.add(detalle.getSubtotal());
+                }
+                System.out.println("Total: $" + total);
                 
-                if (cantidad <= 0) {
-                    System.out.println("Error: La cantidad debe ser mayor a 0.");
-                    continue;
+                System.out.print("¿Confirmar venta? (s/n): ");
+                String confirmacion = scanner.nextLine().trim().toLowerCase();
+                
+                if (!confirmacion.equals("s") && !confirmacion.equals("si")) {
+                    System.out.println("Venta cancelada.");
+                    return;
                 }
                 
-                if (libro.getTipoLibro() == Libro.TipoLibro.FISICO && libro.getStock() < cantidad) {
-                    System.out.println("Error: Stock insuficiente. Disponible: " + libro.getStock());
-                    continue;
+                System.out.println("Método de pago:");
+                System.out.println("1. Efectivo");
+                System.out.println("2. Tarjeta");
+                System.out.println("3. Transferencia");
+                System.out.print("Seleccione (1-3): ");
+                int metodoOpcion = Integer.parseInt(scanner.nextLine().trim());
+                
+                Venta.MetodoPago metodoPago;
+                switch (metodoOpcion) {
+                    case 1: metodoPago = Venta.MetodoPago.EFECTIVO; break;
+                    case 2: metodoPago = Venta.MetodoPago.TARJETA; break;
+                    case 3: metodoPago = Venta.MetodoPago.TRANSFERENCIA; break;
+                    default:
+                        System.out.println("Error: Opción inválida.");
+                        return;
                 }
                 
-                DetalleVenta detalle = new DetalleVenta(cantidad, libro.getPrecio(), venta.getIdVenta(), idLibro);
-                detalles.add(detalle);
-                libros.add(libro);
+                Venta venta = confirmarVenta(new Venta(idCliente, metodoPago), detalles, reservas, metodoPago);
+                confirmada = true;
                 
-                System.out.println("Libro agregado: " + libro.getTitulo() + " x" + cantidad + " = $" + detalle.getSubtotal());
-            }
-            
-            if (detalles.isEmpty()) {
-                System.out.println("Error: Debe agregar al menos un libro a la venta.");
-                return;
-            }
-            
-            System.out.println("\nResumen de la venta:");
-            BigDecimal total = BigDecimal.ZERO;
-            for (int i = 0; i < detalles.size(); i++) {
-                DetalleVenta detalle = detalles.get(i);
-                Libro libro = libros.get(i);
-                System.out.println("- " + libro.getTitulo() + " x" + detalle.getCantidad() + " = $" + detalle.getSubtotal());
-                total = total.add(detalle.getSubtotal());
-            }
-            System.out.println("Total: $" + total);
-            
-            System.out.print("¿Confirmar venta? (s/n): ");
-            String confirmacion = scanner.nextLine().trim().toLowerCase();
-            
-            if (!confirmacion.equals("s") && !confirmacion.equals("si")) {
-                System.out.println("Venta cancelada.");
-                return;
-            }
-            
-            System.out.println("Método de pago:");
-            System.out.println("1. Efectivo");
-            System.out.println("2. Tarjeta");
-            System.out.println("3. Transferencia");
-            System.out.print("Seleccione (1-3): ");
-            int metodoOpcion = Integer.parseInt(scanner.nextLine().trim());
-            
-            Venta.MetodoPago metodoPago;
-            switch (metodoOpcion) {
-                case 1: metodoPago = Venta.MetodoPago.EFECTIVO; break;
-                case 2: metodoPago = Venta.MetodoPago.TARJETA; break;
-                case 3: metodoPago = Venta.MetodoPago.TRANSFERENCIA; break;
-                default:
-                    System.out.println("Error: Opción inválida.");
-                    return;
+                System.out.println("Venta registrada exitosamente con ID: " + venta.getIdVenta());
+                System.out.println("Total: $" + venta.getMonto());
+                
+                // El carrito ya tiene todo lo que lleva el ticket: se escribe en segundo plano sin volver a consultarlo
+                encolarTicket(new TicketVenta(venta, cliente, detalles, libros));
+            } finally {
+                // Carrito cancelado o con error: el stock retenido vuelve a estar disponible
+                if (!confirmada) {
+                    liberarReservas(reservas);
+                }
             }
             
-            venta = confirmarVenta(venta, detalles, libros, metodoPago);
-            
-            System.out.println("Venta registrada exitosamente con ID: " + venta.getIdVenta());
-            System.out.println("Total: $" + venta.getMonto());
-            
-            generarTicket(venta.getIdVenta());
-            
         } catch (NumberFormatException e) {
             System.out.println("Error: Formato numérico inválido.");
         } catch (Exception e) {
@@ -135,56 +183,22 @@ public class VentaController {
         }
     }
 
-    private Venta iniciarVenta(int idCliente) {
-        Venta venta = new Venta(idCliente, Venta.MetodoPago.EFECTIVO);
-        venta.setFecha(LocalDateTime.now());
-        venta.setMonto(BigDecimal.ZERO);
-        venta.setEstado(Venta.EstadoVenta.PENDIENTE);
-        
+    private Venta confirmarVenta(Venta venta, List<DetalleVenta> detalles, List<ReservaStock> reservas,
+                                 Venta.MetodoPago metodoPago) {
         try {
-            venta = ventaRepository.registrar(venta);
+            // El escritor de ventas confirma esta venta junto con las de otras cajas en una sola transacción
+            return EscritorVentas.getInstance().confirmar(venta, detalles, reservas, metodoPago);
         } catch (Exception e) {
-            System.out.println("Error al iniciar venta: " + e.getMessage());
+            throw new RuntimeException("Error al confirmar venta: " + e.getMessage());
         }
-        
-        return venta;
     }
 
-    private Venta confirmarVenta(Venta venta, List<DetalleVenta> detalles, List<Libro> libros, Venta.MetodoPago metodoPago) {
+    private void liberarReservas(List<ReservaStock> reservas) {
         try {
-            DBConnection.beginTransaction();
-            
-            
-            
-            for (int i = 0; i < detalles.size(); i++) {
-                DetalleVenta detalle = detalles.get(i);
-                Libro libro = libros.get(i);
-                
-                detalleVentaRepository.registrar(detalle);
-                
-                if (libro.getTipoLibro() == Libro.TipoLibro.FISICO) {
-                    libroRepository.actualizarStock(libro.getIdLibro(), -detalle.getCantidad());
-                }
-            }
-
-            BigDecimal total = calcularTotal(detalles);
-            venta.setMonto(total);
-            venta.setMetodoPago(metodoPago);
-            venta.setEstado(Venta.EstadoVenta.COMPLETADA);
-            
-            ventaRepository.actualizar(venta);
-            
-            DBConnection.commitTransaction();
-            
-            return venta;
-            
+            reservaStockRepository.liberar(reservas);
         } catch (Exception e) {
-            try {
-                DBConnection.rollbackTransaction();
-            } catch (Exception rollbackEx) {
-                System.out.println("Error al revertir transacción: " + rollbackEx.getMessage());
-            }
-            throw new RuntimeException("Error al confirmar venta: " + e.getMessage());
+            // Si no se pueden liberar ahora, el liberador de vencidas las devuelve más tarde
+            System.out.println("Error al liberar el stock reservado: " + e.getMessage());
         }
     }
 
@@ -292,13 +306,25 @@ public class VentaController {
                 try {
                     List<DetalleVenta> detalles = detalleVentaRepository.buscarPorVenta(id);
                     
+                    List<Integer> idsLibros = new ArrayList<>();
                     for (DetalleVenta detalle : detalles) {
-                        Libro libro = libroRepository.obtenerPorId(detalle.getIdLibro());
+                        idsLibros.add(detalle.getIdLibro());
+                    }
+                    Map<Integer, Libro> librosVendidos = libroRepository.obtenerPorIds(idsLibros);
+                    
+                    Map<Integer, Integer> devoluciones = new HashMap<>();
+                    for (DetalleVenta detalle : detalles) {
+                        Libro libro = librosVendidos.get(detalle.getIdLibro());
                         if (libro != null && libro.getTipoLibro() == Libro.TipoLibro.FISICO) {
-                            libroRepository.actualizarStock(libro.getIdLibro(), detalle.getCantidad());
+                            devoluciones.merge(libro.getIdLibro(), detalle.getCantidad(), Integer::sum);
                         }
                     }
                     
+                    List<Integer> fallidos = libroRepository.actualizarStockLote(devoluciones);
+                    if (!fallidos.isEmpty()) {
+                        throw new SQLException("No se pudo reponer el stock de los libros con ID: " + fallidos);
+                    }
+                    
                     ventaRepository.eliminar(id);
                     
                     DBConnection.commitTransaction();
@@ -323,29 +349,41 @@ public class VentaController {
         try {
             System.out.println("\n=== LISTAR VENTAS ===");
             
-            List<Venta> ventas = ventaRepository.listar();
+            Pagina<Venta> pagina = ventaRepository.listarPagina(null, TAMAÑO_PAGINA);
             
-            if (ventas.isEmpty()) {
+            if (pagina.getElementos().isEmpty()) {
                 System.out.println("No hay ventas registradas.");
                 return;
             }
             
-            System.out.printf("%-8s %-20s %-8s %-12s %-15s %-15s%n", 
-                "ID", "Fecha", "Cliente", "Monto", "Método Pago", "Estado");
-            System.out.println("=".repeat(80));
-            
-            for (Venta venta : ventas) {
-                BigDecimal monto = venta.getMonto();
-                String montoStr = (monto != null) ? String.format("%.2f", monto) : "0.00";
+            while (true) {
+                System.out.printf("%-8s %-20s %-8s %-12s %-15s %-15s%n", 
+                    "ID", "Fecha", "Cliente", "Monto", "Método Pago", "Estado");
+                System.out.println("=".repeat(80));
                 
-                System.out.printf("%-8d %-20s %-8d %-12s %-15s %-15s%n",
-                    venta.getIdVenta(),
-                    venta.getFecha().toLocalDate().toString(),
-                    venta.getIdCliente(),
-                    montoStr,
-                    venta.getMetodoPago(),
-                    venta.getEstado()
-                );
+                for (Venta venta : pagina.getElementos()) {
+                    BigDecimal monto = venta.getMonto();
+                    String montoStr = (monto != null) ? String.format("%.2f", monto) : "0.00";
+                    
+                    System.out.printf("%-8d %-20s %-8d %-12s %-15s %-15s%n",
+                        venta.getIdVenta(),
+                        venta.getFecha().toLocalDate().toString(),
+                        venta.getIdCliente(),
+                        montoStr,
+                        venta.getMetodoPago(),
+                        venta.getEstado()
+                    );
+                }
+                
+                if (!pagina.hayMas()) {
+                    break;
+                }
+                
+                System.out.print("\nPresione Enter para ver más ventas (q para terminar): ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
+                }
+                pagina = ventaRepository.listarPagina(pagina.getTokenSiguiente(), TAMAÑO_PAGINA);
             }
             
         } catch (Exception e) {
@@ -398,41 +436,137 @@ public class VentaController {
 
     public void generarTicket(int idVenta) {
         try {
-            Venta venta = ventaRepository.obtenerPorId(idVenta);
-            if (venta == null) {
+            TicketVenta ticket = ticketRepository.obtenerPorVenta(idVenta);
+            if (ticket == null) {
                 System.out.println("Error: No se encontró la venta con ID: " + idVenta);
                 return;
             }
             
-            Cliente cliente = clienteRepository.obtenerPorId(venta.getIdCliente());
-            if (cliente == null) {
-                System.out.println("Error: No se encontró el cliente de la venta.");
+            if (ArchivoTickets.estaActivo()) {
+                ArchivoTickets.getInstance().generarTicket(ticket);
+            } else {
+                ArchivoService.generarTicket(ticket);
+            }
+            
+        } catch (Exception e) {
+            System.out.println("Error al generar ticket: " + e.getMessage());
+        }
+    }
+
+    public void regenerarTickets() {
+        try {
+            System.out.println("\n=== REGENERAR TICKETS POR RANGO DE FECHAS ===");
+            
+            LocalDate desde;
+            LocalDate hasta;
+            try {
+                System.out.print("Fecha desde (YYYY-MM-DD): ");
+                desde = LocalDate.parse(scanner.nextLine().trim(), DateTimeFormatter.ISO_LOCAL_DATE);
+                System.out.print("Fecha hasta, incluida (YYYY-MM-DD): ");
+                hasta = LocalDate.parse(scanner.nextLine().trim(), DateTimeFormatter.ISO_LOCAL_DATE);
+            } catch (DateTimeParseException e) {
+                System.out.println("Error: Formato de fecha inválido. Use YYYY-MM-DD");
+                return;
+            }
+            if (hasta.isBefore(desde)) {
+                System.out.println("Error: La fecha hasta no puede ser anterior a la fecha desde.");
                 return;
             }
             
-            List<DetalleVenta> detalles = detalleVentaRepository.buscarPorVenta(idVenta);
-            List<Libro> libros = new ArrayList<>();
+            GeneradorTicket destino = ArchivoTickets.estaActivo() ? ArchivoTickets.getInstance() : ArchivoService.getInstance();
+            RegeneradorTickets regenerador = new RegeneradorTickets(destino);
+            RegeneradorTickets.Resultado resultado;
+            try (Stream<TicketVenta> tickets = ticketRepository.listarPorFechaEnStream(
+                    desde.atStartOfDay(), hasta.plusDays(1).atStartOfDay())) {
+                resultado = regenerador.regenerar(tickets, avance ->
+                    System.out.println("Regenerando... " + avance));
+            }
             
-            for (DetalleVenta detalle : detalles) {
-                Libro libro = libroRepository.obtenerPorId(detalle.getIdLibro());
-                if (libro != null) {
-                    libros.add(libro);
-                }
+            System.out.println("Regeneración finalizada: " + resultado);
+            if (resultado.getPrimerError() != null) {
+                System.out.println("Error en al menos un lote: " + resultado.getPrimerError());
+            }
+            
+        } catch (Exception e) {
+            System.out.println("Error al regenerar tickets: " + e.getMessage());
+        }
+    }
+
+    public void extraerTicketArchivado() {
+        try {
+            System.out.println("\n=== EXTRAER TICKET DEL ARCHIVO ===");
+            System.out.print("ID de la venta: ");
+            int idVenta = Integer.parseInt(scanner.nextLine().trim());
+            
+            Path destino = Paths.get("tickets", "venta_" + idVenta + ".txt");
+            if (!ArchivoTickets.getInstance().extraer(idVenta, destino)) {
+                System.out.println("Error: La venta con ID " + idVenta + " no tiene ticket archivado.");
+                return;
             }
+            System.out.println("Ticket extraído exitosamente: " + destino);
             
-            ArchivoService.generarTicket(venta, cliente, detalles, libros);
+        } catch (NumberFormatException e) {
+            System.out.println("Error: Formato numérico inválido.");
+        } catch (Exception e) {
+            System.out.println("Error al extraer ticket: " + e.getMessage());
+        }
+    }
+
+    public void mantenerArchivoTickets() {
+        try {
+            System.out.println("\n=== MANTENIMIENTO DEL ARCHIVO DE TICKETS ===");
+            ArchivoTickets archivo = ArchivoTickets.getInstance();
+            System.out.println(archivo.reporte());
+            System.out.println("1. Rotar segmento actual");
+            System.out.println("2. Compactar segmentos cerrados");
+            System.out.println("3. Reconstruir índice");
+            System.out.print("Seleccione (1-3): ");
+            int opcion = Integer.parseInt(scanner.nextLine().trim());
             
+            switch (opcion) {
+                case 1:
+                    archivo.rotar();
+                    System.out.println("Segmento rotado exitosamente.");
+                    break;
+                case 2:
+                    long liberados = archivo.compactar();
+                    System.out.println("Archivo compactado exitosamente. Bytes liberados: " + liberados);
+                    break;
+                case 3:
+                    int indexados = archivo.reconstruirIndice();
+                    System.out.println("Índice reconstruido exitosamente. Tickets indexados: " + indexados);
+                    break;
+                default:
+                    System.out.println("Error: Opción inválida.");
+                    return;
+            }
+            System.out.println(archivo.reporte());
+            
+        } catch (NumberFormatException e) {
+            System.out.println("Error: Formato numérico inválido.");
         } catch (Exception e) {
-            System.out.println("Error al generar ticket: " + e.getMessage());
+            System.out.println("Error en el archivo de tickets: " + e.getMessage());
         }
     }
 
-    private BigDecimal calcularTotal(List<DetalleVenta> detalles) {
-        BigDecimal total = BigDecimal.ZERO;
-        for (DetalleVenta detalle : detalles) {
-            total = total.add(detalle.getSubtotal());
+    // Los tickets fallidos no se informan aquí (la escritura termina con el menú ya en pantalla):
+    // quedan en las estadísticas del sistema
+    private void encolarTicket(TicketVenta ticket) {
+        GeneradorTicketAsincrono.getInstance().enviar(ticket);
+    }
+
+    public void exportarDetalles() {
+        try {
+            System.out.println("\n=== EXPORTAR DETALLES DE VENTA ===");
+            
+            try (Stream<DetalleVenta> detalles = detalleVentaRepository.listarEnStream()) {
+                Path archivo = ArchivoService.exportarDetallesVenta(detalles);
+                System.out.println("Detalles exportados exitosamente: " + archivo);
+            }
+            
+        } catch (Exception e) {
+            System.out.println("Error al exportar detalles: " + e.getMessage());
         }
-        return total;
     }
 
     public Venta obtenerVenta(int id) {
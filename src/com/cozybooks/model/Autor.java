@@ -28,6 +28,18 @@ public class Autor {
         this.biografia = biografia;
     }
 
+    /**
+     * Constructor de copia, usado para no compartir instancias guardadas en caché
+     * @param otro el autor a copiar
+     */
+    public Autor(Autor otro) {
+        this.idAutor = otro.idAutor;
+        this.nombre = otro.nombre;
+        this.fechaNacimiento = otro.fechaNacimiento;
+        this.nacionalidad = otro.nacionalidad;
+        this.biografia = otro.biografia;
+    }
+
     // Getters y Setters
     public int getIdAutor() {
         return idAutor;
@@ -29,6 +29,19 @@ public class Cliente {
         this.telefono = telefono;
     }
 
+    /**
+     * Constructor de copia, usado para no compartir instancias guardadas en caché
+     * @param otro el cliente a copiar
+     */
+    public Cliente(Cliente otro) {
+        this.idCliente = otro.idCliente;
+        this.nombre = otro.nombre;
+        this.documento = otro.documento;
+        this.email = otro.email;
+        this.telefono = otro.telefono;
+        this.fechaRegistro = otro.fechaRegistro;
+    }
+
     // Getters y Setters
     public int getIdCliente() {
         return idCliente;
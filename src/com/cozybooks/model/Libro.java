@@ -50,6 +50,31 @@ public class Libro {
         this.idAutor = idAutor;
     }
 
+    /**
+     * Constructor de copia, usado para no compartir instancias guardadas en caché
+     * @param otro el libro a copiar
+     */
+    public Libro(Libro otro) {
+        this.idLibro = otro.idLibro;
+        this.titulo = otro.titulo;
+        this.isbn = otro.isbn;
+        this.editorial = otro.editorial;
+        this.año = otro.año;
+        this.precio = otro.precio;
+        this.genero = otro.genero;
+        this.tipoLibro = otro.tipoLibro;
+        this.stock = otro.stock;
+        this.fechaRegistro = otro.fechaRegistro;
+        this.idAutor = otro.idAutor;
+        this.encuadernado = otro.encuadernado;
+        this.numEdicion = otro.numEdicion;
+        this.extension = otro.extension;
+        this.permisosImpresion = otro.permisosImpresion;
+        this.duracion = otro.duracion;
+        this.plataforma = otro.plataforma;
+        this.narrador = otro.narrador;
+    }
+
     // Getters y Setters
     public int getIdLibro() {
         return idLibro;
@@ -0,0 +1,65 @@
+package com.cozybooks.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Clase modelo para la entidad ReservaStock
+ * Representa unidades de un libro físico retenidas por un carrito en curso
+ */
+public class ReservaStock {
+    private int idReserva;
+    private int idLibro;
+    private int cantidad;
+    private LocalDateTime venceEn;
+
+    // Constructores
+    public ReservaStock() {}
+
+    public ReservaStock(int idLibro, int cantidad) {
+        this.idLibro = idLibro;
+        this.cantidad = cantidad;
+    }
+
+    // Getters y Setters
+    public int getIdReserva() {
+        return idReserva;
+    }
+
+    public void setIdReserva(int idReserva) {
+        this.idReserva = idReserva;
+    }
+
+    public int getIdLibro() {
+        return idLibro;
+    }
+
+    public void setIdLibro(int idLibro) {
+        this.idLibro = idLibro;
+    }
+
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    public void setCantidad(int cantidad) {
+        this.cantidad = cantidad;
+    }
+
+    public LocalDateTime getVenceEn() {
+        return venceEn;
+    }
+
+    public void setVenceEn(LocalDateTime venceEn) {
+        this.venceEn = venceEn;
+    }
+
+    @Override
+    public String toString() {
+        return "ReservaStock{" +
+                "idReserva=" + idReserva +
+                ", idLibro=" + idLibro +
+                ", cantidad=" + cantidad +
+                ", venceEn=" + venceEn +
+                '}';
+    }
+}
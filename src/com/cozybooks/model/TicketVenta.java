@@ -0,0 +1,81 @@
+package com.cozybooks.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Modelo de lectura con todo lo necesario para imprimir el ticket de una venta:
+ * la venta, su cliente y cada detalle junto con el libro vendido.
+ * Los detalles y los libros están alineados por posición.
+ */
+public class TicketVenta {
+    private Venta venta;
+    private Cliente cliente;
+    private List<DetalleVenta> detalles;
+    private List<Libro> libros;
+
+    // Constructores
+    public TicketVenta() {
+        this.detalles = new ArrayList<>();
+        this.libros = new ArrayList<>();
+    }
+
+    public TicketVenta(Venta venta, Cliente cliente, List<DetalleVenta> detalles, List<Libro> libros) {
+        this.venta = venta;
+        this.cliente = cliente;
+        this.detalles = detalles;
+        this.libros = libros;
+    }
+
+    /**
+     * Agrega una línea al ticket manteniendo alineados detalle y libro
+     * @param detalle el detalle vendido
+     * @param libro el libro correspondiente al detalle
+     */
+    public void agregarLinea(DetalleVenta detalle, Libro libro) {
+        detalles.add(detalle);
+        libros.add(libro);
+    }
+
+    // Getters y Setters
+    public Venta getVenta() {
+        return venta;
+    }
+
+    public void setVenta(Venta venta) {
+        this.venta = venta;
+    }
+
+    public Cliente getCliente() {
+        return cliente;
+    }
+
+    public void setCliente(Cliente cliente) {
+        this.cliente = cliente;
+    }
+
+    public List<DetalleVenta> getDetalles() {
+        return detalles;
+    }
+
+    public void setDetalles(List<DetalleVenta> detalles) {
+        this.detalles = detalles;
+    }
+
+    public List<Libro> getLibros() {
+        return libros;
+    }
+
+    public void setLibros(List<Libro> libros) {
+        this.libros = libros;
+    }
+
+    @Override
+    public String toString() {
+        return "TicketVenta{" +
+                "venta=" + venta +
+                ", cliente=" + cliente +
+                ", lineas=" + detalles.size() +
+                '}';
+    }
+}
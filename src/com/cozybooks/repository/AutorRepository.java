@@ -6,12 +6,25 @@ import com.cozybooks.util.DBConnection;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Repositorio para manejar operaciones CRUD de la entidad Autor
+ *
+ * Opcionalmente mantiene en memoria todos los autores (ver precargarCache()):
+ * las lecturas consultan una instantánea inmutable sin bloqueos y cada escritura
+ * publica una copia nueva de la instantánea (copy-on-write).
  */
 public class AutorRepository {
+    // Instantánea de todos los autores; null mientras la caché no esté cargada
+    private static final AtomicReference<Instantanea> INSTANTANEA = new AtomicReference<>();
 
     public Autor registrar(Autor autor) throws SQLException {
         String sql = "INSERT INTO AUTOR (nombre, fecha_nacimiento, nacionalidad, biografia) VALUES (?, ?, ?, ?)";
@@ -38,6 +51,8 @@ public class AutorRepository {
             }
         }
         
+        publicarEnCache(autor);
+        LibroRepository.indexarAutorEnBusqueda(autor);
         return autor;
     }
 
@@ -58,6 +73,9 @@ public class AutorRepository {
                 throw new SQLException("No se encontró el autor con ID: " + autor.getIdAutor());
             }
         }
+        
+        publicarEnCache(autor);
+        LibroRepository.indexarAutorEnBusqueda(autor);
     }
 
     public void eliminar(int id) throws SQLException {
@@ -77,6 +95,9 @@ public class AutorRepository {
                 throw new SQLException("No se encontró el autor con ID: " + id);
             }
         }
+        
+        DBConnection.alFinalizarTransaccion(() -> modificarInstantanea(autores -> autores.remove(id)));
+        LibroRepository.eliminarAutorDeBusqueda(id);
     }
 
     public List<Autor> listar() throws SQLException {
@@ -113,7 +134,21 @@ public class AutorRepository {
         return null;
     }
 
+    /**
+     * Obtiene un autor por ID, desde la caché si está cargada
+     * @param id ID del autor
+     * @return una copia del autor, o null si no existe
+     * @throws SQLException si hay error en la consulta
+     */
     public Autor obtenerPorId(int id) throws SQLException {
+        Instantanea instantanea = INSTANTANEA.get();
+        if (instantanea != null) {
+            Autor cacheado = instantanea.autores.get(id);
+            if (cacheado != null) {
+                return new Autor(cacheado);
+            }
+        }
+        
         String sql = "SELECT * FROM AUTOR WHERE id_autor = ?";
         
         try (Connection conn = DBConnection.getConnection();
@@ -123,7 +158,10 @@ public class AutorRepository {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapearResultSetAAutor(rs);
+                    // Autor creado desde otro puesto después de la carga
+                    Autor autor = mapearResultSetAAutor(rs);
+                    publicarEnCache(autor);
+                    return autor;
                 }
             }
         }
@@ -131,6 +169,84 @@ public class AutorRepository {
         return null;
     }
 
+    /**
+     * Obtiene varios registros por ID con consultas por lotes (WHERE id_autor IN (...)).
+     * Si la caché está cargada solo se consultan los IDs que no estén en ella.
+     * @param ids IDs a buscar
+     * @return mapa ID -> autor; los IDs inexistentes no aparecen en el mapa
+     * @throws SQLException si hay error en la consulta
+     */
+    public Map<Integer, Autor> obtenerPorIds(Collection<Integer> ids) throws SQLException {
+        Instantanea instantanea = INSTANTANEA.get();
+        if (instantanea == null) {
+            return ConsultaPorIds.obtener("AUTOR", "id_autor", ids, this::mapearResultSetAAutor);
+        }
+        
+        List<Integer> faltantes = new ArrayList<>();
+        for (Integer id : ids) {
+            if (!instantanea.autores.containsKey(id)) {
+                faltantes.add(id);
+            }
+        }
+        
+        Map<Integer, Autor> consultados = Collections.emptyMap();
+        if (!faltantes.isEmpty()) {
+            consultados = ConsultaPorIds.obtener("AUTOR", "id_autor", faltantes, this::mapearResultSetAAutor);
+            publicarEnCache(consultados.values());
+        }
+        
+        // Mismo orden que los IDs pedidos
+        Map<Integer, Autor> resultado = new LinkedHashMap<>();
+        for (Integer id : ids) {
+            Autor cacheado = instantanea.autores.get(id);
+            if (cacheado != null) {
+                resultado.put(id, new Autor(cacheado));
+            } else {
+                Autor consultado = consultados.get(id);
+                if (consultado != null) {
+                    resultado.put(id, consultado);
+                }
+            }
+        }
+        
+        return resultado;
+    }
+
+    /**
+     * Carga todos los autores en memoria. Llamarlo de nuevo recarga la caché
+     * con el contenido actual de la base de datos.
+     * @throws SQLException si hay error en la consulta
+     */
+    public static void precargarCache() throws SQLException {
+        Map<Integer, Autor> autores = new HashMap<>();
+        for (Autor autor : new AutorRepository().listar()) {
+            autores.put(autor.getIdAutor(), autor);
+        }
+        long ahora = System.currentTimeMillis();
+        INSTANTANEA.set(new Instantanea(Collections.unmodifiableMap(autores), ahora, ahora));
+    }
+
+    /**
+     * Descarta la caché; las lecturas vuelven a consultar la base de datos
+     */
+    public static void desactivarCache() {
+        INSTANTANEA.set(null);
+    }
+
+    /**
+     * @return reporte de la caché de autores: tamaño y antigüedad de la instantánea
+     */
+    public static String reporteCache() {
+        Instantanea instantanea = INSTANTANEA.get();
+        if (instantanea == null) {
+            return "Caché de autores: no cargada";
+        }
+        long ahora = System.currentTimeMillis();
+        return "Caché de autores: " + instantanea.autores.size() + " autores, cargada hace " +
+               (ahora - instantanea.cargadaEn) / 1000 + " s, última modificación hace " +
+               (ahora - instantanea.modificadaEn) / 1000 + " s";
+    }
+
     private boolean tieneLibrosAsociados(int idAutor) throws SQLException {
         String sql = "SELECT COUNT(*) FROM LIBRO WHERE id_autor = ?";
         
@@ -149,6 +265,54 @@ public class AutorRepository {
         return false;
     }
 
+    // Dentro de una transacción solo se descarta la entrada al terminar: si se revierte,
+    // la instantánea no debe quedar con datos que nunca se confirmaron
+    private void publicarEnCache(Autor autor) {
+        int id = autor.getIdAutor();
+        if (DBConnection.enTransaccion()) {
+            DBConnection.alFinalizarTransaccion(() -> modificarInstantanea(autores -> autores.remove(id)));
+        } else {
+            Autor copia = new Autor(autor);
+            modificarInstantanea(autores -> autores.put(id, copia));
+        }
+    }
+
+    // Publica varios autores con una sola copia de la instantánea
+    private void publicarEnCache(Collection<Autor> autores) {
+        if (autores.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = new ArrayList<>(autores.size());
+        List<Autor> copias = new ArrayList<>(autores.size());
+        for (Autor autor : autores) {
+            ids.add(autor.getIdAutor());
+            copias.add(new Autor(autor));
+        }
+        if (DBConnection.enTransaccion()) {
+            DBConnection.alFinalizarTransaccion(() -> modificarInstantanea(mapa -> mapa.keySet().removeAll(ids)));
+        } else {
+            modificarInstantanea(mapa -> {
+                for (Autor copia : copias) {
+                    mapa.put(copia.getIdAutor(), copia);
+                }
+            });
+        }
+    }
+
+    private static void modificarInstantanea(Consumer<Map<Integer, Autor>> cambio) {
+        Instantanea actual;
+        Instantanea nueva;
+        do {
+            actual = INSTANTANEA.get();
+            if (actual == null) {
+                return;
+            }
+            Map<Integer, Autor> copia = new HashMap<>(actual.autores);
+            cambio.accept(copia);
+            nueva = new Instantanea(Collections.unmodifiableMap(copia), actual.cargadaEn, System.currentTimeMillis());
+        } while (!INSTANTANEA.compareAndSet(actual, nueva));
+    }
+
     private Autor mapearResultSetAAutor(ResultSet rs) throws SQLException {
         Autor autor = new Autor();
         autor.setIdAutor(rs.getInt("id_autor"));
@@ -164,4 +328,19 @@ public class AutorRepository {
         
         return autor;
     }
+
+    /**
+     * Contenido inmutable de la caché en un momento dado
+     */
+    private static class Instantanea {
+        private final Map<Integer, Autor> autores;
+        private final long cargadaEn;
+        private final long modificadaEn;
+
+        Instantanea(Map<Integer, Autor> autores, long cargadaEn, long modificadaEn) {
+            this.autores = autores;
+            this.cargadaEn = cargadaEn;
+            this.modificadaEn = modificadaEn;
+        }
+    }
 }
@@ -1,14 +1,30 @@
 package com.cozybooks.repository;
 
 import com.cozybooks.model.Cliente;
+import com.cozybooks.util.CacheLRU;
 import com.cozybooks.util.DBConnection;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public class ClienteRepository {
+    // Cachés compartidas por todas las instancias del repositorio
+    private static final int CACHE_CAPACIDAD = 5000;
+    private static final long CACHE_TIEMPO_VIDA_MS = 5 * 60 * 1000;
+    // Los documentos inexistentes se recuerdan poco tiempo: otro puesto puede registrarlos
+    private static final long CACHE_NEGATIVA_TIEMPO_VIDA_MS = 30 * 1000;
+    private static final CacheLRU<Integer, Cliente> CACHE_POR_ID =
+        new CacheLRU<>("Clientes por ID", CACHE_CAPACIDAD, CACHE_TIEMPO_VIDA_MS);
+    private static final CacheLRU<String, Integer> CACHE_POR_DOCUMENTO =
+        new CacheLRU<>("Clientes por documento", CACHE_CAPACIDAD, CACHE_TIEMPO_VIDA_MS);
+    private static final CacheLRU<String, Boolean> CACHE_DOCUMENTOS_INEXISTENTES =
+        new CacheLRU<>("Documentos inexistentes", CACHE_CAPACIDAD, CACHE_NEGATIVA_TIEMPO_VIDA_MS);
+    // Código de error de MySQL para una clave UNIQUE duplicada
+    private static final int ERROR_CLAVE_DUPLICADA = 1062;
 
     public Cliente registrar(Cliente cliente) throws SQLException {
         if (existeDocumento(cliente.getDocumento())) {
@@ -25,7 +41,18 @@ public class ClienteRepository {
             stmt.setString(3, cliente.getEmail());
             stmt.setString(4, cliente.getTelefono());
             
-            int affectedRows = stmt.executeUpdate();
+            int affectedRows;
+            try {
+                affectedRows = stmt.executeUpdate();
+            } catch (SQLIntegrityConstraintViolationException e) {
+                if (e.getErrorCode() != ERROR_CLAVE_DUPLICADA) {
+                    throw e;
+                }
+                // Otro puesto registró el documento después de la verificación
+                throw new SQLException("Ya existe un cliente con el documento: " + cliente.getDocumento(), e);
+            } finally {
+                CACHE_DOCUMENTOS_INEXISTENTES.invalidar(cliente.getDocumento());
+            }
             if (affectedRows == 0) {
                 throw new SQLException("No se pudo registrar el cliente.");
             }
@@ -58,7 +85,18 @@ public class ClienteRepository {
             stmt.setString(4, cliente.getTelefono());
             stmt.setInt(5, cliente.getIdCliente());
             
-            int affectedRows = stmt.executeUpdate();
+            int affectedRows;
+            try {
+                affectedRows = stmt.executeUpdate();
+            } catch (SQLIntegrityConstraintViolationException e) {
+                if (e.getErrorCode() != ERROR_CLAVE_DUPLICADA) {
+                    throw e;
+                }
+                throw new SQLException("Ya existe otro cliente con el documento: " + cliente.getDocumento(), e);
+            } finally {
+                invalidarCache(cliente.getIdCliente());
+                CACHE_DOCUMENTOS_INEXISTENTES.invalidar(cliente.getDocumento());
+            }
             if (affectedRows == 0) {
                 throw new SQLException("No se encontró el cliente con ID: " + cliente.getIdCliente());
             }
@@ -78,6 +116,7 @@ public class ClienteRepository {
             stmt.setInt(1, id);
             
             int affectedRows = stmt.executeUpdate();
+            invalidarCache(id);
             if (affectedRows == 0) {
                 throw new SQLException("No se encontró el cliente con ID: " + id);
             }
@@ -120,7 +159,22 @@ public class ClienteRepository {
         return null;
     }
 
+    /**
+     * Obtiene un cliente por ID, desde la caché si está disponible.
+     * Dentro de una transacción siempre se consulta la base de datos.
+     * @param id ID del cliente
+     * @return una copia del cliente, o null si no existe
+     * @throws SQLException si hay error en la consulta
+     */
     public Cliente obtenerPorId(int id) throws SQLException {
+        boolean usarCache = !DBConnection.enTransaccion();
+        if (usarCache) {
+            Cliente cacheado = CACHE_POR_ID.obtener(id);
+            if (cacheado != null) {
+                return new Cliente(cacheado);
+            }
+        }
+        
         String sql = "SELECT * FROM CLIENTE WHERE id_cliente = ?";
         
         try (Connection conn = DBConnection.getConnection();
@@ -130,7 +184,11 @@ public class ClienteRepository {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapearResultSetACliente(rs);
+                    Cliente cliente = mapearResultSetACliente(rs);
+                    if (usarCache) {
+                        guardarEnCache(cliente);
+                    }
+                    return cliente;
                 }
             }
         }
@@ -138,26 +196,42 @@ public class ClienteRepository {
         return null;
     }
 
+    /**
+     * Obtiene varios registros por ID con consultas por lotes (WHERE id_cliente IN (...))
+     * @param ids IDs a buscar
+     * @return mapa ID -> cliente; los IDs inexistentes no aparecen en el mapa
+     * @throws SQLException si hay error en la consulta
+     */
+    public Map<Integer, Cliente> obtenerPorIds(Collection<Integer> ids) throws SQLException {
+        return ConsultaPorIds.obtener("CLIENTE", "id_cliente", ids, this::mapearResultSetACliente);
+    }
+
+    /**
+     * Obtiene un cliente por documento, desde la caché si está disponible.
+     * Los documentos que no existen también se recuerdan por un tiempo breve.
+     * Dentro de una transacción siempre se consulta la base de datos.
+     * @param documento DNI del cliente
+     * @return una copia del cliente, o null si no existe
+     * @throws SQLException si hay error en la consulta
+     */
     public Cliente obtenerPorDocumento(String documento) throws SQLException {
-        String sql = "SELECT * FROM CLIENTE WHERE documento = ?";
-        
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, documento);
+        boolean usarCache = !DBConnection.enTransaccion();
+        if (usarCache) {
+            if (CACHE_DOCUMENTOS_INEXISTENTES.obtener(documento) != null) {
+                return null;
+            }
             
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapearResultSetACliente(rs);
+            Integer id = CACHE_POR_DOCUMENTO.obtener(documento);
+            if (id != null) {
+                Cliente cliente = obtenerPorId(id);
+                if (cliente != null && documento.equals(cliente.getDocumento())) {
+                    return cliente;
                 }
+                CACHE_POR_DOCUMENTO.invalidar(documento);
             }
         }
         
-        return null;
-    }
-
-    private boolean existeDocumento(String documento) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM CLIENTE WHERE documento = ?";
+        String sql = "SELECT * FROM CLIENTE WHERE documento = ?";
         
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -166,31 +240,50 @@ public class ClienteRepository {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getInt(1) > 0;
+                    Cliente cliente = mapearResultSetACliente(rs);
+                    if (usarCache) {
+                        guardarEnCache(cliente);
+                    }
+                    return cliente;
                 }
             }
         }
         
-        return false;
+        if (usarCache) {
+            CACHE_DOCUMENTOS_INEXISTENTES.guardar(documento, Boolean.TRUE);
+        }
+        return null;
+    }
+
+    /**
+     * @return reporte de las cachés de clientes, una por línea
+     */
+    public static String reporteCache() {
+        return CACHE_POR_ID.reporte() + "\n" + CACHE_POR_DOCUMENTO.reporte() + "\n" +
+               CACHE_DOCUMENTOS_INEXISTENTES.reporte();
+    }
+
+    // La unicidad se verifica con las cachés; la restricción UNIQUE de la tabla cubre las carreras
+    private boolean existeDocumento(String documento) throws SQLException {
+        return obtenerPorDocumento(documento) != null;
     }
 
     private boolean existeDocumentoExcluyendoId(String documento, int idExcluir) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM CLIENTE WHERE documento = ? AND id_cliente != ?";
-        
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, documento);
-            stmt.setInt(2, idExcluir);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
-                }
-            }
+        Cliente existente = obtenerPorDocumento(documento);
+        return existente != null && existente.getIdCliente() != idExcluir;
+    }
+
+    private void guardarEnCache(Cliente cliente) {
+        CACHE_POR_ID.guardar(cliente.getIdCliente(), new Cliente(cliente));
+        CACHE_POR_DOCUMENTO.guardar(cliente.getDocumento(), cliente.getIdCliente());
+        CACHE_DOCUMENTOS_INEXISTENTES.invalidar(cliente.getDocumento());
+    }
+
+    private void invalidarCache(int idCliente) {
+        Cliente anterior = CACHE_POR_ID.invalidar(idCliente);
+        if (anterior != null) {
+            CACHE_POR_DOCUMENTO.invalidar(anterior.getDocumento());
         }
-        
-        return false;
     }
 
     private boolean tieneVentasAsociadas(int idCliente) throws SQLException {
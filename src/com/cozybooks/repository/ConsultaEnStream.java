@@ -0,0 +1,117 @@
+package com.cozybooks.repository;
+
+import com.cozybooks.util.DBConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Utilidad compartida por los repositorios para recorrer consultas grandes
+ * sin materializarlas en memoria.
+ *
+ * Usa un ResultSet en modo streaming de MySQL (fetch size Integer.MIN_VALUE):
+ * el servidor envía las filas a medida que se consumen, por lo que el uso de
+ * memoria no depende del tamaño de la tabla. Mientras el stream está abierto
+ * su conexión no puede usarse para otra consulta, por eso se toma una conexión
+ * exclusiva del pool (nunca la de la transacción del hilo).
+ */
+final class ConsultaEnStream {
+
+    private ConsultaEnStream() {}
+
+    /**
+     * Abre un stream perezoso sobre el resultado de la consulta.
+     * El stream debe cerrarse (try-with-resources) para liberar el ResultSet y la conexión;
+     * también se cierra solo al llegar a la última fila.
+     * @param sql consulta, con un ? por cada parámetro
+     * @param mapeador conversión de cada fila a la entidad
+     * @param parametros valores de los ? de la consulta, en orden
+     * @return stream secuencial de entidades
+     * @throws SQLException si hay error al ejecutar la consulta
+     */
+    static <T> Stream<T> abrir(String sql, MapeadorFila<T> mapeador, Object... parametros) throws SQLException {
+        Connection conn = DBConnection.getConexionExclusiva();
+        PreparedStatement stmt = null;
+        ResultSet rs;
+        try {
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            for (int i = 0; i < parametros.length; i++) {
+                stmt.setObject(i + 1, parametros[i]);
+            }
+            rs = stmt.executeQuery();
+        } catch (SQLException e) {
+            cerrar(null, stmt, conn);
+            throw e;
+        }
+        
+        Recursos recursos = new Recursos(rs, stmt, conn);
+        Spliterator<T> filas = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> accion) {
+                try {
+                    if (!recursos.abierto || !rs.next()) {
+                        recursos.cerrar();
+                        return false;
+                    }
+                    accion.accept(mapeador.mapear(rs));
+                    return true;
+                } catch (SQLException e) {
+                    recursos.cerrar();
+                    throw new IllegalStateException("Error al leer el resultado: " + e.getMessage(), e);
+                }
+            }
+        };
+        
+        return StreamSupport.stream(filas, false).onClose(recursos::cerrar);
+    }
+
+    private static void cerrar(ResultSet rs, PreparedStatement stmt, Connection conn) {
+        try {
+            if (rs != null) rs.close();
+        } catch (SQLException e) {
+            // Se continúa cerrando el resto de los recursos
+        }
+        try {
+            if (stmt != null) stmt.close();
+        } catch (SQLException e) {
+            // Se continúa cerrando el resto de los recursos
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error al devolver la conexión del stream: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recursos JDBC abiertos por un stream; se cierran una sola vez
+     */
+    private static class Recursos {
+        private final ResultSet rs;
+        private final PreparedStatement stmt;
+        private final Connection conn;
+        private boolean abierto = true;
+
+        Recursos(ResultSet rs, PreparedStatement stmt, Connection conn) {
+            this.rs = rs;
+            this.stmt = stmt;
+            this.conn = conn;
+        }
+
+        void cerrar() {
+            if (abierto) {
+                abierto = false;
+                ConsultaEnStream.cerrar(rs, stmt, conn);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.cozybooks.repository;
+
+import com.cozybooks.util.DBConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Utilidad compartida por los repositorios para buscar muchas filas por ID
+ * con consultas "WHERE id IN (...)" en lugar de una consulta por ID.
+ */
+final class ConsultaPorIds {
+    // Máximo de parámetros por consulta; listas más grandes se dividen en tramos
+    static final int MAX_PARAMETROS = 500;
+    // Los tramos se redondean a estos tamaños para reutilizar pocas sentencias SQL distintas
+    private static final int TRAMO_MINIMO = 8;
+
+    private ConsultaPorIds() {}
+
+    /**
+     * Busca las entidades con los IDs indicados
+     * @param tabla tabla a consultar
+     * @param columnaId columna de la clave primaria
+     * @param ids IDs a buscar (se ignoran duplicados)
+     * @param mapeador conversión de cada fila a la entidad
+     * @return mapa ID -> entidad, en el orden de los IDs recibidos; los IDs inexistentes no aparecen
+     * @throws SQLException si hay error en la consulta
+     */
+    static <T> Map<Integer, T> obtener(String tabla, String columnaId, Collection<Integer> ids,
+                                       MapeadorFila<T> mapeador) throws SQLException {
+        List<Integer> unicos = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Integer, T> encontrados = new LinkedHashMap<>();
+        if (unicos.isEmpty()) {
+            return encontrados;
+        }
+        
+        Map<Integer, T> porId = new HashMap<>();
+        try (Connection conn = DBConnection.getConnection()) {
+            for (int inicio = 0; inicio < unicos.size(); inicio += MAX_PARAMETROS) {
+                List<Integer> tramo = unicos.subList(inicio, Math.min(inicio + MAX_PARAMETROS, unicos.size()));
+                int parametros = tamañoTramo(tramo.size());
+                String sql = "SELECT * FROM " + tabla + " WHERE " + columnaId + " IN (" + marcadores(parametros) + ")";
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < parametros; i++) {
+                        // Relleno con el último ID: no cambia el resultado y mantiene el SQL reutilizable
+                        stmt.setInt(i + 1, tramo.get(Math.min(i, tramo.size() - 1)));
+                    }
+                    
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            porId.put(rs.getInt(columnaId), mapeador.mapear(rs));
+                        }
+                    }
+                }
+            }
+        }
+        
+        for (Integer id : unicos) {
+            T entidad = porId.get(id);
+            if (entidad != null) {
+                encontrados.put(id, entidad);
+            }
+        }
+        return encontrados;
+    }
+
+    private static int tamañoTramo(int cantidad) {
+        int tamaño = TRAMO_MINIMO;
+        while (tamaño < cantidad) {
+            tamaño <<= 1;
+        }
+        return Math.min(tamaño, MAX_PARAMETROS);
+    }
+
+    private static String marcadores(int cantidad) {
+        StringBuilder sb = new StringBuilder(cantidad * 3);
+        for (int i = 0; i < cantidad; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+}
@@ -6,7 +6,11 @@ import com.cozybooks.util.DBConnection;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class DetalleVentaRepository {
 
@@ -36,9 +40,76 @@ public class DetalleVentaRepository {
             }
         }
         
+        LibroRepository.sumarVendidosEnAutocompletado(detalle.getIdLibro(), detalle.getCantidad());
         return detalle;
     }
 
+    /**
+     * Registra varios detalles de venta en un único lote (addBatch/executeBatch).
+     * Con rewriteBatchedStatements el driver los envía como un INSERT de varias filas,
+     * y cada detalle recibe su id_detalle generado en el mismo orden de la lista.
+     * @param detalles los detalles a registrar
+     * @return los mismos detalles con su ID asignado
+     * @throws SQLException si falla la inserción o no se obtienen todos los IDs
+     */
+    public List<DetalleVenta> registrarLote(List<DetalleVenta> detalles) throws SQLException {
+        if (detalles.isEmpty()) {
+            return detalles;
+        }
+        
+        String sql = "INSERT INTO DETALLE_VENTA (cantidad, precio_unitario, subtotal, id_venta, id_libro) VALUES (?, ?, ?, ?, ?)";
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            
+            for (DetalleVenta detalle : detalles) {
+                stmt.setInt(1, detalle.getCantidad());
+                stmt.setBigDecimal(2, detalle.getPrecioUnitario());
+                stmt.setBigDecimal(3, detalle.getSubtotal());
+                stmt.setInt(4, detalle.getIdVenta());
+                stmt.setInt(5, detalle.getIdLibro());
+                stmt.addBatch();
+            }
+            
+            stmt.executeBatch();
+            
+            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                for (DetalleVenta detalle : detalles) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("No se pudieron obtener los IDs de todos los detalles registrados.");
+                    }
+                    detalle.setIdDetalle(generatedKeys.getInt(1));
+                }
+            }
+        }
+        
+        for (DetalleVenta detalle : detalles) {
+            LibroRepository.sumarVendidosEnAutocompletado(detalle.getIdLibro(), detalle.getCantidad());
+        }
+        return detalles;
+    }
+
+    /**
+     * Suma las unidades vendidas de cada libro
+     * @return mapa ID de libro -> unidades vendidas (solo libros con ventas)
+     * @throws SQLException si hay error en la consulta
+     */
+    public Map<Integer, Integer> contarVendidosPorLibro() throws SQLException {
+        String sql = "SELECT id_libro, SUM(cantidad) AS vendidos FROM DETALLE_VENTA GROUP BY id_libro";
+        Map<Integer, Integer> vendidos = new HashMap<>();
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            
+            while (rs.next()) {
+                vendidos.put(rs.getInt("id_libro"), rs.getInt("vendidos"));
+            }
+        }
+        
+        return vendidos;
+    }
+
     public void eliminar(int id) throws SQLException {
         String sql = "DELETE FROM DETALLE_VENTA WHERE id_detalle = ?";
         
@@ -70,6 +141,28 @@ public class DetalleVentaRepository {
         return detalles;
     }
 
+    /**
+     * Recorre todos los detalles de venta en orden de ID sin cargarlos en memoria (streaming del servidor).
+     * El stream debe cerrarse para liberar la conexión:
+     * try (Stream<DetalleVenta> detalles = repositorio.listarEnStream()) { ... }
+     * @return stream perezoso de todos los detalles de venta
+     * @throws SQLException si hay error al ejecutar la consulta
+     */
+    public Stream<DetalleVenta> listarEnStream() throws SQLException {
+        return ConsultaEnStream.abrir("SELECT * FROM DETALLE_VENTA ORDER BY id_detalle", this::mapearResultSetADetalle);
+    }
+
+    /**
+     * Aplica una acción a cada detalle de venta sin cargarlos en memoria
+     * @param accion acción a ejecutar por cada registro
+     * @throws SQLException si hay error al ejecutar la consulta
+     */
+    public void recorrer(Consumer<DetalleVenta> accion) throws SQLException {
+        try (Stream<DetalleVenta> detalles = listarEnStream()) {
+            detalles.forEach(accion);
+        }
+    }
+
     public List<DetalleVenta> buscarPorVenta(int idVenta) throws SQLException {
         String sql = "SELECT * FROM DETALLE_VENTA WHERE id_venta = ? ORDER BY id_detalle";
         List<DetalleVenta> detalles = new ArrayList<>();
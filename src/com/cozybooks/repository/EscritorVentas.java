@@ -0,0 +1,406 @@
+package com.cozybooks.repository;
+
+import com.cozybooks.model.DetalleVenta;
+import com.cozybooks.model.ReservaStock;
+import com.cozybooks.model.Venta;
+import com.cozybooks.util.DBConnection;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Confirma ventas agrupándolas (group commit).
+ *
+ * Las cajas encolan sus ventas y un único hilo escritor las confirma de a varias
+ * en una misma transacción: las ventas se insertan en un lote (cada una recibe su
+ * id_venta generado), los detalles de todas en otro y las reservas se consumen
+ * juntas, con un único commit. Si el lote falla (por ejemplo, una venta sin stock)
+ * se revierte y cada venta se reintenta en su propia transacción, así solo falla
+ * la que corresponde.
+ *
+ * tamañoLote limita las ventas por transacción y esperaMaximaMs cuánto se espera a
+ * que lleguen más antes de escribir: con 0 solo se agrupa lo que ya está en cola
+ * (sin sumar latencia); valores mayores favorecen el rendimiento bajo carga.
+ * Se configuran con -Dcozybooks.ventas.lote y -Dcozybooks.ventas.esperaMs.
+ *
+ * Una caja que deja de esperar (por interrupción o porque se agotó la espera)
+ * retira su venta si el escritor todavía no la tomó; si ya la está escribiendo,
+ * espera el resultado, así nunca informa un error de una venta que se registró.
+ */
+public class EscritorVentas {
+    private static final int TAMAÑO_LOTE_POR_DEFECTO = 64;
+    private static final long ESPERA_MAXIMA_MS_POR_DEFECTO = 0;
+    private static final int CAPACIDAD_COLA = 1024;
+    private static final long ESPERA_DETENCION_MS = 10 * 1000;
+    // Cuánto espera una caja a que haya lugar en la cola y a que se confirme su venta
+    private static final long ESPERA_CONFIRMACION_MS = 30 * 1000;
+
+    private static EscritorVentas instancia = null;
+
+    // Estados de una solicitud: en cola, tomada por el escritor o retirada por su caja
+    private static final int PENDIENTE = 0;
+    private static final int TOMADA = 1;
+    private static final int RETIRADA = 2;
+
+    // Marca de fin de la cola al detener el escritor
+    private static final Solicitud FIN = new Solicitud(null, null, null, null);
+
+    private final int tamañoLote;
+    private final long esperaMaximaNanos;
+    private final BlockingQueue<Solicitud> cola = new ArrayBlockingQueue<>(CAPACIDAD_COLA);
+    private final Thread escritor;
+    private volatile boolean aceptando = true;
+
+    private final VentaRepository ventaRepository = new VentaRepository();
+    private final DetalleVentaRepository detalleVentaRepository = new DetalleVentaRepository();
+    private final LibroRepository libroRepository = new LibroRepository();
+    private final ReservaStockRepository reservaStockRepository = new ReservaStockRepository();
+
+    private final AtomicLong ventasConfirmadas = new AtomicLong();
+    private final AtomicLong ventasFallidas = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong lotesReintentados = new AtomicLong();
+    private final AtomicLong nanosEscritura = new AtomicLong();
+    private volatile int loteMaximo = 0;
+
+    private static class Solicitud {
+        private final Venta venta;
+        private final List<DetalleVenta> detalles;
+        private final List<ReservaStock> reservas;
+        private final Venta.MetodoPago metodoPago;
+        private final CompletableFuture<Venta> resultado = new CompletableFuture<>();
+        private final AtomicInteger estado = new AtomicInteger(PENDIENTE);
+
+        Solicitud(Venta venta, List<DetalleVenta> detalles, List<ReservaStock> reservas, Venta.MetodoPago metodoPago) {
+            this.venta = venta;
+            this.detalles = detalles;
+            this.reservas = reservas;
+            this.metodoPago = metodoPago;
+        }
+
+        // El escritor la toma para un lote; falla si la caja ya la retiró
+        boolean tomar() {
+            return estado.compareAndSet(PENDIENTE, TOMADA);
+        }
+
+        // La caja la retira; falla si el escritor ya la tomó
+        boolean retirar(String motivo) {
+            if (!estado.compareAndSet(PENDIENTE, RETIRADA)) {
+                return false;
+            }
+            resultado.completeExceptionally(new SQLException(motivo));
+            return true;
+        }
+    }
+
+
+    /**
+     * @param tamañoLote máximo de ventas por transacción
+     * @param esperaMaximaMs tiempo máximo que se espera a completar un lote
+     */
+    public EscritorVentas(int tamañoLote, long esperaMaximaMs) {
+        this.tamañoLote = Math.max(1, tamañoLote);
+        this.esperaMaximaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, esperaMaximaMs));
+        this.escritor = new Thread(this::ejecutar, "cozybooks-escritor-ventas");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+
+    /**
+     * Obtiene el escritor compartido, creándolo con la configuración de las propiedades del sistema
+     * @return el escritor de ventas
+     */
+    public static synchronized EscritorVentas getInstance() {
+        // Si el hilo escritor terminó por un error se reemplaza por uno nuevo
+        if (instancia == null || !instancia.escritor.isAlive()) {
+            instancia = new EscritorVentas(
+                Integer.getInteger("cozybooks.ventas.lote", TAMAÑO_LOTE_POR_DEFECTO),
+                Long.getLong("cozybooks.ventas.esperaMs", ESPERA_MAXIMA_MS_POR_DEFECTO));
+        }
+        return instancia;
+    }
+
+    /**
+     * Detiene el escritor compartido después de confirmar las ventas encoladas
+     */
+    public static synchronized void detenerInstancia() {
+        if (instancia != null) {
+            instancia.detener();
+            instancia = null;
+        }
+    }
+
+    /**
+     * Encola una venta para confirmarla. La venta y sus detalles se insertan al
+     * confirmarse, ya COMPLETADA y con su monto; sus reservas quedan consumidas.
+     * Si la cola está llena, espera a que haya lugar (como máximo ESPERA_CONFIRMACION_MS).
+     * @param venta la venta a confirmar
+     * @param detalles detalles de la venta
+     * @param reservas reservas de stock de los libros físicos del carrito
+     * @param metodoPago método de pago elegido
+     * @return resultado que se completa con la venta confirmada o con el error
+     */
+    public CompletableFuture<Venta> enviar(Venta venta, List<DetalleVenta> detalles,
+                                           List<ReservaStock> reservas, Venta.MetodoPago metodoPago) {
+        return encolar(new Solicitud(venta, detalles, reservas, metodoPago)).resultado;
+    }
+
+    /**
+     * Confirma una venta y espera el resultado
+     * @param venta la venta a confirmar
+     * @param detalles detalles de la venta
+     * @param reservas reservas de stock de los libros físicos del carrito
+     * @param metodoPago método de pago elegido
+     * @return la venta confirmada
+     * @throws SQLException si la venta no pudo confirmarse
+     */
+    public Venta confirmar(Venta venta, List<DetalleVenta> detalles,
+                           List<ReservaStock> reservas, Venta.MetodoPago metodoPago) throws SQLException {
+        if (DBConnection.enTransaccion()) {
+            // El escritor usa su propia transacción; la del hilo no incluiría la venta
+            throw new SQLException("No se puede confirmar una venta encolada dentro de una transacción.");
+        }
+        Solicitud solicitud = encolar(new Solicitud(venta, detalles, reservas, metodoPago));
+        boolean interrumpido = false;
+        try {
+            try {
+                return solicitud.resultado.get(ESPERA_CONFIRMACION_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrumpido = true;
+                if (solicitud.retirar("Se interrumpió la espera de la confirmación; la venta no se registró.")) {
+                    throw new SQLException("Se interrumpió la espera de la confirmación; la venta no se registró.");
+                }
+            } catch (TimeoutException e) {
+                if (solicitud.retirar("Se agotó la espera de la confirmación; la venta no se registró.")) {
+                    throw new SQLException("Se agotó la espera de la confirmación; la venta no se registró.");
+                }
+            }
+
+            // El escritor ya la está escribiendo: se espera su resultado para no informar
+            // como fallida una venta que sí se registra
+            long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ESPERA_CONFIRMACION_MS);
+            while (true) {
+                try {
+                    return solicitud.resultado.get(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                } catch (TimeoutException e) {
+                    throw new SQLException("No se pudo saber si la venta se registró; verifique el listado de ventas.");
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof SQLException) {
+                throw (SQLException) causa;
+            }
+            throw new SQLException(causa.getMessage(), causa);
+        } finally {
+            if (interrumpido) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Deja de aceptar ventas y espera a que se confirmen las encoladas
+     */
+    public void detener() {
+        aceptando = false;
+        try {
+            cola.put(FIN);
+            escritor.join(ESPERA_DETENCION_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return resumen del escritor de ventas, una métrica por línea
+     */
+    public String reporte() {
+        long cantidadLotes = lotes.get();
+        long confirmadas = ventasConfirmadas.get();
+        return "Escritor de ventas - lote máximo configurado: " + tamañoLote +
+               ", espera máxima: " + TimeUnit.NANOSECONDS.toMillis(esperaMaximaNanos) + " ms, en cola: " + cola.size() + "\n" +
+               "Ventas confirmadas: " + confirmadas + ", fallidas: " + ventasFallidas.get() +
+               ", transacciones: " + cantidadLotes +
+               ", ventas por transacción: " + (cantidadLotes == 0 ? "N/A" : String.format("%.1f", (double) confirmadas / cantidadLotes)) +
+               " (máximo " + loteMaximo + ")" +
+               ", lotes reintentados por separado: " + lotesReintentados.get() +
+               ", tiempo medio por transacción: " + (cantidadLotes == 0 ? "N/A" :
+                   String.format("%.1f ms", nanosEscritura.get() / 1_000_000.0 / cantidadLotes));
+    }
+
+    private Solicitud encolar(Solicitud solicitud) {
+        if (!aceptando) {
+            solicitud.retirar("El escritor de ventas está detenido.");
+            return solicitud;
+        }
+        try {
+            if (!cola.offer(solicitud, ESPERA_CONFIRMACION_MS, TimeUnit.MILLISECONDS)) {
+                solicitud.retirar("La cola de ventas está llena; intente nuevamente.");
+                return solicitud;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            solicitud.retirar("Se interrumpió el envío de la venta.");
+            return solicitud;
+        }
+        // El escritor pudo haberse detenido mientras se encolaba: ya nadie la tomaría
+        if (!aceptando) {
+            solicitud.retirar("El escritor de ventas está detenido.");
+        }
+        return solicitud;
+    }
+
+    private void ejecutar() {
+        List<Solicitud> lote = new ArrayList<>(tamañoLote);
+        boolean fin = false;
+        String motivo = "El escritor de ventas está detenido.";
+        try {
+            while (!fin) {
+                Solicitud primera = cola.take();
+                if (primera == FIN) {
+                    break;
+                }
+                // Las ventas retiradas por su caja se descartan
+                if (!primera.tomar()) {
+                    continue;
+                }
+                lote.add(primera);
+
+                long limite = System.nanoTime() + esperaMaximaNanos;
+                while (lote.size() < tamañoLote) {
+                    long restante = limite - System.nanoTime();
+                    Solicitud siguiente = restante > 0 ? cola.poll(restante, TimeUnit.NANOSECONDS) : cola.poll();
+                    if (siguiente == null) {
+                        break;
+                    }
+                    if (siguiente == FIN) {
+                        fin = true;
+                        break;
+                    }
+                    if (siguiente.tomar()) {
+                        lote.add(siguiente);
+                    }
+                }
+
+                procesar(lote);
+                lote.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            motivo = "El escritor de ventas se detuvo por un error: " + e;
+            throw e;
+        } finally {
+            // Lo que quede sin escribir (llegado después del fin, por una interrupción o
+            // por un error del escritor) se rechaza, y no se aceptan más ventas
+            aceptando = false;
+            List<Solicitud> restantes = new ArrayList<>(lote);
+            cola.drainTo(restantes);
+            for (Solicitud solicitud : restantes) {
+                if (solicitud == FIN) {
+                    continue;
+                }
+                if (solicitud.tomar() || lote.contains(solicitud)) {
+                    solicitud.resultado.completeExceptionally(new SQLException(motivo));
+                }
+            }
+        }
+    }
+
+    private void procesar(List<Solicitud> lote) {
+        try {
+            escribir(lote);
+            for (Solicitud solicitud : lote) {
+                solicitud.resultado.complete(solicitud.venta);
+            }
+            ventasConfirmadas.addAndGet(lote.size());
+            loteMaximo = Math.max(loteMaximo, lote.size());
+        } catch (Exception e) {
+            if (lote.size() == 1) {
+                ventasFallidas.incrementAndGet();
+                lote.get(0).resultado.completeExceptionally(e);
+                return;
+            }
+            // Se aísla la venta que hizo fallar el lote
+            lotesReintentados.incrementAndGet();
+            for (Solicitud solicitud : lote) {
+                procesar(Collections.singletonList(solicitud));
+            }
+        }
+    }
+
+    private void escribir(List<Solicitud> lote) throws SQLException {
+        long inicio = System.nanoTime();
+        DBConnection.beginTransaction();
+        try {
+            List<Venta> ventas = new ArrayList<>(lote.size());
+            List<DetalleVenta> detalles = new ArrayList<>();
+            List<ReservaStock> reservas = new ArrayList<>();
+            for (Solicitud solicitud : lote) {
+                Venta venta = solicitud.venta;
+                BigDecimal total = BigDecimal.ZERO;
+                for (DetalleVenta detalle : solicitud.detalles) {
+                    total = total.add(detalle.getSubtotal());
+                }
+                venta.setMonto(total);
+                venta.setMetodoPago(solicitud.metodoPago);
+                venta.setEstado(Venta.EstadoVenta.COMPLETADA);
+                ventas.add(venta);
+                reservas.addAll(solicitud.reservas);
+            }
+
+            // Un único INSERT por venta, ya con su monto final
+            ventaRepository.registrarLote(ventas);
+            for (Solicitud solicitud : lote) {
+                for (DetalleVenta detalle : solicitud.detalles) {
+                    detalle.setIdVenta(solicitud.venta.getIdVenta());
+                    detalles.add(detalle);
+                }
+            }
+            detalleVentaRepository.registrarLote(detalles);
+
+            // El stock ya está descontado por las reservas; solo las que vencieron
+            // mientras se armaba el carrito deben descontarse de nuevo
+            Map<Integer, Integer> descuentos = new HashMap<>();
+            for (ReservaStock vencida : reservaStockRepository.consumir(reservas)) {
+                descuentos.merge(vencida.getIdLibro(), -vencida.getCantidad(), Integer::sum);
+            }
+
+            List<Integer> sinStock = libroRepository.actualizarStockLote(descuentos);
+            if (!sinStock.isEmpty()) {
+                throw new SQLException("Stock insuficiente para los libros con ID: " + sinStock);
+            }
+
+            DBConnection.commitTransaction();
+        } catch (SQLException | RuntimeException | Error e) {
+            // Los IDs asignados en la transacción revertida no existen
+            for (Solicitud solicitud : lote) {
+                solicitud.venta.setIdVenta(0);
+            }
+            try {
+                DBConnection.rollbackTransaction();
+            } catch (SQLException rollbackEx) {
+                e.addSuppressed(rollbackEx);
+            }
+            throw e;
+        }
+        lotes.incrementAndGet();
+        nanosEscritura.addAndGet(System.nanoTime() - inicio);
+    }
+}
@@ -1,24 +1,58 @@
 package com.cozybooks.repository;
 
+import com.cozybooks.model.Autor;
 import com.cozybooks.model.Libro;
+import com.cozybooks.search.AutocompletadoTrie;
+import com.cozybooks.search.IndiceInvertido;
+import com.cozybooks.search.IndiceTrigramas;
+import com.cozybooks.util.CacheLRU;
 import com.cozybooks.util.DBConnection;
+import com.cozybooks.util.Isbn;
+import com.cozybooks.util.MapaLongEntero;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class LibroRepository {
+    // Caché compartida por todas las instancias del repositorio.
+    // El stock guardado puede quedar desactualizado hasta el vencimiento de la entrada:
+    // la validación definitiva la hace siempre el UPDATE protegido (stock + ? >= 0),
+    // y dentro de una transacción las lecturas van directo a la base de datos.
+    private static final int CACHE_CAPACIDAD = 10000;
+    private static final long CACHE_TIEMPO_VIDA_MS = 60 * 1000;
+    private static final CacheLRU<Integer, Libro> CACHE_POR_ID =
+        new CacheLRU<>("Libros por ID", CACHE_CAPACIDAD, CACHE_TIEMPO_VIDA_MS);
+    // ISBN canónico (ver Isbn) -> id_libro, sin objetos por entrada. Se llena al construir los
+    // índices y con cada libro leído o escrito; una entrada que quede obsoleta (ISBN cambiado
+    // o libro eliminado desde otro puesto) se detecta al usarla, porque siempre se verifica
+    // contra el libro, y se descarta.
+    private static final MapaLongEntero INDICE_ISBN = new MapaLongEntero(CACHE_CAPACIDAD);
+    // Código de error de MySQL para una clave UNIQUE duplicada
+    private static final int ERROR_CLAVE_DUPLICADA = 1062;
+    // Índice de búsqueda por texto; mientras no se construya, buscar() usa LIKE en la base de datos.
+    // Se actualiza al terminar cada transacción: si se revierte puede quedar algún término de más,
+    // pero los libros encontrados siempre se leen de la base de datos (o la caché).
+    private static final IndiceInvertido INDICE_BUSQUEDA = new IndiceInvertido();
+    // Índice de trigramas para la búsqueda aproximada de títulos y autores
+    private static final IndiceTrigramas INDICE_TRIGRAMAS = new IndiceTrigramas();
+    // Autocompletado de títulos y autores, ordenado por unidades vendidas
+    private static final int CANTIDAD_SUGERENCIAS = 10;
+    private static final AutocompletadoTrie AUTOCOMPLETADO = new AutocompletadoTrie(CANTIDAD_SUGERENCIAS);
 
     public Libro registrar(Libro libro) throws SQLException {
-        if (libro.getIsbn() != null && !libro.getIsbn().isEmpty() && existeIsbn(libro.getIsbn())) {
-            throw new SQLException("Ya existe un libro con el ISBN: " + libro.getIsbn());
-        }
+        verificarIsbnDisponible(libro);
         
         String sql = "INSERT INTO LIBRO (titulo, isbn, editorial, año, precio, genero, tipo_libro, stock, id_autor, " +
-                    "encuadernado, num_edicion, extension, permisos_impresion, duracion, plataforma, narrador) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    "encuadernado, num_edicion, extension, permisos_impresion, duracion, plataforma, narrador, isbn_canonico) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
@@ -59,8 +93,9 @@ public class LibroRepository {
                 stmt.setString(15, libro.getPlataforma());
                 stmt.setString(16, libro.getNarrador());
             }
+            ponerIsbnCanonico(stmt, 17, libro.getIsbn());
             
-            int affectedRows = stmt.executeUpdate();
+            int affectedRows = ejecutarVerificandoIsbn(stmt, libro);
             if (affectedRows == 0) {
                 throw new SQLException("No se pudo registrar el libro.");
             }
@@ -74,20 +109,24 @@ public class LibroRepository {
             }
         }
         
+        invalidarCache(libro.getIdLibro());
+        indexarIsbnAlConfirmar(libro);
+        indexarEnBusqueda(libro);
         return libro;
     }
 
     public void actualizar(Libro libro) throws SQLException {
-        if (libro.getIsbn() != null && !libro.getIsbn().isEmpty() && 
-            existeIsbnExcluyendoId(libro.getIsbn(), libro.getIdLibro())) {
-            throw new SQLException("Ya existe otro libro con el ISBN: " + libro.getIsbn());
-        }
+        verificarIsbnDisponible(libro);
         
         String sql = "UPDATE LIBRO SET titulo = ?, isbn = ?, editorial = ?, año = ?, precio = ?, genero = ?, " +
-                    "tipo_libro = ?, stock = ?, id_autor = ?, encuadernado = ?, num_edicion = ?, " +
-                    "extension = ?, permisos_impresion = ?, duracion = ?, plataforma = ?, narrador = ? " +
+                    "tipo_libro = ?, stock = COALESCE(?, stock), id_autor = ?, encuadernado = ?, num_edicion = ?, " +
+                    "extension = ?, permisos_impresion = ?, duracion = ?, plataforma = ?, narrador = ?, isbn_canonico = ? " +
                     "WHERE id_libro = ?";
         
+        // Con el stock en memoria activo, el stock de un libro físico se fija en su contador
+        // (que luego lo vuelca) y la columna se deja como está
+        boolean stockEnMemoria = StockEnMemoria.estaActivo() && libro.getTipoLibro() == Libro.TipoLibro.FISICO;
+        
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
@@ -98,7 +137,11 @@ public class LibroRepository {
             stmt.setBigDecimal(5, libro.getPrecio());
             stmt.setString(6, libro.getGenero());
             stmt.setString(7, libro.getTipoLibro().toString());
-            stmt.setInt(8, libro.getStock());
+            if (stockEnMemoria) {
+                stmt.setNull(8, Types.INTEGER);
+            } else {
+                stmt.setInt(8, libro.getStock());
+            }
             stmt.setInt(9, libro.getIdAutor());
             
             // Campos específicos según el tipo de libro
@@ -128,13 +171,25 @@ public class LibroRepository {
                 stmt.setString(16, libro.getNarrador());
             }
             
-            stmt.setInt(17, libro.getIdLibro());
+            ponerIsbnCanonico(stmt, 17, libro.getIsbn());
+            stmt.setInt(18, libro.getIdLibro());
             
-            int affectedRows = stmt.executeUpdate();
+            int affectedRows = ejecutarVerificandoIsbn(stmt, libro);
             if (affectedRows == 0) {
                 throw new SQLException("No se encontró el libro con ID: " + libro.getIdLibro());
             }
         }
+        
+        if (stockEnMemoria) {
+            // Dentro de una transacción la variación se aplica al confirmarla
+            StockEnMemoria actual = StockEnMemoria.instancia();
+            if (actual != null) {
+                actual.fijar(libro.getIdLibro(), libro.getStock());
+            }
+        }
+        invalidarCache(libro.getIdLibro());
+        indexarIsbnAlConfirmar(libro);
+        indexarEnBusqueda(libro);
     }
 
     public void eliminar(int id) throws SQLException {
@@ -154,6 +209,19 @@ public class LibroRepository {
                 throw new SQLException("No se encontró el libro con ID: " + id);
             }
         }
+        
+        invalidarCache(id);
+        DBConnection.alConfirmarTransaccion(() -> {
+            StockEnMemoria actual = StockEnMemoria.instancia();
+            if (actual != null) {
+                actual.olvidar(id);
+            }
+        });
+        DBConnection.alFinalizarTransaccion(() -> {
+            INDICE_BUSQUEDA.eliminarLibro(id);
+            INDICE_TRIGRAMAS.eliminarLibro(id);
+            AUTOCOMPLETADO.eliminarLibro(id);
+        });
     }
 
     public List<Libro> listar() throws SQLException {
@@ -172,7 +240,145 @@ public class LibroRepository {
         return libros;
     }
 
+    /**
+     * Lista el catálogo ordenado por tipo y título, de a una página por vez.
+     * Usa paginación por clave sobre (tipo_libro, titulo, id_libro), apoyada
+     * en el índice idx_libro_tipo_titulo.
+     * @param token token de continuación de la página anterior, o null para la primera página
+     * @param tamaño cantidad máxima de libros por página
+     * @return la página de libros y el token para pedir la siguiente
+     * @throws SQLException si hay error en la consulta
+     */
+    public Pagina<Libro> listarPagina(String token, int tamaño) throws SQLException {
+        String sql;
+        if (token == null) {
+            sql = "SELECT * FROM LIBRO ORDER BY tipo_libro, titulo, id_libro LIMIT ?";
+        } else {
+            sql = "SELECT * FROM LIBRO WHERE tipo_libro > ? OR (tipo_libro = ? AND " +
+                  "(titulo > ? OR (titulo = ? AND id_libro > ?))) " +
+                  "ORDER BY tipo_libro, titulo, id_libro LIMIT ?";
+        }
+        List<Libro> libros = new ArrayList<>();
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int indice = 1;
+            if (token != null) {
+                String[] clave = Pagina.decodificarToken(token, 3);
+                stmt.setString(indice++, clave[0]);
+                stmt.setString(indice++, clave[0]);
+                stmt.setString(indice++, clave[1]);
+                stmt.setString(indice++, clave[1]);
+                stmt.setInt(indice++, Integer.parseInt(clave[2]));
+            }
+            // Se pide una fila extra para saber si existe una página siguiente
+            stmt.setInt(indice, tamaño + 1);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    libros.add(mapearResultSetALibro(rs));
+                }
+            }
+        }
+        
+        String siguiente = null;
+        if (libros.size() > tamaño) {
+            libros.remove(tamaño);
+            Libro ultimo = libros.get(tamaño - 1);
+            siguiente = Pagina.codificarToken(ultimo.getTipoLibro().toString(), ultimo.getTitulo(),
+                String.valueOf(ultimo.getIdLibro()));
+        }
+        
+        return new Pagina<>(libros, siguiente);
+    }
+
+    /**
+     * Busca libros por título, género, editorial, ISBN o nombre del autor.
+     * Usa el índice de búsqueda en memoria si está construido (resultados por relevancia,
+     * sin distinguir mayúsculas ni acentos); si no, recurre a LIKE en la base de datos.
+     * Un criterio con forma de ISBN que el índice no encuentra también se busca con LIKE.
+     * @param criterio texto a buscar
+     * @return los libros encontrados
+     * @throws SQLException si hay error en la consulta
+     */
     public List<Libro> buscar(String criterio) throws SQLException {
+        if (!INDICE_BUSQUEDA.estaCargado()) {
+            return buscarConLike(criterio);
+        }
+        
+        List<Integer> ids = INDICE_BUSQUEDA.buscar(criterio);
+        if (ids.isEmpty() && pareceIsbn(criterio)) {
+            return buscarConLike(criterio);
+        }
+        return new ArrayList<>(obtenerPorIds(ids).values());
+    }
+
+    /**
+     * Busca libros cuyo título o autor se parezca al criterio aunque tenga errores de tipeo.
+     * Si el índice de trigramas no está construido, recurre a la búsqueda con LIKE.
+     * @param criterio texto a buscar
+     * @return los libros más parecidos, del más cercano al más lejano
+     * @throws SQLException si hay error en la consulta
+     */
+    public List<Libro> buscarAproximado(String criterio) throws SQLException {
+        if (!INDICE_TRIGRAMAS.estaCargado()) {
+            return buscarConLike(criterio);
+        }
+        
+        List<Integer> ids = INDICE_TRIGRAMAS.buscar(criterio);
+        return new ArrayList<>(obtenerPorIds(ids).values());
+    }
+
+    /**
+     * Sugiere títulos y autores que empiezan con el prefijo, los más vendidos primero
+     * @param prefijo lo que el usuario escribió hasta el momento
+     * @return hasta CANTIDAD_SUGERENCIAS sugerencias; vacío si el autocompletado no está construido
+     */
+    public List<AutocompletadoTrie.Sugerencia> sugerir(String prefijo) {
+        return AUTOCOMPLETADO.sugerir(prefijo);
+    }
+
+    /**
+     * @return true si el autocompletado está construido y puede usarse
+     */
+    public static boolean autocompletadoDisponible() {
+        return AUTOCOMPLETADO.estaCargado();
+    }
+
+    /**
+     * Construye (o reconstruye) los índices de búsqueda y el autocompletado
+     * con todo el catálogo, los autores y las unidades vendidas de cada libro
+     * @throws SQLException si hay error en la consulta
+     */
+    public static void construirIndiceBusqueda() throws SQLException {
+        List<Libro> libros = new LibroRepository().listar();
+        List<Autor> autores = new AutorRepository().listar();
+        Map<Integer, Integer> vendidos = new DetalleVentaRepository().contarVendidosPorLibro();
+        INDICE_BUSQUEDA.reconstruir(libros, autores);
+        INDICE_TRIGRAMAS.reconstruir(libros, autores);
+        AUTOCOMPLETADO.reconstruir(libros, autores, vendidos);
+        INDICE_ISBN.limpiar();
+        for (Libro libro : libros) {
+            indexarIsbn(libro);
+        }
+    }
+
+    // Solo dígitos, guiones, espacios y X, con al menos un dígito
+    private static boolean pareceIsbn(String criterio) {
+        boolean tieneDigito = false;
+        for (int i = 0; i < criterio.length(); i++) {
+            char c = criterio.charAt(i);
+            if (c >= '0' && c <= '9') {
+                tieneDigito = true;
+            } else if (c != '-' && c != ' ' && c != 'X' && c != 'x') {
+                return false;
+            }
+        }
+        return tieneDigito;
+    }
+
+    private List<Libro> buscarConLike(String criterio) throws SQLException {
         String sql = "SELECT * FROM LIBRO WHERE titulo LIKE ? OR isbn LIKE ? OR genero LIKE ? ORDER BY titulo";
         List<Libro> libros = new ArrayList<>();
         
@@ -213,7 +419,22 @@ public class LibroRepository {
         return libros;
     }
 
+    /**
+     * Obtiene un libro por ID, desde la caché si está disponible.
+     * Dentro de una transacción siempre se consulta la base de datos.
+     * @param id ID del libro
+     * @return una copia del libro, o null si no existe
+     * @throws SQLException si hay error en la consulta
+     */
     public Libro obtenerPorId(int id) throws SQLException {
+        boolean usarCache = !DBConnection.enTransaccion();
+        if (usarCache) {
+            Libro cacheado = CACHE_POR_ID.obtener(id);
+            if (cacheado != null) {
+                return new Libro(cacheado);
+            }
+        }
+        
         String sql = "SELECT * FROM LIBRO WHERE id_libro = ?";
         
         try (Connection conn = DBConnection.getConnection();
@@ -223,7 +444,55 @@ public class LibroRepository {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapearResultSetALibro(rs);
+                    Libro libro = mapearResultSetALibro(rs);
+                    if (usarCache) {
+                        guardarEnCache(libro);
+                    }
+                    return libro;
+                }
+            }
+        }
+        
+        return null;
+    }
+
+    /**
+     * Obtiene un libro por ISBN. Acepta ISBN-10 o ISBN-13, con o sin guiones
+     * (por ejemplo lo leído por un lector de código de barras), y lo resuelve
+     * con el índice en memoria sin consultar la base de datos si ya lo conoce.
+     * @param isbn ISBN a buscar
+     * @return una copia del libro, o null si no existe
+     * @throws SQLException si hay error en la consulta
+     */
+    public Libro obtenerPorIsbn(String isbn) throws SQLException {
+        long clave = Isbn.canonizar(isbn);
+        if (clave != Isbn.INVALIDO && !DBConnection.enTransaccion()) {
+            int id = INDICE_ISBN.obtener(clave);
+            if (id != MapaLongEntero.SIN_VALOR) {
+                Libro libro = obtenerPorId(id);
+                if (libro != null && Isbn.canonizar(libro.getIsbn()) == clave) {
+                    return libro;
+                }
+                INDICE_ISBN.quitarSi(clave, id);
+            }
+        }
+        
+        // Un ISBN válido se busca por su forma canónica, escrito como se haya escrito
+        String sql = clave != Isbn.INVALIDO ? "SELECT * FROM LIBRO WHERE isbn_canonico = ?" :
+                                              "SELECT * FROM LIBRO WHERE isbn = ?";
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setString(1, clave != Isbn.INVALIDO ? Isbn.formatear(clave) : isbn);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Libro libro = mapearResultSetALibro(rs);
+                    if (!DBConnection.enTransaccion()) {
+                        guardarEnCache(libro);
+                    }
+                    return libro;
                 }
             }
         }
@@ -231,7 +500,57 @@ public class LibroRepository {
         return null;
     }
 
+    /**
+     * Obtiene varios registros por ID con consultas por lotes (WHERE id_libro IN (...)).
+     * Los libros presentes en la caché no se consultan.
+     * @param ids IDs a buscar
+     * @return mapa ID -> libro; los IDs inexistentes no aparecen en el mapa
+     * @throws SQLException si hay error en la consulta
+     */
+    public Map<Integer, Libro> obtenerPorIds(Collection<Integer> ids) throws SQLException {
+        if (DBConnection.enTransaccion()) {
+            return ConsultaPorIds.obtener("LIBRO", "id_libro", ids, this::mapearResultSetALibro);
+        }
+        
+        Map<Integer, Libro> cacheados = new LinkedHashMap<>();
+        List<Integer> faltantes = new ArrayList<>();
+        for (Integer id : ids) {
+            Libro cacheado = CACHE_POR_ID.obtener(id);
+            if (cacheado != null) {
+                cacheados.put(id, new Libro(cacheado));
+            } else {
+                faltantes.add(id);
+            }
+        }
+        
+        Map<Integer, Libro> consultados = ConsultaPorIds.obtener("LIBRO", "id_libro", faltantes, this::mapearResultSetALibro);
+        for (Libro libro : consultados.values()) {
+            guardarEnCache(libro);
+        }
+        
+        Map<Integer, Libro> libros = new LinkedHashMap<>();
+        for (Integer id : ids) {
+            Libro libro = cacheados.containsKey(id) ? cacheados.get(id) : consultados.get(id);
+            if (libro != null) {
+                libros.put(id, libro);
+            }
+        }
+        return libros;
+    }
+
     public void actualizarStock(int idLibro, int cantidad) throws SQLException {
+        StockEnMemoria stockEnMemoria = StockEnMemoria.instancia();
+        if (stockEnMemoria != null) {
+            Map<Integer, Integer> variacion = new HashMap<>();
+            variacion.put(idLibro, cantidad);
+            List<Integer> fallidos = stockEnMemoria.aplicar(variacion);
+            invalidarCache(idLibro);
+            if (!fallidos.isEmpty()) {
+                throw new SQLException("No se pudo actualizar el stock del libro con ID: " + idLibro);
+            }
+            return;
+        }
+        
         String sql = "UPDATE LIBRO SET stock = stock + ? WHERE id_libro = ? AND tipo_libro = 'FISICO'";
         
         try (Connection conn = DBConnection.getConnection();
@@ -245,43 +564,205 @@ public class LibroRepository {
                 throw new SQLException("No se pudo actualizar el stock del libro con ID: " + idLibro);
             }
         }
+        
+        invalidarCache(idLibro);
     }
 
-    private boolean existeIsbn(String isbn) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM LIBRO WHERE isbn = ?";
+    /**
+     * Aplica en un solo lote las variaciones de stock de varios libros físicos.
+     * Cada sentencia está protegida con "stock + ? >= 0", por lo que un descuento
+     * que dejaría stock negativo no modifica la fila y se informa como fallido.
+     * Los libros se actualizan en orden de ID para que transacciones concurrentes
+     * bloqueen las filas de LIBRO siempre en el mismo orden.
+     * @param variaciones ID de libro -> cantidad a sumar (negativa para descontar)
+     * @return IDs de los libros que no pudieron actualizarse (stock insuficiente, no físico o inexistente)
+     * @throws SQLException si hay error al ejecutar el lote
+     */
+    public List<Integer> actualizarStockLote(Map<Integer, Integer> variaciones) throws SQLException {
+        List<Integer> fallidos = new ArrayList<>();
+        if (variaciones.isEmpty()) {
+            return fallidos;
+        }
         
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, isbn);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
+        List<Integer> ids = new ArrayList<>(new TreeMap<>(variaciones).keySet());
+        
+        StockEnMemoria stockEnMemoria = StockEnMemoria.instancia();
+        if (stockEnMemoria != null) {
+            try {
+                return stockEnMemoria.aplicar(variaciones);
+            } finally {
+                for (Integer idLibro : ids) {
+                    invalidarCache(idLibro);
                 }
             }
         }
         
-        return false;
-    }
-
-    private boolean existeIsbnExcluyendoId(String isbn, int idExcluir) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM LIBRO WHERE isbn = ? AND id_libro != ?";
+        String sql = "UPDATE LIBRO SET stock = stock + ? WHERE id_libro = ? AND tipo_libro = 'FISICO' AND stock + ? >= 0";
         
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            stmt.setString(1, isbn);
-            stmt.setInt(2, idExcluir);
+            for (Integer idLibro : ids) {
+                int cantidad = variaciones.get(idLibro);
+                stmt.setInt(1, cantidad);
+                stmt.setInt(2, idLibro);
+                stmt.setInt(3, cantidad);
+                stmt.addBatch();
+            }
             
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
+            int[] resultados = stmt.executeBatch();
+            for (int i = 0; i < resultados.length; i++) {
+                if (resultados[i] == 0 || resultados[i] == Statement.EXECUTE_FAILED) {
+                    fallidos.add(ids.get(i));
                 }
             }
+        } finally {
+            for (Integer idLibro : ids) {
+                invalidarCache(idLibro);
+            }
         }
         
-        return false;
+        return fallidos;
+    }
+
+    /**
+     * @return reporte de las cachés del catálogo, una por línea
+     */
+    public static String reporteCache() {
+        return CACHE_POR_ID.reporte() + "\n" +
+               "Índice ISBN - entradas: " + INDICE_ISBN.tamaño() + ", capacidad: " + INDICE_ISBN.capacidad() + "\n" +
+               INDICE_BUSQUEDA.reporte() +
+               "\n" + INDICE_TRIGRAMAS.reporte() + "\n" + AUTOCOMPLETADO.reporte();
+    }
+
+    /**
+     * Actualiza el nombre de un autor en el índice de búsqueda al terminar la transacción en curso
+     * @param autor el autor registrado o actualizado
+     */
+    static void indexarAutorEnBusqueda(Autor autor) {
+        int id = autor.getIdAutor();
+        String nombre = autor.getNombre();
+        DBConnection.alFinalizarTransaccion(() -> {
+            INDICE_BUSQUEDA.indexarAutor(id, nombre);
+            INDICE_TRIGRAMAS.indexarAutor(id, nombre);
+            AUTOCOMPLETADO.indexarAutor(id, nombre);
+        });
+    }
+
+    /**
+     * Quita un autor del índice de búsqueda al terminar la transacción en curso
+     * @param idAutor ID del autor eliminado
+     */
+    static void eliminarAutorDeBusqueda(int idAutor) {
+        DBConnection.alFinalizarTransaccion(() -> {
+            INDICE_BUSQUEDA.eliminarAutor(idAutor);
+            INDICE_TRIGRAMAS.eliminarAutor(idAutor);
+            AUTOCOMPLETADO.eliminarAutor(idAutor);
+        });
+    }
+
+    private void indexarEnBusqueda(Libro libro) {
+        Libro copia = new Libro(libro);
+        DBConnection.alFinalizarTransaccion(() -> {
+            INDICE_BUSQUEDA.indexarLibro(copia);
+            INDICE_TRIGRAMAS.indexarLibro(copia);
+            AUTOCOMPLETADO.indexarLibro(copia);
+        });
+    }
+
+    /**
+     * Suma unidades vendidas al peso del libro en el autocompletado cuando se confirma la venta
+     * @param idLibro ID del libro vendido
+     * @param cantidad unidades vendidas
+     */
+    static void sumarVendidosEnAutocompletado(int idLibro, int cantidad) {
+        DBConnection.alConfirmarTransaccion(() -> AUTOCOMPLETADO.sumarVendidos(idLibro, cantidad));
+    }
+
+    private void guardarEnCache(Libro libro) {
+        CACHE_POR_ID.guardar(libro.getIdLibro(), new Libro(libro));
+        indexarIsbn(libro);
+    }
+
+    private static void indexarIsbn(Libro libro) {
+        long clave = Isbn.canonizar(libro.getIsbn());
+        if (clave != Isbn.INVALIDO) {
+            INDICE_ISBN.guardar(clave, libro.getIdLibro());
+        }
+    }
+
+    /**
+     * Verifica en memoria que ningún otro libro tenga el mismo ISBN, aunque esté escrito
+     * distinto (con o sin guiones, ISBN-10 o 13). Solo consulta la base de datos para
+     * confirmar un posible duplicado. La verificación alcanza a los libros que el índice
+     * conoce (todo el catálogo después de construirIndiceBusqueda(), más los leídos o
+     * escritos desde entonces). Para el resto, la restricción UNIQUE sobre isbn_canonico
+     * rechaza el mismo ISBN aunque esté escrito de otra forma (ver ejecutarVerificandoIsbn).
+     */
+    private void verificarIsbnDisponible(Libro libro) throws SQLException {
+        long clave = Isbn.canonizar(libro.getIsbn());
+        if (clave == Isbn.INVALIDO) {
+            return;
+        }
+        int id = INDICE_ISBN.obtener(clave);
+        if (id == MapaLongEntero.SIN_VALOR || id == libro.getIdLibro()) {
+            return;
+        }
+        Libro existente = obtenerPorId(id);
+        if (existente != null && Isbn.canonizar(existente.getIsbn()) == clave) {
+            throw new SQLException("Ya existe otro libro con el ISBN: " + libro.getIsbn());
+        }
+        INDICE_ISBN.quitarSi(clave, id);
+    }
+
+    // Forma canónica del ISBN (13 dígitos), o NULL si no es un ISBN válido
+    private static void ponerIsbnCanonico(PreparedStatement stmt, int indice, String isbn) throws SQLException {
+        long clave = Isbn.canonizar(isbn);
+        if (clave == Isbn.INVALIDO) {
+            stmt.setNull(indice, Types.CHAR);
+        } else {
+            stmt.setString(indice, Isbn.formatear(clave));
+        }
+    }
+
+    private int ejecutarVerificandoIsbn(PreparedStatement stmt, Libro libro) throws SQLException {
+        int affectedRows;
+        try {
+            affectedRows = stmt.executeUpdate();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // Solo la clave duplicada es un ISBN repetido; una clave foránea inválida
+            // (por ejemplo un autor inexistente) se informa tal cual
+            if (e.getErrorCode() != ERROR_CLAVE_DUPLICADA) {
+                throw e;
+            }
+            throw new SQLException("Ya existe otro libro con el ISBN: " + libro.getIsbn(), e);
+        }
+        return affectedRows;
+    }
+
+    // Se indexa al confirmar: si la transacción se revierte el ISBN sigue libre
+    private void indexarIsbnAlConfirmar(Libro libro) {
+        Libro copia = new Libro(libro);
+        DBConnection.alConfirmarTransaccion(() -> indexarIsbn(copia));
+    }
+
+    /**
+     * Invalida un libro de la caché (cambios de stock hechos fuera de este repositorio)
+     * @param idLibro ID del libro
+     */
+    static void invalidarEnCache(int idLibro) {
+        CACHE_POR_ID.invalidar(idLibro);
+    }
+
+    /**
+     * Invalida un libro de la caché ahora y otra vez al terminar la transacción en curso,
+     * para descartar lo que otro hilo haya leído antes del commit.
+     */
+    private void invalidarCache(int idLibro) {
+        // Una entrada del índice ISBN que quede huérfana se descarta al usarla
+        Runnable invalidar = () -> CACHE_POR_ID.invalidar(idLibro);
+        invalidar.run();
+        DBConnection.alFinalizarTransaccion(invalidar);
     }
 
     private boolean estaEnVentas(int idLibro) throws SQLException {
@@ -335,6 +816,7 @@ public class LibroRepository {
         libro.setPlataforma(rs.getString("plataforma"));
         libro.setNarrador(rs.getString("narrador"));
         
+        StockEnMemoria.ajustar(libro);
         return libro;
     }
 }
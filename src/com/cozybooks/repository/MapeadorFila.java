@@ -0,0 +1,13 @@
+package com.cozybooks.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Convierte la fila actual de un ResultSet en una entidad.
+ * Permite reutilizar los métodos mapearResultSetA... de cada repositorio
+ * en las consultas compartidas (por lotes de IDs, en stream, etc.).
+ */
+interface MapeadorFila<T> {
+    T mapear(ResultSet rs) throws SQLException;
+}
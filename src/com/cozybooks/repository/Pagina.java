@@ -0,0 +1,69 @@
+package com.cozybooks.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Página de resultados de una consulta paginada por clave (keyset).
+ * El token de continuación codifica la clave de ordenamiento del último elemento
+ * y se pasa tal cual para pedir la página siguiente; es null cuando no hay más datos.
+ */
+public class Pagina<T> {
+    private static final String SEPARADOR = ".";
+
+    private final List<T> elementos;
+    private final String tokenSiguiente;
+
+    public Pagina(List<T> elementos, String tokenSiguiente) {
+        this.elementos = elementos;
+        this.tokenSiguiente = tokenSiguiente;
+    }
+
+    public List<T> getElementos() {
+        return elementos;
+    }
+
+    public String getTokenSiguiente() {
+        return tokenSiguiente;
+    }
+
+    public boolean hayMas() {
+        return tokenSiguiente != null;
+    }
+
+    /**
+     * Codifica los valores de la clave de ordenamiento en un token opaco
+     * @param partes valores de la clave, en orden
+     * @return token de continuación
+     */
+    static String codificarToken(String... partes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < partes.length; i++) {
+            if (i > 0) {
+                sb.append(SEPARADOR);
+            }
+            sb.append(Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(partes[i].getBytes(StandardCharsets.UTF_8)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decodifica un token generado con codificarToken
+     * @param token el token recibido
+     * @param cantidad cantidad de valores esperados
+     * @return los valores de la clave de ordenamiento
+     * @throws IllegalArgumentException si el token no es válido
+     */
+    static String[] decodificarToken(String token, int cantidad) {
+        String[] partes = token.split("\\" + SEPARADOR, -1);
+        if (partes.length != cantidad) {
+            throw new IllegalArgumentException("Token de paginación inválido.");
+        }
+        for (int i = 0; i < partes.length; i++) {
+            partes[i] = new String(Base64.getUrlDecoder().decode(partes[i]), StandardCharsets.UTF_8);
+        }
+        return partes;
+    }
+}
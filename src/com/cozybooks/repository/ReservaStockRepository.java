@@ -0,0 +1,277 @@
+package com.cozybooks.repository;
+
+import com.cozybooks.model.ReservaStock;
+import com.cozybooks.util.DBConnection;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reservas de stock de libros físicos para carritos en curso.
+ *
+ * Reservar descuenta el stock en el momento con un UPDATE condicionado a
+ * "stock >= cantidad" (ver LibroRepository.actualizarStockLote), así dos cajas
+ * no pueden vender el último ejemplar y ninguna espera bloqueos hasta confirmar.
+ * Confirmar la venta consume la reserva; cancelarla o dejarla vencer devuelve
+ * la cantidad a LIBRO.stock. El DELETE de la reserva decide quién repone el
+ * stock, por lo que una cancelación y el liberador de vencidas no lo hacen dos veces.
+ */
+public class ReservaStockRepository {
+    // Tiempo que un carrito puede retener stock sin confirmar la venta
+    private static final int DURACION_RESERVA_SEGUNDOS = 10 * 60;
+    private static final long PERIODO_LIBERADOR_MS = 30 * 1000;
+    private static final int LOTE_LIBERADOR = 500;
+
+    private static final AtomicLong RESERVAS = new AtomicLong();
+    private static final AtomicLong RECHAZADAS = new AtomicLong();
+    private static final AtomicLong CONSUMIDAS = new AtomicLong();
+    private static final AtomicLong LIBERADAS = new AtomicLong();
+    private static final AtomicLong VENCIDAS = new AtomicLong();
+    private static volatile String ultimoErrorLiberador = null;
+
+    private static ScheduledExecutorService liberador = null;
+
+    private final LibroRepository libroRepository = new LibroRepository();
+
+    /**
+     * Retiene stock de un libro físico para un carrito. Si no hay una transacción
+     * activa la reserva se confirma de inmediato, para que sea visible a las demás cajas.
+     * @param idLibro ID del libro
+     * @param cantidad unidades a retener
+     * @return la reserva creada, o null si no hay stock suficiente (o el libro no es físico)
+     * @throws SQLException si hay error al registrar la reserva
+     */
+    public ReservaStock reservar(int idLibro, int cantidad) throws SQLException {
+        String sql = "INSERT INTO RESERVA_STOCK (id_libro, cantidad, vence_en) " +
+                     "VALUES (?, ?, DATE_ADD(CURRENT_TIMESTAMP, INTERVAL ? SECOND))";
+
+        boolean propia = !DBConnection.enTransaccion();
+        if (propia) {
+            DBConnection.beginTransaction();
+        }
+        try {
+            Map<Integer, Integer> descuento = new HashMap<>();
+            descuento.put(idLibro, -cantidad);
+            if (!libroRepository.actualizarStockLote(descuento).isEmpty()) {
+                if (propia) {
+                    DBConnection.rollbackTransaction();
+                }
+                RECHAZADAS.incrementAndGet();
+                return null;
+            }
+
+            ReservaStock reserva = new ReservaStock(idLibro, cantidad);
+            try (Connection conn = DBConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+                stmt.setInt(1, idLibro);
+                stmt.setInt(2, cantidad);
+                stmt.setInt(3, DURACION_RESERVA_SEGUNDOS);
+                stmt.executeUpdate();
+
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        reserva.setIdReserva(generatedKeys.getInt(1));
+                    } else {
+                        throw new SQLException("No se pudo obtener el ID de la reserva registrada.");
+                    }
+                }
+            }
+            reserva.setVenceEn(LocalDateTime.now().plusSeconds(DURACION_RESERVA_SEGUNDOS));
+
+            if (propia) {
+                DBConnection.commitTransaction();
+            }
+            RESERVAS.incrementAndGet();
+            return reserva;
+
+        } catch (SQLException e) {
+            if (propia) {
+                DBConnection.rollbackTransaction();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Consume las reservas de una venta confirmada. Debe llamarse dentro de la
+     * transacción de la venta para que, si esta se revierte, las reservas sigan vigentes.
+     * @param reservas reservas del carrito
+     * @return reservas que ya habían vencido (su stock fue devuelto y debe descontarse de nuevo)
+     * @throws SQLException si hay error al eliminar las reservas
+     */
+    public List<ReservaStock> consumir(List<ReservaStock> reservas) throws SQLException {
+        List<ReservaStock> vencidas = new ArrayList<>();
+        if (reservas.isEmpty()) {
+            return vencidas;
+        }
+
+        int[] resultados = eliminar(reservas);
+        for (int i = 0; i < resultados.length; i++) {
+            if (resultados[i] == 0 || resultados[i] == Statement.EXECUTE_FAILED) {
+                vencidas.add(reservas.get(i));
+            }
+        }
+        int consumidas = reservas.size() - vencidas.size();
+        DBConnection.alConfirmarTransaccion(() -> CONSUMIDAS.addAndGet(consumidas));
+        return vencidas;
+    }
+
+    /**
+     * Libera reservas y devuelve su stock. Las que ya fueron liberadas o
+     * consumidas se ignoran.
+     * @param reservas reservas a liberar
+     * @return cantidad de reservas efectivamente liberadas
+     * @throws SQLException si hay error al liberar
+     */
+    public int liberar(List<ReservaStock> reservas) throws SQLException {
+        if (reservas.isEmpty()) {
+            return 0;
+        }
+
+        boolean propia = !DBConnection.enTransaccion();
+        if (propia) {
+            DBConnection.beginTransaction();
+        }
+        try {
+            int[] resultados = eliminar(reservas);
+            Map<Integer, Integer> devoluciones = new HashMap<>();
+            int liberadas = 0;
+            for (int i = 0; i < resultados.length; i++) {
+                if (resultados[i] > 0) {
+                    ReservaStock reserva = reservas.get(i);
+                    devoluciones.merge(reserva.getIdLibro(), reserva.getCantidad(), Integer::sum);
+                    liberadas++;
+                }
+            }
+
+            List<Integer> fallidos = libroRepository.actualizarStockLote(devoluciones);
+            if (!fallidos.isEmpty()) {
+                throw new SQLException("No se pudo devolver el stock de los libros con ID: " + fallidos);
+            }
+
+            if (propia) {
+                DBConnection.commitTransaction();
+            }
+            LIBERADAS.addAndGet(liberadas);
+            return liberadas;
+
+        } catch (SQLException e) {
+            if (propia) {
+                DBConnection.rollbackTransaction();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Libera las reservas vencidas (carritos abandonados o cajas que se cerraron)
+     * @return cantidad de reservas liberadas
+     * @throws SQLException si hay error al consultar o liberar
+     */
+    public int liberarVencidas() throws SQLException {
+        String sql = "SELECT id_reserva, id_libro, cantidad, vence_en FROM RESERVA_STOCK " +
+                     "WHERE vence_en < CURRENT_TIMESTAMP ORDER BY id_reserva LIMIT ?";
+
+        int total = 0;
+        while (true) {
+            List<ReservaStock> vencidas = new ArrayList<>();
+            try (Connection conn = DBConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setInt(1, LOTE_LIBERADOR);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        vencidas.add(mapearResultSetAReserva(rs));
+                    }
+                }
+            }
+
+            int liberadas = liberar(vencidas);
+            VENCIDAS.addAndGet(liberadas);
+            total += liberadas;
+            if (vencidas.size() < LOTE_LIBERADOR) {
+                return total;
+            }
+        }
+    }
+
+    /**
+     * Inicia la tarea en segundo plano que libera periódicamente las reservas vencidas
+     */
+    public static synchronized void iniciarLiberador() {
+        if (liberador != null) {
+            return;
+        }
+        liberador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "cozybooks-reservas-liberador");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        ReservaStockRepository repositorio = new ReservaStockRepository();
+        liberador.scheduleWithFixedDelay(() -> {
+            try {
+                repositorio.liberarVencidas();
+                ultimoErrorLiberador = null;
+            } catch (Exception e) {
+                // No se imprime para no interrumpir el menú; queda en el reporte
+                ultimoErrorLiberador = e.getMessage();
+            }
+        }, 0, PERIODO_LIBERADOR_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Detiene la tarea que libera las reservas vencidas
+     */
+    public static synchronized void detenerLiberador() {
+        if (liberador != null) {
+            liberador.shutdownNow();
+            liberador = null;
+        }
+    }
+
+    /**
+     * @return resumen en una línea de las reservas realizadas desde el inicio
+     */
+    public static String reporte() {
+        String reporte = "Reservas de stock - realizadas: " + RESERVAS.get() +
+                         ", rechazadas por falta de stock: " + RECHAZADAS.get() +
+                         ", consumidas: " + CONSUMIDAS.get() +
+                         ", liberadas: " + LIBERADAS.get() + " (vencidas: " + VENCIDAS.get() + ")";
+        String error = ultimoErrorLiberador;
+        return error == null ? reporte : reporte + "\nÚltimo error del liberador: " + error;
+    }
+
+    // Elimina las reservas en un lote; cada resultado indica si la fila todavía existía
+    private int[] eliminar(List<ReservaStock> reservas) throws SQLException {
+        String sql = "DELETE FROM RESERVA_STOCK WHERE id_reserva = ?";
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (ReservaStock reserva : reservas) {
+                stmt.setInt(1, reserva.getIdReserva());
+                stmt.addBatch();
+            }
+            return stmt.executeBatch();
+        }
+    }
+
+    private ReservaStock mapearResultSetAReserva(ResultSet rs) throws SQLException {
+        ReservaStock reserva = new ReservaStock(rs.getInt("id_libro"), rs.getInt("cantidad"));
+        reserva.setIdReserva(rs.getInt("id_reserva"));
+        Timestamp venceEn = rs.getTimestamp("vence_en");
+        if (venceEn != null) {
+            reserva.setVenceEn(venceEn.toLocalDateTime());
+        }
+        return reserva;
+    }
+}
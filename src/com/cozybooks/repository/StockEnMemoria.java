@@ -0,0 +1,616 @@
+package com.cozybooks.repository;
+
+import com.cozybooks.model.Libro;
+import com.cozybooks.util.DBConnection;
+import com.cozybooks.util.DiarioStock;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stock de libros físicos llevado en memoria para días de alta demanda.
+ *
+ * Mientras está activo, LibroRepository.actualizarStock/actualizarStockLote no
+ * modifican LIBRO.stock: cada libro tiene un contador con el stock disponible
+ * (descontado con compareAndSet, sin bajar de cero) y la variación aún no volcada.
+ * Cada variación se escribe antes en un diario local (DiarioStock) y se confirma
+ * con un fsync compartido entre hilos; cada segundo las variaciones acumuladas se
+ * vuelcan a LIBRO.stock en un solo lote junto con la última secuencia del diario
+ * que incluyen (tabla DIARIO_STOCK).
+ *
+ * Dentro de una transacción los descuentos se reservan de inmediato en el contador
+ * (otra caja ya no puede vender esas unidades) y se devuelven si la transacción se
+ * revierte; las reposiciones esperan al commit, para que otra caja no venda unidades
+ * que todavía podrían volver atrás. Las variaciones de la transacción se escriben y
+ * sincronizan en el diario antes del commit, marcadas con un identificador que se
+ * inserta en DIARIO_STOCK_TRANSACCION dentro de la misma transacción: al recuperar
+ * el diario solo se aplican las de transacciones cuya marca existe, así una caída
+ * antes o después del commit no pierde ni inventa variaciones. El volcado que las
+ * lleva a LIBRO.stock borra la marca en su misma transacción, y los segmentos del
+ * diario con registros de transacciones sin terminar no se eliminan.
+ *
+ * Un error al escribir el diario se informa a quien pidió la variación (y revierte
+ * su transacción), nunca solo en el reporte.
+ *
+ * Pensado para un único nodo: otra instancia de la aplicación no ve los contadores.
+ */
+public class StockEnMemoria {
+    private static final Path DIRECTORIO_DIARIO = Paths.get("diario-stock");
+    private static final long PERIODO_VOLCADO_MS = 1000;
+    private static final int ID_DIARIO = 1;
+
+    private static volatile StockEnMemoria activo = null;
+
+    private final ConcurrentHashMap<Integer, Contador> contadores = new ConcurrentHashMap<>();
+    // Transacciones con registros en el diario que todavía no se confirmaron ni revirtieron
+    private final ConcurrentSkipListSet<Long> transaccionesEnCurso = new ConcurrentSkipListSet<>();
+    // Transacciones confirmadas cuyas variaciones están pendientes de volcar (y su marca por borrar)
+    private final ConcurrentLinkedQueue<Long> transaccionesConfirmadas = new ConcurrentLinkedQueue<>();
+    // Las variaciones toman el bloqueo de lectura; el volcado toma el de escritura para
+    // rotar el diario y vaciar los pendientes sin variaciones a medio registrar
+    private final ReentrantReadWriteLock bloqueoVolcado = new ReentrantReadWriteLock();
+    private final DiarioStock diario;
+    private final ScheduledExecutorService volcador;
+    private long ultimaSecuenciaVolcada;
+
+    private final AtomicLong variaciones = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong volcados = new AtomicLong();
+    private final AtomicLong filasVolcadas = new AtomicLong();
+    private final AtomicLong nanosVolcado = new AtomicLong();
+    private volatile String ultimoError = null;
+
+    private static class Contador {
+        private final AtomicInteger disponible;
+        // Suma de las variaciones registradas en el diario y aún no volcadas a LIBRO.stock
+        private final AtomicInteger pendiente = new AtomicInteger();
+
+        Contador(int stock) {
+            this.disponible = new AtomicInteger(stock);
+        }
+
+        // Aplica la variación si no deja el stock negativo
+        boolean mover(int variacion) {
+            while (true) {
+                int actual = disponible.get();
+                int nuevo = actual + variacion;
+                if (variacion < 0 && nuevo < 0) {
+                    return false;
+                }
+                if (disponible.compareAndSet(actual, nuevo)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private StockEnMemoria(DiarioStock diario, long ultimaSecuenciaVolcada) {
+        this.diario = diario;
+        this.ultimaSecuenciaVolcada = ultimaSecuenciaVolcada;
+        this.volcador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "cozybooks-stock-volcador");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.volcador.scheduleWithFixedDelay(() -> {
+            try {
+                volcar();
+            } catch (Exception e) {
+                // Las variaciones siguen pendientes y en el diario; se reintenta en el próximo ciclo
+                ultimoError = e.getMessage();
+            }
+        }, PERIODO_VOLCADO_MS, PERIODO_VOLCADO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Activa el stock en memoria. Antes reaplica lo que haya quedado en el diario.
+     * @throws SQLException si no se puede recuperar el diario o crear uno nuevo
+     */
+    public static synchronized void activar() throws SQLException {
+        if (activo != null) {
+            return;
+        }
+        recuperarDiario();
+        long marca = leerUltimaSecuenciaVolcada();
+        try {
+            activo = new StockEnMemoria(new DiarioStock(DIRECTORIO_DIARIO, marca), marca);
+        } catch (IOException e) {
+            throw new SQLException("No se pudo crear el diario de stock: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Vuelca las variaciones pendientes y desactiva el stock en memoria.
+     * Si el volcado falla, las variaciones quedan en el diario y se recuperan al próximo inicio.
+     */
+    public static synchronized void desactivar() {
+        StockEnMemoria actual = activo;
+        if (actual == null) {
+            return;
+        }
+        activo = null;
+        actual.volcador.shutdown();
+        try {
+            actual.volcador.awaitTermination(PERIODO_VOLCADO_MS * 10, TimeUnit.MILLISECONDS);
+            actual.volcar();
+        } catch (Exception e) {
+            System.out.println("Aviso: No se pudo volcar el stock en memoria, se recuperará del diario: " + e.getMessage());
+        }
+        try {
+            actual.diario.close();
+        } catch (IOException e) {
+            System.out.println("Aviso: No se pudo cerrar el diario de stock: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reaplica a LIBRO.stock las variaciones del diario local que no llegaron a volcarse
+     * (por ejemplo tras una caída) y elimina sus segmentos. Las variaciones de una
+     * transacción solo se aplican si su marca está en DIARIO_STOCK_TRANSACCION (se
+     * confirmó y todavía no se volcó). Sin diario no hace nada.
+     * @return cantidad de registros del diario reaplicados
+     * @throws SQLException si no se puede leer el diario o escribir en la base de datos
+     */
+    public static synchronized int recuperarDiario() throws SQLException {
+        if (activo != null) {
+            return 0;
+        }
+        List<DiarioStock.Registro> registros;
+        try {
+            registros = DiarioStock.leer(DIRECTORIO_DIARIO);
+        } catch (IOException e) {
+            throw new SQLException("No se pudo leer el diario de stock: " + e.getMessage());
+        }
+
+        int aplicados = 0;
+        if (!registros.isEmpty()) {
+            long marca = leerUltimaSecuenciaVolcada();
+            Set<Long> confirmadas = leerTransaccionesConfirmadas();
+            Map<Integer, Integer> pendientes = new TreeMap<>();
+            long ultima = marca;
+            for (DiarioStock.Registro registro : registros) {
+                ultima = Math.max(ultima, registro.getSecuencia());
+                boolean aplicar = registro.getTransaccion() == DiarioStock.SIN_TRANSACCION
+                    ? registro.getSecuencia() > marca
+                    : confirmadas.contains(registro.getTransaccion());
+                if (aplicar) {
+                    pendientes.merge(registro.getIdLibro(), registro.getVariacion(), Integer::sum);
+                    aplicados++;
+                }
+            }
+            if (ultima > marca || !confirmadas.isEmpty()) {
+                escribirVolcado(pendientes, ultima, confirmadas);
+            }
+        }
+
+        try {
+            DiarioStock.eliminarSegmentos(DIRECTORIO_DIARIO);
+        } catch (IOException e) {
+            throw new SQLException("No se pudo limpiar el diario de stock: " + e.getMessage());
+        }
+        return aplicados;
+    }
+
+    /**
+     * @return true si el stock de los libros físicos se lleva en memoria
+     */
+    public static boolean estaActivo() {
+        return activo != null;
+    }
+
+    /**
+     * @return la instancia activa, o null si el stock se actualiza directamente en la base de datos
+     */
+    static StockEnMemoria instancia() {
+        return activo;
+    }
+
+    /**
+     * Reemplaza el stock leído de la base de datos por el disponible en memoria
+     * @param libro libro recién leído
+     */
+    static void ajustar(Libro libro) {
+        StockEnMemoria actual = activo;
+        if (actual == null || libro.getTipoLibro() != Libro.TipoLibro.FISICO) {
+            return;
+        }
+        Contador contador = actual.contadores.get(libro.getIdLibro());
+        if (contador != null) {
+            libro.setStock(contador.disponible.get());
+        }
+    }
+
+    /**
+     * Aplica variaciones de stock en memoria y las registra en el diario.
+     * Misma semántica que LibroRepository.actualizarStockLote. Dentro de una transacción
+     * las variaciones se aplican al confirmarla (ver la descripción de la clase).
+     * @param variaciones ID de libro -> cantidad a sumar (negativa para descontar)
+     * @return IDs de los libros que no pudieron actualizarse (stock insuficiente, no físico o inexistente)
+     * @throws SQLException si no se puede escribir el diario o la marca de la transacción
+     */
+    List<Integer> aplicar(Map<Integer, Integer> variaciones) throws SQLException {
+        List<Integer> fallidos = new ArrayList<>();
+        boolean enTransaccion = DBConnection.enTransaccion();
+        // Variaciones registradas en el diario para la transacción, a aplicar al confirmarla
+        Map<Integer, Integer> registradas = new TreeMap<>();
+        Map<Integer, Contador> contadoresTransaccion = new TreeMap<>();
+        long transaccion = DiarioStock.SIN_TRANSACCION;
+        long ultimaSecuencia = 0;
+
+        try {
+            for (Map.Entry<Integer, Integer> entrada : new TreeMap<>(variaciones).entrySet()) {
+                int idLibro = entrada.getKey();
+                int variacion = entrada.getValue();
+                Contador contador = obtenerContador(idLibro);
+                if (contador == null) {
+                    fallidos.add(idLibro);
+                    continue;
+                }
+                if (variacion == 0) {
+                    continue;
+                }
+
+                if (!enTransaccion) {
+                    long secuencia = registrar(idLibro, contador, variacion);
+                    if (secuencia < 0) {
+                        rechazadas.incrementAndGet();
+                        fallidos.add(idLibro);
+                        continue;
+                    }
+                    ultimaSecuencia = secuencia;
+                    continue;
+                }
+
+                if (transaccion == DiarioStock.SIN_TRANSACCION) {
+                    transaccion = iniciarTransaccion(registradas, contadoresTransaccion);
+                }
+                // El descuento se reserva ya; la reposición se suma recién al confirmar
+                if (variacion < 0 && !contador.mover(variacion)) {
+                    rechazadas.incrementAndGet();
+                    fallidos.add(idLibro);
+                    continue;
+                }
+                try {
+                    ultimaSecuencia = diario.registrar(idLibro, variacion, transaccion);
+                } catch (IOException e) {
+                    if (variacion < 0) {
+                        contador.disponible.addAndGet(-variacion);
+                    }
+                    throw e;
+                }
+                registradas.put(idLibro, variacion);
+                contadoresTransaccion.put(idLibro, contador);
+            }
+
+            if (ultimaSecuencia > 0) {
+                diario.sincronizar(ultimaSecuencia);
+            }
+        } catch (IOException e) {
+            // Dentro de una transacción, al revertirla se devuelven los descuentos ya reservados
+            throw new SQLException("No se pudo escribir el diario de stock: " + e.getMessage(), e);
+        }
+
+        if (!registradas.isEmpty()) {
+            marcarTransaccion(transaccion);
+        }
+        return fallidos;
+    }
+
+    /**
+     * Fija el stock disponible de un libro (edición manual del catálogo) registrando
+     * la diferencia con el valor actual como una variación más. Dentro de una
+     * transacción se aplica al confirmarla; las ventas que ocurran entretanto se
+     * descuentan del valor fijado.
+     * @param idLibro ID del libro
+     * @param stock nuevo stock disponible
+     * @throws SQLException si no se puede leer el libro, escribir el diario, o si las
+     *                      ventas hechas mientras tanto dejarían el stock negativo
+     */
+    void fijar(int idLibro, int stock) throws SQLException {
+        Contador contador = obtenerContador(idLibro);
+        if (contador == null) {
+            return;
+        }
+        int variacion = stock - contador.disponible.get();
+        if (variacion != 0 && !aplicar(Collections.singletonMap(idLibro, variacion)).isEmpty()) {
+            throw new SQLException("El stock del libro " + idLibro + " cambió mientras se editaba; intente nuevamente.");
+        }
+    }
+
+    /**
+     * Deja de seguir un libro eliminado del catálogo
+     * @param idLibro ID del libro
+     */
+    void olvidar(int idLibro) {
+        contadores.remove(idLibro);
+    }
+
+    /**
+     * Vuelca a LIBRO.stock las variaciones pendientes en una sola transacción
+     * @throws SQLException si falla el volcado (las variaciones quedan pendientes)
+     */
+    synchronized void volcar() throws SQLException {
+        Map<Integer, Integer> lote = new TreeMap<>();
+        Map<Integer, Contador> contadoresVolcados = new TreeMap<>();
+        List<Long> confirmadas = new ArrayList<>();
+        long secuencia;
+        long conservarDesde;
+
+        bloqueoVolcado.writeLock().lock();
+        try {
+            secuencia = diario.rotar();
+            for (Map.Entry<Integer, Contador> entrada : contadores.entrySet()) {
+                int variacion = entrada.getValue().pendiente.getAndSet(0);
+                if (variacion != 0) {
+                    lote.put(entrada.getKey(), variacion);
+                    contadoresVolcados.put(entrada.getKey(), entrada.getValue());
+                }
+            }
+            for (Long transaccion; (transaccion = transaccionesConfirmadas.poll()) != null; ) {
+                confirmadas.add(transaccion);
+            }
+            // Los registros de transacciones sin terminar pueden hacer falta al recuperar
+            conservarDesde = transaccionesEnCurso.isEmpty() ? Long.MAX_VALUE : transaccionesEnCurso.first();
+        } catch (IOException e) {
+            throw new SQLException("No se pudo rotar el diario de stock: " + e.getMessage());
+        } finally {
+            bloqueoVolcado.writeLock().unlock();
+        }
+
+        if (secuencia == ultimaSecuenciaVolcada && lote.isEmpty() && confirmadas.isEmpty()) {
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        try {
+            escribirVolcado(lote, secuencia, confirmadas);
+        } catch (SQLException e) {
+            for (Map.Entry<Integer, Integer> entrada : lote.entrySet()) {
+                contadoresVolcados.get(entrada.getKey()).pendiente.addAndGet(entrada.getValue());
+            }
+            transaccionesConfirmadas.addAll(confirmadas);
+            throw e;
+        }
+        ultimaSecuenciaVolcada = secuencia;
+        volcados.incrementAndGet();
+        filasVolcadas.addAndGet(lote.size());
+        nanosVolcado.addAndGet(System.nanoTime() - inicio);
+        ultimoError = null;
+
+        try {
+            diario.eliminarSegmentosCerrados(conservarDesde);
+        } catch (IOException e) {
+            // Inofensivo: al recuperar se omiten los registros ya volcados
+            ultimoError = "No se pudieron eliminar segmentos del diario: " + e.getMessage();
+        }
+    }
+
+    /**
+     * @return resumen del stock en memoria, una métrica por línea
+     */
+    public static String reporte() {
+        StockEnMemoria actual = activo;
+        if (actual == null) {
+            return "Stock en memoria: desactivado";
+        }
+        long cantidad = actual.variaciones.get();
+        long sincronizaciones = actual.diario.getSincronizaciones();
+        long volcados = actual.volcados.get();
+        long pendientes = 0;
+        for (Contador contador : actual.contadores.values()) {
+            if (contador.pendiente.get() != 0) {
+                pendientes++;
+            }
+        }
+        String reporte = "Stock en memoria - libros: " + actual.contadores.size() +
+                         ", variaciones: " + cantidad + ", rechazadas: " + actual.rechazadas.get() + "\n" +
+                         "Diario de stock - sincronizaciones: " + sincronizaciones +
+                         ", variaciones por sincronización: " +
+                         (sincronizaciones == 0 ? "N/A" : String.format("%.1f", (double) cantidad / sincronizaciones)) + "\n" +
+                         "Volcados a LIBRO.stock: " + volcados + " (" + actual.filasVolcadas.get() + " filas" +
+                         ", tiempo medio: " + (volcados == 0 ? "N/A" :
+                             String.format("%.1f ms", actual.nanosVolcado.get() / 1_000_000.0 / volcados)) +
+                         "), libros con variaciones pendientes: " + pendientes;
+        String error = actual.ultimoError;
+        return error == null ? reporte : reporte + "\nÚltimo error: " + error;
+    }
+
+    // Aplica y registra una variación; devuelve su secuencia, o -1 si dejaría el stock negativo
+    private long registrar(int idLibro, Contador contador, int variacion) throws IOException {
+        bloqueoVolcado.readLock().lock();
+        try {
+            if (!contador.mover(variacion)) {
+                return -1;
+            }
+            long secuencia;
+            try {
+                secuencia = diario.registrar(idLibro, variacion);
+            } catch (IOException e) {
+                contador.disponible.addAndGet(-variacion);
+                throw e;
+            }
+            contador.pendiente.addAndGet(variacion);
+            variaciones.incrementAndGet();
+            return secuencia;
+        } finally {
+            bloqueoVolcado.readLock().unlock();
+        }
+    }
+
+    // Identifica las variaciones de la transacción actual en el diario y deja preparado
+    // qué hacer al confirmarla o revertirla
+    private long iniciarTransaccion(Map<Integer, Integer> registradas, Map<Integer, Contador> contadoresTransaccion) {
+        long transaccion = diario.reservarSecuencia();
+        transaccionesEnCurso.add(transaccion);
+        DBConnection.alConfirmarTransaccion(() -> confirmar(transaccion, registradas, contadoresTransaccion));
+        DBConnection.alRevertirTransaccion(() -> liberar(transaccion, registradas, contadoresTransaccion));
+        return transaccion;
+    }
+
+    // Inserta la marca que indica, al recuperar el diario, que la transacción se confirmó
+    private static void marcarTransaccion(long transaccion) throws SQLException {
+        String sql = "INSERT INTO DIARIO_STOCK_TRANSACCION (id_transaccion) VALUES (?)";
+
+        // Conexión de la transacción actual: la marca existe solo si la transacción se confirma
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, transaccion);
+            stmt.executeUpdate();
+        }
+    }
+
+    // La transacción se confirmó: sus variaciones (ya en el diario) pasan a estar pendientes de volcar
+    private void confirmar(long transaccion, Map<Integer, Integer> registradas, Map<Integer, Contador> contadoresTransaccion) {
+        bloqueoVolcado.readLock().lock();
+        try {
+            for (Map.Entry<Integer, Integer> entrada : registradas.entrySet()) {
+                Contador contador = contadoresTransaccion.get(entrada.getKey());
+                int variacion = entrada.getValue();
+                if (variacion > 0) {
+                    contador.disponible.addAndGet(variacion);
+                }
+                contador.pendiente.addAndGet(variacion);
+                variaciones.incrementAndGet();
+            }
+            if (!registradas.isEmpty()) {
+                transaccionesConfirmadas.add(transaccion);
+            }
+            transaccionesEnCurso.remove(transaccion);
+        } finally {
+            bloqueoVolcado.readLock().unlock();
+        }
+        for (Integer idLibro : registradas.keySet()) {
+            LibroRepository.invalidarEnCache(idLibro);
+        }
+    }
+
+    // La transacción se revirtió: se devuelven los descuentos reservados; sus registros del
+    // diario quedan sin marca y no se aplican al recuperarlo
+    private void liberar(long transaccion, Map<Integer, Integer> registradas, Map<Integer, Contador> contadoresTransaccion) {
+        for (Map.Entry<Integer, Integer> entrada : registradas.entrySet()) {
+            if (entrada.getValue() < 0) {
+                contadoresTransaccion.get(entrada.getKey()).disponible.addAndGet(-entrada.getValue());
+            }
+            LibroRepository.invalidarEnCache(entrada.getKey());
+        }
+        transaccionesEnCurso.remove(transaccion);
+    }
+
+    private Contador obtenerContador(int idLibro) throws SQLException {
+        Contador contador = contadores.get(idLibro);
+        if (contador != null) {
+            return contador;
+        }
+
+        // Conexión propia: se toma el stock confirmado aunque el hilo tenga una transacción
+        String sql = "SELECT stock FROM LIBRO WHERE id_libro = ? AND tipo_libro = 'FISICO'";
+        try (Connection conn = DBConnection.getConexionExclusiva();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, idLibro);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Contador nuevo = new Contador(rs.getInt("stock"));
+                Contador previo = contadores.putIfAbsent(idLibro, nuevo);
+                return previo != null ? previo : nuevo;
+            }
+        }
+    }
+
+    // Aplica un lote de variaciones y la marca del diario en una misma transacción, y borra
+    // las marcas de las transacciones cuyas variaciones incluye
+    private static void escribirVolcado(Map<Integer, Integer> lote, long secuencia,
+                                        Collection<Long> transacciones) throws SQLException {
+        String sqlStock = "UPDATE LIBRO SET stock = stock + ? WHERE id_libro = ?";
+        String sqlMarca = "INSERT INTO DIARIO_STOCK (id_diario, ultima_secuencia) VALUES (?, ?) " +
+                          "ON DUPLICATE KEY UPDATE ultima_secuencia = ?";
+        String sqlTransaccion = "DELETE FROM DIARIO_STOCK_TRANSACCION WHERE id_transaccion = ?";
+
+        // Conexión propia: el volcado no participa de la transacción del hilo que lo invoca
+        try (Connection conn = DBConnection.getConexionExclusiva()) {
+            conn.setAutoCommit(false);
+            try {
+                if (!lote.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sqlStock)) {
+                        for (Map.Entry<Integer, Integer> entrada : lote.entrySet()) {
+                            stmt.setInt(1, entrada.getValue());
+                            stmt.setInt(2, entrada.getKey());
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+                if (!transacciones.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sqlTransaccion)) {
+                        for (Long transaccion : transacciones) {
+                            stmt.setLong(1, transaccion);
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(sqlMarca)) {
+                    stmt.setInt(1, ID_DIARIO);
+                    stmt.setLong(2, secuencia);
+                    stmt.setLong(3, secuencia);
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // Transacciones confirmadas cuyas variaciones del diario todavía no se volcaron
+    private static Set<Long> leerTransaccionesConfirmadas() throws SQLException {
+        String sql = "SELECT id_transaccion FROM DIARIO_STOCK_TRANSACCION";
+        Set<Long> transacciones = new HashSet<>();
+
+        try (Connection conn = DBConnection.getConexionExclusiva();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                transacciones.add(rs.getLong("id_transaccion"));
+            }
+        }
+        return transacciones;
+    }
+
+    private static long leerUltimaSecuenciaVolcada() throws SQLException {
+        String sql = "SELECT ultima_secuencia FROM DIARIO_STOCK WHERE id_diario = ?";
+
+        try (Connection conn = DBConnection.getConexionExclusiva();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, ID_DIARIO);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong("ultima_secuencia") : 0;
+            }
+        }
+    }
+}
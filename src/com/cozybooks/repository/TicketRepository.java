@@ -0,0 +1,167 @@
+package com.cozybooks.repository;
+
+import com.cozybooks.model.*;
+import com.cozybooks.util.DBConnection;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Repositorio de lectura para tickets de venta.
+ * Arma el ticket completo (venta, cliente, detalles y libros) con una sola consulta
+ * en lugar de buscar cada entidad por separado.
+ */
+public class TicketRepository {
+
+    private static final String SELECT_TICKET =
+        "SELECT v.id_venta, v.fecha, v.monto, v.metodo_pago, v.estado, v.id_cliente, " +
+        "c.nombre AS cliente_nombre, c.documento, c.email, c.telefono, c.fecha_registro AS cliente_fecha_registro, " +
+        "d.id_detalle, d.cantidad, d.precio_unitario, d.subtotal, d.id_libro, " +
+        "l.titulo, l.isbn, l.editorial, l.año, l.precio, l.genero, l.tipo_libro, l.id_autor " +
+        "FROM VENTA v " +
+        "JOIN CLIENTE c ON c.id_cliente = v.id_cliente " +
+        "LEFT JOIN DETALLE_VENTA d ON d.id_venta = v.id_venta " +
+        "LEFT JOIN LIBRO l ON l.id_libro = d.id_libro ";
+
+    public TicketVenta obtenerPorVenta(int idVenta) throws SQLException {
+        String sql = SELECT_TICKET + "WHERE v.id_venta = ? ORDER BY d.id_detalle";
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setInt(1, idVenta);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                TicketVenta ticket = null;
+                while (rs.next()) {
+                    if (ticket == null) {
+                        ticket = new TicketVenta();
+                        ticket.setVenta(mapearVenta(rs));
+                        ticket.setCliente(mapearCliente(rs));
+                    }
+                    agregarLinea(ticket, rs);
+                }
+                return ticket;
+            }
+        }
+    }
+
+    /**
+     * Recorre los tickets de las ventas de un rango de fechas con una sola consulta en streaming.
+     * Cada venta ocupa una fila por detalle; las filas consecutivas de la misma venta se
+     * juntan en un único TicketVenta, así la memoria usada no depende del rango.
+     * Uso: try (Stream<TicketVenta> tickets = repositorio.listarPorFechaEnStream(desde, hasta)) { ... }
+     * @param desde fecha inicial (incluida)
+     * @param hasta fecha final (excluida)
+     * @return stream perezoso de tickets, en orden de fecha
+     * @throws SQLException si hay error al ejecutar la consulta
+     */
+    public Stream<TicketVenta> listarPorFechaEnStream(LocalDateTime desde, LocalDateTime hasta) throws SQLException {
+        String sql = SELECT_TICKET + "WHERE v.fecha >= ? AND v.fecha < ? ORDER BY v.fecha, v.id_venta, d.id_detalle";
+        Stream<TicketVenta> filas = ConsultaEnStream.abrir(sql, rs -> {
+            TicketVenta fila = new TicketVenta();
+            fila.setVenta(mapearVenta(rs));
+            fila.setCliente(mapearCliente(rs));
+            agregarLinea(fila, rs);
+            return fila;
+        }, Timestamp.valueOf(desde), Timestamp.valueOf(hasta));
+        
+        Iterator<TicketVenta> it = filas.iterator();
+        Spliterator<TicketVenta> tickets = new Spliterators.AbstractSpliterator<TicketVenta>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            // Primera fila de la venta siguiente, leída al detectar el fin de la actual
+            private TicketVenta siguiente = null;
+            
+            @Override
+            public boolean tryAdvance(Consumer<? super TicketVenta> accion) {
+                TicketVenta actual = siguiente != null ? siguiente : (it.hasNext() ? it.next() : null);
+                siguiente = null;
+                if (actual == null) {
+                    return false;
+                }
+                while (it.hasNext()) {
+                    TicketVenta fila = it.next();
+                    if (fila.getVenta().getIdVenta() != actual.getVenta().getIdVenta()) {
+                        siguiente = fila;
+                        break;
+                    }
+                    for (int i = 0; i < fila.getDetalles().size(); i++) {
+                        actual.agregarLinea(fila.getDetalles().get(i), fila.getLibros().get(i));
+                    }
+                }
+                accion.accept(actual);
+                return true;
+            }
+        };
+        
+        return StreamSupport.stream(tickets, false).onClose(filas::close);
+    }
+
+    private void agregarLinea(TicketVenta ticket, ResultSet rs) throws SQLException {
+        rs.getInt("id_detalle");
+        if (rs.wasNull()) {
+            // Venta sin detalles (LEFT JOIN)
+            return;
+        }
+        
+        DetalleVenta detalle = new DetalleVenta();
+        detalle.setIdDetalle(rs.getInt("id_detalle"));
+        detalle.setCantidad(rs.getInt("cantidad"));
+        detalle.setPrecioUnitario(rs.getBigDecimal("precio_unitario"));
+        detalle.setSubtotal(rs.getBigDecimal("subtotal"));
+        detalle.setIdVenta(rs.getInt("id_venta"));
+        detalle.setIdLibro(rs.getInt("id_libro"));
+        
+        Libro libro = new Libro();
+        libro.setIdLibro(rs.getInt("id_libro"));
+        libro.setTitulo(rs.getString("titulo"));
+        libro.setIsbn(rs.getString("isbn"));
+        libro.setEditorial(rs.getString("editorial"));
+        libro.setAño(rs.getInt("año"));
+        libro.setPrecio(rs.getBigDecimal("precio"));
+        libro.setGenero(rs.getString("genero"));
+        libro.setTipoLibro(Libro.TipoLibro.valueOf(rs.getString("tipo_libro")));
+        libro.setIdAutor(rs.getInt("id_autor"));
+        
+        ticket.agregarLinea(detalle, libro);
+    }
+
+    private Venta mapearVenta(ResultSet rs) throws SQLException {
+        Venta venta = new Venta();
+        venta.setIdVenta(rs.getInt("id_venta"));
+        
+        Timestamp fecha = rs.getTimestamp("fecha");
+        if (fecha != null) {
+            venta.setFecha(fecha.toLocalDateTime());
+        }
+        
+        venta.setMonto(rs.getBigDecimal("monto"));
+        venta.setMetodoPago(Venta.MetodoPago.valueOf(rs.getString("metodo_pago")));
+        venta.setEstado(Venta.EstadoVenta.valueOf(rs.getString("estado")));
+        venta.setIdCliente(rs.getInt("id_cliente"));
+        
+        return venta;
+    }
+
+    private Cliente mapearCliente(ResultSet rs) throws SQLException {
+        Cliente cliente = new Cliente();
+        cliente.setIdCliente(rs.getInt("id_cliente"));
+        cliente.setNombre(rs.getString("cliente_nombre"));
+        cliente.setDocumento(rs.getString("documento"));
+        cliente.setEmail(rs.getString("email"));
+        cliente.setTelefono(rs.getString("telefono"));
+        
+        Timestamp fechaRegistro = rs.getTimestamp("cliente_fecha_registro");
+        if (fechaRegistro != null) {
+            cliente.setFechaRegistro(fechaRegistro.toLocalDateTime());
+        }
+        
+        return cliente;
+    }
+}
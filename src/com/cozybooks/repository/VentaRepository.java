@@ -8,8 +8,22 @@ import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class VentaRepository {
+    // Ventas PENDIENTE sin detalles más antiguas que esto se consideran carritos abandonados
+    private static final int ANTIGUEDAD_PENDIENTE_HUERFANA_MINUTOS = 60;
+    private static final long PERIODO_LIMPIEZA_MS = 10 * 60 * 1000;
+    private static final int LOTE_LIMPIEZA = 1000;
+
+    private static final AtomicLong PENDIENTES_ELIMINADAS = new AtomicLong();
+    private static volatile String ultimoErrorLimpieza = null;
+    private static ScheduledExecutorService limpieza = null;
 
     public Venta registrar(Venta venta) throws SQLException {
         String sql = "INSERT INTO VENTA (fecha, monto, metodo_pago, estado, id_cliente) VALUES (?, ?, ?, ?, ?)";
@@ -40,6 +54,48 @@ public class VentaRepository {
         return venta;
     }
 
+    /**
+     * Registra varias ventas en un único lote (addBatch/executeBatch).
+     * Con rewriteBatchedStatements el driver las envía como un INSERT de varias filas,
+     * y cada venta recibe su id_venta generado en el mismo orden de la lista.
+     * @param ventas las ventas a registrar
+     * @return las mismas ventas con su ID asignado
+     * @throws SQLException si falla la inserción o no se obtienen todos los IDs
+     */
+    public List<Venta> registrarLote(List<Venta> ventas) throws SQLException {
+        if (ventas.isEmpty()) {
+            return ventas;
+        }
+        
+        String sql = "INSERT INTO VENTA (fecha, monto, metodo_pago, estado, id_cliente) VALUES (?, ?, ?, ?, ?)";
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            
+            for (Venta venta : ventas) {
+                stmt.setTimestamp(1, Timestamp.valueOf(venta.getFecha()));
+                stmt.setBigDecimal(2, venta.getMonto());
+                stmt.setString(3, venta.getMetodoPago().toString());
+                stmt.setString(4, venta.getEstado().toString());
+                stmt.setInt(5, venta.getIdCliente());
+                stmt.addBatch();
+            }
+            
+            stmt.executeBatch();
+            
+            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                for (Venta venta : ventas) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("No se pudieron obtener los IDs de todas las ventas registradas.");
+                    }
+                    venta.setIdVenta(generatedKeys.getInt(1));
+                }
+            }
+        }
+        
+        return ventas;
+    }
+
     public void actualizar(Venta venta) throws SQLException {
         String sql = "UPDATE VENTA SET fecha = ?, monto = ?, metodo_pago = ?, estado = ?, id_cliente = ? WHERE id_venta = ?";
         
@@ -75,6 +131,87 @@ public class VentaRepository {
         }
     }
 
+    /**
+     * Elimina las ventas PENDIENTE huérfanas que dejaba el flujo anterior de registro
+     * (la venta se insertaba al iniciar el carrito y quedaba así si este se abandonaba).
+     * Solo se eliminan las que no tienen monto ni detalles; se borran por tandas
+     * para no bloquear la tabla VENTA mucho tiempo.
+     * @param antiguedadMinutos antigüedad mínima de las ventas a eliminar
+     * @return cantidad de ventas eliminadas
+     * @throws SQLException si hay error al eliminar
+     */
+    public int eliminarPendientesHuerfanas(int antiguedadMinutos) throws SQLException {
+        String sql = "DELETE FROM VENTA WHERE estado = 'PENDIENTE' AND monto = 0 AND fecha < ? " +
+                     "AND NOT EXISTS (SELECT 1 FROM DETALLE_VENTA d WHERE d.id_venta = VENTA.id_venta) LIMIT ?";
+        
+        // El límite se calcula igual que la fecha con la que se registran las ventas
+        Timestamp limite = Timestamp.valueOf(LocalDateTime.now().minusMinutes(antiguedadMinutos));
+        int total = 0;
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int eliminadas;
+            do {
+                stmt.setTimestamp(1, limite);
+                stmt.setInt(2, LOTE_LIMPIEZA);
+                eliminadas = stmt.executeUpdate();
+                total += eliminadas;
+            } while (eliminadas == LOTE_LIMPIEZA);
+        }
+        
+        PENDIENTES_ELIMINADAS.addAndGet(total);
+        return total;
+    }
+
+    /**
+     * Inicia la tarea en segundo plano que elimina las ventas PENDIENTE huérfanas
+     */
+    public static synchronized void iniciarLimpiezaPendientes() {
+        if (limpieza != null) {
+            return;
+        }
+        limpieza = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "cozybooks-ventas-limpieza");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        VentaRepository repositorio = new VentaRepository();
+        limpieza.scheduleWithFixedDelay(() -> {
+            try {
+                repositorio.eliminarPendientesHuerfanas(ANTIGUEDAD_PENDIENTE_HUERFANA_MINUTOS);
+                ultimoErrorLimpieza = null;
+            } catch (Exception e) {
+                // No se imprime para no interrumpir el menú; queda en el reporte y se reintenta en el próximo ciclo
+                ultimoErrorLimpieza = e.getMessage();
+            }
+        }, 0, PERIODO_LIMPIEZA_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Detiene la tarea que elimina las ventas PENDIENTE huérfanas
+     */
+    public static synchronized void detenerLimpiezaPendientes() {
+        if (limpieza != null) {
+            limpieza.shutdownNow();
+            limpieza = null;
+        }
+    }
+
+    /**
+     * @return cantidad de ventas PENDIENTE huérfanas eliminadas desde el inicio
+     */
+    public static long getPendientesEliminadas() {
+        return PENDIENTES_ELIMINADAS.get();
+    }
+
+    /**
+     * @return mensaje del último error de la limpieza de ventas PENDIENTE huérfanas,
+     *         o null si su última ejecución terminó bien
+     */
+    public static String getUltimoErrorLimpieza() {
+        return ultimoErrorLimpieza;
+    }
+
     public List<Venta> listar() throws SQLException {
         String sql = "SELECT * FROM VENTA ORDER BY fecha DESC";
         List<Venta> ventas = new ArrayList<>();
@@ -91,6 +228,78 @@ public class VentaRepository {
         return ventas;
     }
 
+    /**
+     * Lista las ventas de la más reciente a la más antigua, de a una página por vez.
+     * Usa paginación por clave sobre (fecha, id_venta): cada página continúa
+     * donde terminó la anterior sin recorrer las filas ya leídas.
+     * @param token token de continuación de la página anterior, o null para la primera página
+     * @param tamaño cantidad máxima de ventas por página
+     * @return la página de ventas y el token para pedir la siguiente
+     * @throws SQLException si hay error en la consulta
+     */
+    public Pagina<Venta> listarPagina(String token, int tamaño) throws SQLException {
+        String sql;
+        if (token == null) {
+            sql = "SELECT * FROM VENTA ORDER BY fecha DESC, id_venta DESC LIMIT ?";
+        } else {
+            sql = "SELECT * FROM VENTA WHERE fecha < ? OR (fecha = ? AND id_venta < ?) " +
+                  "ORDER BY fecha DESC, id_venta DESC LIMIT ?";
+        }
+        List<Venta> ventas = new ArrayList<>();
+        
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int indice = 1;
+            if (token != null) {
+                String[] clave = Pagina.decodificarToken(token, 2);
+                Timestamp fecha = Timestamp.valueOf(LocalDateTime.parse(clave[0]));
+                stmt.setTimestamp(indice++, fecha);
+                stmt.setTimestamp(indice++, fecha);
+                stmt.setInt(indice++, Integer.parseInt(clave[1]));
+            }
+            // Se pide una fila extra para saber si existe una página siguiente
+            stmt.setInt(indice, tamaño + 1);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ventas.add(mapearResultSetAVenta(rs));
+                }
+            }
+        }
+        
+        String siguiente = null;
+        if (ventas.size() > tamaño) {
+            ventas.remove(tamaño);
+            Venta ultima = ventas.get(tamaño - 1);
+            siguiente = Pagina.codificarToken(ultima.getFecha().toString(), String.valueOf(ultima.getIdVenta()));
+        }
+        
+        return new Pagina<>(ventas, siguiente);
+    }
+
+    /**
+     * Recorre todas las ventas en orden de ID sin cargarlas en memoria (streaming del servidor).
+     * El stream debe cerrarse para liberar la conexión:
+     * try (Stream<Venta> ventas = repositorio.listarEnStream()) { ... }
+     * @return stream perezoso de todas las ventas
+     * @throws SQLException si hay error al ejecutar la consulta
+     */
+    public Stream<Venta> listarEnStream() throws SQLException {
+        return ConsultaEnStream.abrir("SELECT * FROM VENTA ORDER BY id_venta", this::mapearResultSetAVenta);
+    }
+
+    /**
+     * Aplica una acción a cada venta sin cargarlas en memoria
+     * @param accion acción a ejecutar por cada registro
+     * @throws SQLException si hay error al ejecutar la consulta
+     */
+    public void recorrer(Consumer<Venta> accion) throws SQLException {
+        try (Stream<Venta> ventas = listarEnStream()) {
+            ventas.forEach(accion);
+        }
+    }
+
     public List<Venta> buscar(String criterio) throws SQLException {
         String sql = "SELECT * FROM VENTA WHERE CAST(id_venta AS CHAR) LIKE ? OR CAST(id_cliente AS CHAR) LIKE ? " +
                     "OR metodo_pago LIKE ? OR estado LIKE ? ORDER BY fecha DESC";
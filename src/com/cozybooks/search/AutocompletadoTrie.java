@@ -0,0 +1,568 @@
+package com.cozybooks.search;
+
+import com.cozybooks.model.Autor;
+import com.cozybooks.model.Libro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Autocompletado de títulos y nombres de autores mientras se escribe.
+ *
+ * Es un árbol radix (trie compacto): cada arista guarda un fragmento de texto
+ * normalizado en lugar de una sola letra, y los hijos de cada nodo están en arreglos
+ * ordenados por su primera letra. Cada nodo guarda además las K mejores sugerencias
+ * de todo su subárbol, ordenadas por unidades vendidas, así una consulta solo recorre
+ * el prefijo y devuelve la lista ya calculada: O(largo del prefijo + K).
+ *
+ * Al cambiar una entrada (alta, baja o ventas) se recalculan las K mejores de los
+ * nodos de su camino. Las ventas se suman a medida que se confirman y se recalculan
+ * completas al reconstruir; las ventas eliminadas no se descuentan hasta entonces.
+ */
+public class AutocompletadoTrie {
+    private static final char[] SIN_LETRAS = new char[0];
+    private static final Nodo[] SIN_HIJOS = new Nodo[0];
+    private static final Entrada[] SIN_ENTRADAS = new Entrada[0];
+
+    private final int cantidadSugerencias;
+    private final ReentrantReadWriteLock bloqueo = new ReentrantReadWriteLock();
+
+    private Nodo raiz = new Nodo("");
+    private final Map<Integer, Entrada> entradaPorLibro = new HashMap<>();
+    private final Map<Integer, Entrada> entradaPorAutor = new HashMap<>();
+    private final Map<Integer, Integer> autorPorLibro = new HashMap<>();
+
+    private volatile boolean cargado = false;
+    private final AtomicLong consultas = new AtomicLong();
+    private final AtomicLong nanosConsulta = new AtomicLong();
+
+    /**
+     * @param cantidadSugerencias cantidad máxima de sugerencias por consulta (K)
+     */
+    public AutocompletadoTrie(int cantidadSugerencias) {
+        this.cantidadSugerencias = cantidadSugerencias;
+    }
+
+    /**
+     * Reemplaza todo el contenido del árbol
+     * @param libros todos los libros del catálogo
+     * @param autores todos los autores
+     * @param vendidosPorLibro unidades vendidas de cada libro (los ausentes cuentan 0)
+     */
+    public void reconstruir(Collection<Libro> libros, Collection<Autor> autores, Map<Integer, Integer> vendidosPorLibro) {
+        Map<Integer, Long> vendidosPorAutor = new HashMap<>();
+        for (Libro libro : libros) {
+            vendidosPorAutor.merge(libro.getIdAutor(), (long) vendidosPorLibro.getOrDefault(libro.getIdLibro(), 0), Long::sum);
+        }
+
+        bloqueo.writeLock().lock();
+        try {
+            raiz = new Nodo("");
+            entradaPorLibro.clear();
+            entradaPorAutor.clear();
+            autorPorLibro.clear();
+            for (Libro libro : libros) {
+                Entrada entrada = new Entrada(true, libro.getIdLibro(), libro.getTitulo(),
+                    vendidosPorLibro.getOrDefault(libro.getIdLibro(), 0));
+                entradaPorLibro.put(libro.getIdLibro(), entrada);
+                autorPorLibro.put(libro.getIdLibro(), libro.getIdAutor());
+                insertar(entrada);
+            }
+            for (Autor autor : autores) {
+                Entrada entrada = new Entrada(false, autor.getIdAutor(), autor.getNombre(),
+                    vendidosPorAutor.getOrDefault(autor.getIdAutor(), 0L));
+                entradaPorAutor.put(autor.getIdAutor(), entrada);
+                insertar(entrada);
+            }
+            // Las mejores sugerencias se calculan una sola vez, de las hojas hacia la raíz
+            recalcularSubarbol(raiz);
+            cargado = true;
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Agrega un libro o actualiza su título y autor, conservando sus ventas
+     * @param libro el libro a indexar
+     */
+    public void indexarLibro(Libro libro) {
+        bloqueo.writeLock().lock();
+        try {
+            Entrada anterior = entradaPorLibro.remove(libro.getIdLibro());
+            long vendidos = 0;
+            if (anterior != null) {
+                vendidos = anterior.vendidos;
+                quitar(anterior);
+                sumarVendidosAutor(autorPorLibro.get(libro.getIdLibro()), -vendidos);
+            }
+            Entrada entrada = new Entrada(true, libro.getIdLibro(), libro.getTitulo(), vendidos);
+            entradaPorLibro.put(libro.getIdLibro(), entrada);
+            autorPorLibro.put(libro.getIdLibro(), libro.getIdAutor());
+            insertar(entrada);
+            recalcularCamino(entrada.clave);
+            sumarVendidosAutor(libro.getIdAutor(), vendidos);
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita un libro
+     * @param idLibro ID del libro
+     */
+    public void eliminarLibro(int idLibro) {
+        bloqueo.writeLock().lock();
+        try {
+            Entrada entrada = entradaPorLibro.remove(idLibro);
+            Integer idAutor = autorPorLibro.remove(idLibro);
+            if (entrada != null) {
+                quitar(entrada);
+                sumarVendidosAutor(idAutor, -entrada.vendidos);
+            }
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Agrega un autor o actualiza su nombre, conservando las ventas de sus libros
+     * @param idAutor ID del autor
+     * @param nombre nombre del autor
+     */
+    public void indexarAutor(int idAutor, String nombre) {
+        bloqueo.writeLock().lock();
+        try {
+            Entrada anterior = entradaPorAutor.remove(idAutor);
+            long vendidos = 0;
+            if (anterior != null) {
+                vendidos = anterior.vendidos;
+                quitar(anterior);
+            } else {
+                for (Map.Entry<Integer, Integer> libro : autorPorLibro.entrySet()) {
+                    Entrada entradaLibro = libro.getValue() == idAutor ? entradaPorLibro.get(libro.getKey()) : null;
+                    if (entradaLibro != null) {
+                        vendidos += entradaLibro.vendidos;
+                    }
+                }
+            }
+            Entrada entrada = new Entrada(false, idAutor, nombre, vendidos);
+            entradaPorAutor.put(idAutor, entrada);
+            insertar(entrada);
+            recalcularCamino(entrada.clave);
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita un autor
+     * @param idAutor ID del autor
+     */
+    public void eliminarAutor(int idAutor) {
+        bloqueo.writeLock().lock();
+        try {
+            Entrada entrada = entradaPorAutor.remove(idAutor);
+            if (entrada != null) {
+                quitar(entrada);
+            }
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Suma unidades vendidas a un libro (y a su autor) y reordena sus sugerencias
+     * @param idLibro ID del libro vendido
+     * @param cantidad unidades vendidas
+     */
+    public void sumarVendidos(int idLibro, int cantidad) {
+        bloqueo.writeLock().lock();
+        try {
+            Entrada entrada = entradaPorLibro.get(idLibro);
+            if (entrada == null) {
+                return;
+            }
+            entrada.vendidos += cantidad;
+            recalcularCamino(entrada.clave);
+            sumarVendidosAutor(autorPorLibro.get(idLibro), cantidad);
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve las sugerencias que empiezan con el prefijo, las más vendidas primero
+     * @param prefijo lo que el usuario escribió hasta el momento
+     * @return hasta K sugerencias
+     */
+    public List<Sugerencia> sugerir(String prefijo) {
+        long inicio = System.nanoTime();
+        String clave = NormalizadorTexto.normalizar(prefijo);
+        List<Sugerencia> sugerencias = new ArrayList<>(cantidadSugerencias);
+        bloqueo.readLock().lock();
+        try {
+            Nodo nodo = buscarNodo(clave);
+            if (nodo != null) {
+                for (Entrada entrada : nodo.mejores) {
+                    sugerencias.add(new Sugerencia(entrada.esLibro, entrada.id, entrada.texto, entrada.vendidos));
+                }
+            }
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+        consultas.incrementAndGet();
+        nanosConsulta.addAndGet(System.nanoTime() - inicio);
+        return sugerencias;
+    }
+
+    /**
+     * @return true si el árbol ya se cargó con reconstruir()
+     */
+    public boolean estaCargado() {
+        return cargado;
+    }
+
+    /**
+     * @return resumen con cantidad de entradas y nodos, memoria estimada por entrada y tiempo medio
+     */
+    public String reporte() {
+        if (!cargado) {
+            return "Autocompletado: no cargado";
+        }
+        int entradas;
+        long[] medida = new long[2];
+        bloqueo.readLock().lock();
+        try {
+            entradas = entradaPorLibro.size() + entradaPorAutor.size();
+            medir(raiz, medida);
+            // Mapas por ID: nodo de HashMap (32), clave Integer (16) y lugar en la tabla (~8);
+            // autorPorLibro guarda además un Integer como valor
+            medida[1] += (long) (entradaPorLibro.size() + entradaPorAutor.size() + autorPorLibro.size()) * 56
+                + (long) autorPorLibro.size() * 16;
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+        long cantidad = consultas.get();
+        return "Autocompletado - entradas: " + entradas + ", nodos: " + medida[0] +
+               ", memoria estimada: " + medida[1] / 1024 + " KB" +
+               (entradas == 0 ? "" : " (" + medida[1] / entradas + " bytes por entrada)") +
+               ", consultas: " + cantidad +
+               (cantidad == 0 ? "" : String.format(", tiempo medio: %.1f µs", nanosConsulta.get() / 1000.0 / cantidad));
+    }
+
+    // Nodo donde termina el prefijo (puede terminar a mitad de una arista)
+    private Nodo buscarNodo(String clave) {
+        Nodo nodo = raiz;
+        int posicion = 0;
+        while (posicion < clave.length()) {
+            Nodo hijo = nodo.hijo(clave.charAt(posicion));
+            if (hijo == null) {
+                return null;
+            }
+            String etiqueta = hijo.etiqueta;
+            int comparables = Math.min(etiqueta.length(), clave.length() - posicion);
+            if (!clave.regionMatches(posicion, etiqueta, 0, comparables)) {
+                return null;
+            }
+            posicion += comparables;
+            nodo = hijo;
+        }
+        return nodo;
+    }
+
+    private void insertar(Entrada entrada) {
+        String clave = entrada.clave;
+        Nodo nodo = raiz;
+        int posicion = 0;
+        while (posicion < clave.length()) {
+            Nodo hijo = nodo.hijo(clave.charAt(posicion));
+            if (hijo == null) {
+                hijo = new Nodo(clave.substring(posicion));
+                nodo.agregarHijo(hijo);
+                nodo = hijo;
+                posicion = clave.length();
+                break;
+            }
+            int comunes = prefijoComun(hijo.etiqueta, clave, posicion);
+            if (comunes < hijo.etiqueta.length()) {
+                // La clave se separa a mitad de la arista: se parte en dos nodos
+                Nodo intermedio = new Nodo(hijo.etiqueta.substring(0, comunes));
+                nodo.reemplazarHijo(hijo, intermedio);
+                hijo.etiqueta = hijo.etiqueta.substring(comunes);
+                intermedio.agregarHijo(hijo);
+                intermedio.mejores = hijo.mejores;
+                hijo = intermedio;
+            }
+            posicion += comunes;
+            nodo = hijo;
+        }
+        nodo.entradas = agregar(nodo.entradas, entrada);
+    }
+
+    private void quitar(Entrada entrada) {
+        String clave = entrada.clave;
+        List<Nodo> camino = new ArrayList<>();
+        camino.add(raiz);
+        Nodo nodo = raiz;
+        int posicion = 0;
+        while (posicion < clave.length()) {
+            nodo = nodo.hijo(clave.charAt(posicion));
+            if (nodo == null) {
+                return;
+            }
+            posicion += nodo.etiqueta.length();
+            camino.add(nodo);
+        }
+        nodo.entradas = quitar(nodo.entradas, entrada);
+
+        // Se podan las hojas vacías y se fusionan los nodos que quedan con un único hijo
+        for (int i = camino.size() - 1; i > 0; i--) {
+            Nodo actual = camino.get(i);
+            Nodo padre = camino.get(i - 1);
+            if (actual.entradas.length == 0 && actual.hijos.length == 0) {
+                padre.quitarHijo(actual);
+            } else if (actual.entradas.length == 0 && actual.hijos.length == 1) {
+                Nodo unico = actual.hijos[0];
+                unico.etiqueta = actual.etiqueta + unico.etiqueta;
+                padre.reemplazarHijo(actual, unico);
+            } else {
+                actual.recalcularMejores(cantidadSugerencias);
+            }
+        }
+        raiz.recalcularMejores(cantidadSugerencias);
+    }
+
+    private void recalcularCamino(String clave) {
+        List<Nodo> camino = new ArrayList<>();
+        Nodo nodo = raiz;
+        camino.add(nodo);
+        int posicion = 0;
+        while (posicion < clave.length() && (nodo = nodo.hijo(clave.charAt(posicion))) != null) {
+            posicion += nodo.etiqueta.length();
+            camino.add(nodo);
+        }
+        for (int i = camino.size() - 1; i >= 0; i--) {
+            camino.get(i).recalcularMejores(cantidadSugerencias);
+        }
+    }
+
+    private void recalcularSubarbol(Nodo nodo) {
+        for (Nodo hijo : nodo.hijos) {
+            recalcularSubarbol(hijo);
+        }
+        nodo.recalcularMejores(cantidadSugerencias);
+    }
+
+    private void sumarVendidosAutor(Integer idAutor, long cantidad) {
+        Entrada autor = idAutor != null ? entradaPorAutor.get(idAutor) : null;
+        if (autor != null && cantidad != 0) {
+            autor.vendidos += cantidad;
+            recalcularCamino(autor.clave);
+        }
+    }
+
+    // Estimación de memoria con referencias comprimidas: cabecera de 12 bytes por objeto,
+    // 16 por arreglo, 4 por referencia y Strings compactos (1 byte por carácter latino)
+    private static void medir(Nodo nodo, long[] medida) {
+        medida[0]++;
+        long bytes = alinear(12 + 4 * 5)
+            + alinear(24) + alinear(16 + nodo.etiqueta.length())
+            + (nodo.letras.length == 0 ? 0 : alinear(16 + 2L * nodo.letras.length))
+            + (nodo.hijos.length == 0 ? 0 : alinear(16 + 4L * nodo.hijos.length))
+            + (nodo.entradas.length == 0 ? 0 : alinear(16 + 4L * nodo.entradas.length))
+            + (nodo.mejores.length == 0 ? 0 : alinear(16 + 4L * nodo.mejores.length));
+        for (Entrada entrada : nodo.entradas) {
+            // Entrada (cabecera, boolean, int, long y dos referencias) y su texto original;
+            // la clave normalizada se comparte con el texto cuando coinciden
+            bytes += alinear(12 + 1 + 4 + 8 + 4 + 4) + alinear(24) + alinear(16 + entrada.texto.length());
+            if (!entrada.clave.equals(entrada.texto)) {
+                bytes += alinear(24) + alinear(16 + entrada.clave.length());
+            }
+        }
+        medida[1] += bytes;
+        for (Nodo hijo : nodo.hijos) {
+            medir(hijo, medida);
+        }
+    }
+
+    private static long alinear(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static int prefijoComun(String etiqueta, String clave, int desde) {
+        int maximo = Math.min(etiqueta.length(), clave.length() - desde);
+        int i = 0;
+        while (i < maximo && etiqueta.charAt(i) == clave.charAt(desde + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static Entrada[] agregar(Entrada[] entradas, Entrada entrada) {
+        Entrada[] resultado = Arrays.copyOf(entradas, entradas.length + 1);
+        resultado[entradas.length] = entrada;
+        return resultado;
+    }
+
+    private static Entrada[] quitar(Entrada[] entradas, Entrada entrada) {
+        for (int i = 0; i < entradas.length; i++) {
+            if (entradas[i] == entrada) {
+                if (entradas.length == 1) {
+                    return SIN_ENTRADAS;
+                }
+                Entrada[] resultado = new Entrada[entradas.length - 1];
+                System.arraycopy(entradas, 0, resultado, 0, i);
+                System.arraycopy(entradas, i + 1, resultado, i, entradas.length - i - 1);
+                return resultado;
+            }
+        }
+        return entradas;
+    }
+
+    // Más vendidas primero; a igualdad de ventas, en orden alfabético
+    private static int compararEntradas(Entrada a, Entrada b) {
+        int comparacion = Long.compare(b.vendidos, a.vendidos);
+        return comparacion != 0 ? comparacion : a.clave.compareTo(b.clave);
+    }
+
+    /**
+     * Sugerencia devuelta por el autocompletado
+     */
+    public static class Sugerencia {
+        private final boolean esLibro;
+        private final int id;
+        private final String texto;
+        private final long vendidos;
+
+        Sugerencia(boolean esLibro, int id, String texto, long vendidos) {
+            this.esLibro = esLibro;
+            this.id = id;
+            this.texto = texto;
+            this.vendidos = vendidos;
+        }
+
+        /**
+         * @return true si es un libro, false si es un autor
+         */
+        public boolean esLibro() {
+            return esLibro;
+        }
+
+        /**
+         * @return ID del libro o del autor
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return título del libro o nombre del autor, tal como está registrado
+         */
+        public String getTexto() {
+            return texto;
+        }
+
+        /**
+         * @return unidades vendidas (del libro, o de todos los libros del autor)
+         */
+        public long getVendidos() {
+            return vendidos;
+        }
+    }
+
+    /**
+     * Un título o nombre de autor con su peso por ventas
+     */
+    private static class Entrada {
+        private final boolean esLibro;
+        private final int id;
+        private final String texto;
+        private final String clave;
+        private long vendidos;
+
+        Entrada(boolean esLibro, int id, String texto, long vendidos) {
+            this.esLibro = esLibro;
+            this.id = id;
+            this.texto = texto;
+            String normalizada = NormalizadorTexto.normalizar(texto);
+            this.clave = normalizada.equals(texto) ? texto : normalizada;
+            this.vendidos = vendidos;
+        }
+    }
+
+    private static class Nodo {
+        private String etiqueta;
+        // Primera letra de cada hijo, ordenadas, para buscarlos por búsqueda binaria
+        private char[] letras = SIN_LETRAS;
+        private Nodo[] hijos = SIN_HIJOS;
+        // Entradas cuya clave termina exactamente en este nodo
+        private Entrada[] entradas = SIN_ENTRADAS;
+        // Las K mejores entradas de todo el subárbol
+        private Entrada[] mejores = SIN_ENTRADAS;
+
+        Nodo(String etiqueta) {
+            this.etiqueta = etiqueta;
+        }
+
+        Nodo hijo(char letra) {
+            int indice = Arrays.binarySearch(letras, letra);
+            return indice >= 0 ? hijos[indice] : null;
+        }
+
+        void agregarHijo(Nodo hijo) {
+            char letra = hijo.etiqueta.charAt(0);
+            int indice = -Arrays.binarySearch(letras, letra) - 1;
+            char[] nuevasLetras = new char[letras.length + 1];
+            Nodo[] nuevosHijos = new Nodo[hijos.length + 1];
+            System.arraycopy(letras, 0, nuevasLetras, 0, indice);
+            System.arraycopy(hijos, 0, nuevosHijos, 0, indice);
+            nuevasLetras[indice] = letra;
+            nuevosHijos[indice] = hijo;
+            System.arraycopy(letras, indice, nuevasLetras, indice + 1, letras.length - indice);
+            System.arraycopy(hijos, indice, nuevosHijos, indice + 1, hijos.length - indice);
+            letras = nuevasLetras;
+            hijos = nuevosHijos;
+        }
+
+        void quitarHijo(Nodo hijo) {
+            int indice = Arrays.binarySearch(letras, hijo.etiqueta.charAt(0));
+            if (hijos.length == 1) {
+                letras = SIN_LETRAS;
+                hijos = SIN_HIJOS;
+                return;
+            }
+            char[] nuevasLetras = new char[letras.length - 1];
+            Nodo[] nuevosHijos = new Nodo[hijos.length - 1];
+            System.arraycopy(letras, 0, nuevasLetras, 0, indice);
+            System.arraycopy(hijos, 0, nuevosHijos, 0, indice);
+            System.arraycopy(letras, indice + 1, nuevasLetras, indice, letras.length - indice - 1);
+            System.arraycopy(hijos, indice + 1, nuevosHijos, indice, hijos.length - indice - 1);
+            letras = nuevasLetras;
+            hijos = nuevosHijos;
+        }
+
+        // El reemplazo empieza con la misma letra, así que ocupa la misma posición
+        void reemplazarHijo(Nodo anterior, Nodo nuevo) {
+            hijos[Arrays.binarySearch(letras, anterior.etiqueta.charAt(0))] = nuevo;
+        }
+
+        void recalcularMejores(int cantidad) {
+            List<Entrada> candidatas = new ArrayList<>();
+            Collections.addAll(candidatas, entradas);
+            for (Nodo hijo : hijos) {
+                Collections.addAll(candidatas, hijo.mejores);
+            }
+            candidatas.sort(AutocompletadoTrie::compararEntradas);
+            int tamaño = Math.min(cantidad, candidatas.size());
+            mejores = tamaño == 0 ? SIN_ENTRADAS : candidatas.subList(0, tamaño).toArray(new Entrada[0]);
+        }
+    }
+}
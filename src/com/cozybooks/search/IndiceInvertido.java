@@ -0,0 +1,354 @@
+package com.cozybooks.search;
+
+import com.cozybooks.model.Autor;
+import com.cozybooks.model.Libro;
+import com.cozybooks.util.Isbn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido en memoria para buscar libros por título, género, editorial,
+ * ISBN y nombre del autor.
+ *
+ * Cada término normalizado (ver NormalizadorTexto) apunta a los libros que lo
+ * contienen con un peso según el campo. Los términos del autor se indexan por
+ * autor y se expanden a sus libros al buscar, así renombrar un autor no obliga
+ * a reindexar su obra. Los términos de la consulta se comparan por prefijo
+ * ("garc" encuentra "García") y un libro debe coincidir con todos ellos.
+ * El ISBN se indexa compactado (sin guiones) y, si es válido, también como
+ * ISBN-13; la consulta completa compactada se busca además como un término más,
+ * así "978-0-307-47472-8" encuentra el libro aunque se tokenice en partes.
+ *
+ * Es seguro para múltiples hilos: las búsquedas comparten un bloqueo de lectura
+ * y las actualizaciones toman el de escritura.
+ */
+public class IndiceInvertido {
+    private static final int PESO_TITULO = 3;
+    private static final int PESO_ISBN = 3;
+    private static final int PESO_AUTOR = 2;
+    private static final int PESO_GENERO = 1;
+    private static final int PESO_EDITORIAL = 1;
+    // Multiplicador cuando el término coincide completo y no solo por prefijo
+    private static final int FACTOR_COINCIDENCIA_EXACTA = 2;
+
+    private final ReentrantReadWriteLock bloqueo = new ReentrantReadWriteLock();
+
+    // término -> (ID de libro -> peso)
+    private final TreeMap<String, Map<Integer, Integer>> terminosLibro = new TreeMap<>();
+    // ID de libro -> términos indexados (para poder quitarlos al actualizar o eliminar)
+    private final Map<Integer, Map<String, Integer>> terminosPorLibro = new HashMap<>();
+    // término -> IDs de autor
+    private final TreeMap<String, Set<Integer>> terminosAutor = new TreeMap<>();
+    private final Map<Integer, Set<String>> terminosPorAutor = new HashMap<>();
+    private final Map<Integer, Integer> autorPorLibro = new HashMap<>();
+    private final Map<Integer, Set<Integer>> librosPorAutor = new HashMap<>();
+    // Título normalizado de cada libro, para desempatar resultados con igual puntaje
+    private final Map<Integer, String> tituloPorLibro = new HashMap<>();
+
+    private volatile boolean cargado = false;
+    private final AtomicLong busquedas = new AtomicLong();
+    private final AtomicLong nanosBusqueda = new AtomicLong();
+
+    /**
+     * Reemplaza todo el contenido del índice
+     * @param libros todos los libros del catálogo
+     * @param autores todos los autores
+     */
+    public void reconstruir(Collection<Libro> libros, Collection<Autor> autores) {
+        bloqueo.writeLock().lock();
+        try {
+            terminosLibro.clear();
+            terminosPorLibro.clear();
+            terminosAutor.clear();
+            terminosPorAutor.clear();
+            autorPorLibro.clear();
+            librosPorAutor.clear();
+            tituloPorLibro.clear();
+            for (Autor autor : autores) {
+                agregarAutor(autor.getIdAutor(), autor.getNombre());
+            }
+            for (Libro libro : libros) {
+                agregarLibro(libro);
+            }
+            cargado = true;
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Agrega un libro al índice o reemplaza sus términos si ya estaba
+     * @param libro el libro a indexar
+     */
+    public void indexarLibro(Libro libro) {
+        bloqueo.writeLock().lock();
+        try {
+            quitarLibro(libro.getIdLibro());
+            agregarLibro(libro);
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita un libro del índice
+     * @param idLibro ID del libro
+     */
+    public void eliminarLibro(int idLibro) {
+        bloqueo.writeLock().lock();
+        try {
+            quitarLibro(idLibro);
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Agrega un autor al índice o reemplaza los términos de su nombre
+     * @param idAutor ID del autor
+     * @param nombre nombre del autor
+     */
+    public void indexarAutor(int idAutor, String nombre) {
+        bloqueo.writeLock().lock();
+        try {
+            quitarAutor(idAutor);
+            agregarAutor(idAutor, nombre);
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita los términos del nombre de un autor
+     * @param idAutor ID del autor
+     */
+    public void eliminarAutor(int idAutor) {
+        bloqueo.writeLock().lock();
+        try {
+            quitarAutor(idAutor);
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca los libros que coinciden con todos los términos de la consulta
+     * @param consulta texto libre ingresado por el usuario
+     * @return IDs de libros ordenados por relevancia (y luego por título)
+     */
+    public List<Integer> buscar(String consulta) {
+        long inicio = System.nanoTime();
+        List<String> terminos = NormalizadorTexto.tokenizar(consulta);
+        if (terminos.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Integer> resultado;
+        bloqueo.readLock().lock();
+        try {
+            Map<Integer, Integer> puntajes = null;
+            for (String termino : new HashSet<>(terminos)) {
+                Map<Integer, Integer> puntajesTermino = puntuarTermino(termino);
+                if (puntajes == null) {
+                    puntajes = puntajesTermino;
+                } else {
+                    // Intersección: se conservan solo los libros que coinciden con todos los términos
+                    Map<Integer, Integer> acumulados = new HashMap<>();
+                    for (Map.Entry<Integer, Integer> entrada : puntajes.entrySet()) {
+                        Integer puntaje = puntajesTermino.get(entrada.getKey());
+                        if (puntaje != null) {
+                            acumulados.put(entrada.getKey(), entrada.getValue() + puntaje);
+                        }
+                    }
+                    puntajes = acumulados;
+                }
+                if (puntajes.isEmpty()) {
+                    break;
+                }
+            }
+            // La consulta entera como código (ISBN con guiones o espacios) es una alternativa
+            for (String codigo : terminosCodigo(consulta, terminos)) {
+                for (Map.Entry<Integer, Integer> entrada : puntuarTermino(codigo).entrySet()) {
+                    puntajes.merge(entrada.getKey(), entrada.getValue(), Math::max);
+                }
+            }
+
+            Map<Integer, Integer> finales = puntajes;
+            resultado = new ArrayList<>(finales.keySet());
+            resultado.sort((a, b) -> {
+                int comparacion = Integer.compare(finales.get(b), finales.get(a));
+                if (comparacion != 0) {
+                    return comparacion;
+                }
+                comparacion = tituloPorLibro.getOrDefault(a, "").compareTo(tituloPorLibro.getOrDefault(b, ""));
+                return comparacion != 0 ? comparacion : Integer.compare(a, b);
+            });
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+
+        busquedas.incrementAndGet();
+        nanosBusqueda.addAndGet(System.nanoTime() - inicio);
+        return resultado;
+    }
+
+    /**
+     * @return true si el índice ya se cargó con reconstruir()
+     */
+    public boolean estaCargado() {
+        return cargado;
+    }
+
+    /**
+     * @return resumen en una línea con tamaño del índice y tiempo medio de búsqueda
+     */
+    public String reporte() {
+        if (!cargado) {
+            return "Índice de búsqueda: no cargado";
+        }
+        int libros;
+        int terminos;
+        bloqueo.readLock().lock();
+        try {
+            libros = terminosPorLibro.size();
+            terminos = terminosLibro.size() + terminosAutor.size();
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+        long cantidad = busquedas.get();
+        return "Índice de búsqueda - libros: " + libros + ", términos: " + terminos +
+               ", búsquedas: " + cantidad + ", tiempo medio: " +
+               (cantidad == 0 ? "N/A" : String.format("%.1f µs", nanosBusqueda.get() / 1000.0 / cantidad));
+    }
+
+    // Puntaje de cada libro para un término de la consulta (coincidencia por prefijo)
+    private Map<Integer, Integer> puntuarTermino(String termino) {
+        Map<Integer, Integer> puntajes = new HashMap<>();
+
+        for (Map.Entry<String, Map<Integer, Integer>> entrada : rangoPrefijo(terminosLibro, termino).entrySet()) {
+            int factor = entrada.getKey().equals(termino) ? FACTOR_COINCIDENCIA_EXACTA : 1;
+            for (Map.Entry<Integer, Integer> libro : entrada.getValue().entrySet()) {
+                puntajes.merge(libro.getKey(), libro.getValue() * factor, Math::max);
+            }
+        }
+
+        for (Map.Entry<String, Set<Integer>> entrada : rangoPrefijo(terminosAutor, termino).entrySet()) {
+            int puntaje = PESO_AUTOR * (entrada.getKey().equals(termino) ? FACTOR_COINCIDENCIA_EXACTA : 1);
+            for (Integer idAutor : entrada.getValue()) {
+                for (Integer idLibro : librosPorAutor.getOrDefault(idAutor, Collections.emptySet())) {
+                    puntajes.merge(idLibro, puntaje, Math::max);
+                }
+            }
+        }
+
+        return puntajes;
+    }
+
+    // Términos que representan la consulta completa como código: compactada y, si es un ISBN válido, como ISBN-13
+    private static Set<String> terminosCodigo(String consulta, List<String> terminos) {
+        Set<String> codigos = new HashSet<>();
+        if (terminos.size() > 1) {
+            codigos.add(NormalizadorTexto.compactar(consulta));
+        }
+        long isbn = Isbn.canonizar(consulta);
+        if (isbn != Isbn.INVALIDO) {
+            codigos.add(Isbn.formatear(isbn));
+        }
+        return codigos;
+    }
+
+    private static <V> NavigableMap<String, V> rangoPrefijo(TreeMap<String, V> mapa, String prefijo) {
+        return mapa.subMap(prefijo, true, prefijo + Character.MAX_VALUE, false);
+    }
+
+    private void agregarLibro(Libro libro) {
+        int id = libro.getIdLibro();
+        Map<String, Integer> pesos = new HashMap<>();
+        sumarTerminos(pesos, libro.getTitulo(), PESO_TITULO);
+        sumarTerminos(pesos, libro.getGenero(), PESO_GENERO);
+        sumarTerminos(pesos, libro.getEditorial(), PESO_EDITORIAL);
+        String isbn = NormalizadorTexto.compactar(libro.getIsbn());
+        if (!isbn.isEmpty()) {
+            pesos.merge(isbn, PESO_ISBN, Integer::sum);
+            long canonico = Isbn.canonizar(libro.getIsbn());
+            if (canonico != Isbn.INVALIDO) {
+                pesos.putIfAbsent(Isbn.formatear(canonico), PESO_ISBN);
+            }
+        }
+
+        for (Map.Entry<String, Integer> entrada : pesos.entrySet()) {
+            terminosLibro.computeIfAbsent(entrada.getKey(), t -> new HashMap<>()).put(id, entrada.getValue());
+        }
+        terminosPorLibro.put(id, pesos);
+        tituloPorLibro.put(id, NormalizadorTexto.normalizar(libro.getTitulo()));
+        autorPorLibro.put(id, libro.getIdAutor());
+        librosPorAutor.computeIfAbsent(libro.getIdAutor(), a -> new HashSet<>()).add(id);
+    }
+
+    private void quitarLibro(int idLibro) {
+        Map<String, Integer> pesos = terminosPorLibro.remove(idLibro);
+        if (pesos != null) {
+            for (String termino : pesos.keySet()) {
+                Map<Integer, Integer> libros = terminosLibro.get(termino);
+                if (libros != null) {
+                    libros.remove(idLibro);
+                    if (libros.isEmpty()) {
+                        terminosLibro.remove(termino);
+                    }
+                }
+            }
+        }
+        tituloPorLibro.remove(idLibro);
+        Integer idAutor = autorPorLibro.remove(idLibro);
+        if (idAutor != null) {
+            Set<Integer> libros = librosPorAutor.get(idAutor);
+            if (libros != null) {
+                libros.remove(idLibro);
+                if (libros.isEmpty()) {
+                    librosPorAutor.remove(idAutor);
+                }
+            }
+        }
+    }
+
+    private void agregarAutor(int idAutor, String nombre) {
+        Set<String> terminos = new HashSet<>(NormalizadorTexto.tokenizar(nombre));
+        for (String termino : terminos) {
+            terminosAutor.computeIfAbsent(termino, t -> new HashSet<>()).add(idAutor);
+        }
+        terminosPorAutor.put(idAutor, terminos);
+    }
+
+    private void quitarAutor(int idAutor) {
+        Set<String> terminos = terminosPorAutor.remove(idAutor);
+        if (terminos == null) {
+            return;
+        }
+        for (String termino : terminos) {
+            Set<Integer> autores = terminosAutor.get(termino);
+            if (autores != null) {
+                autores.remove(idAutor);
+                if (autores.isEmpty()) {
+                    terminosAutor.remove(termino);
+                }
+            }
+        }
+    }
+
+    private static void sumarTerminos(Map<String, Integer> pesos, String texto, int peso) {
+        for (String termino : new HashSet<>(NormalizadorTexto.tokenizar(texto))) {
+            pesos.merge(termino, peso, Integer::sum);
+        }
+    }
+}
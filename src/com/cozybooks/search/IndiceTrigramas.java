@@ -0,0 +1,564 @@
+package com.cozybooks.search;
+
+import com.cozybooks.model.Autor;
+import com.cozybooks.model.Libro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Índice de trigramas para búsqueda aproximada (tolerante a errores de tipeo)
+ * sobre títulos de libros y nombres de autores.
+ *
+ * Cada texto normalizado se parte en trigramas ("cien" -> " ci", "cie", "ien", "en ")
+ * y cada trigrama guarda la lista de documentos que lo contienen, ordenada por número
+ * de documento. Un texto a distancia de edición k de la consulta comparte al menos
+ * (trigramas de la consulta - 4k) trigramas con ella, lo que permite descartar casi
+ * todos los documentos antes de calcular la distancia de edición:
+ * los candidatos salen solo de las listas más cortas y se completan con búsqueda binaria.
+ *
+ * Los documentos eliminados o reemplazados se marcan como borrados y se descartan
+ * al buscar; cuando superan la mitad del índice se compacta.
+ */
+public class IndiceTrigramas {
+    private static final int MAXIMO_RESULTADOS = 20;
+    // Errores de tipeo tolerados: uno cada 4 letras de la consulta, hasta este máximo
+    private static final int DISTANCIA_MAXIMA = 3;
+    // Trigramas que puede alterar una sola edición (la transposición es el peor caso)
+    private static final int TRIGRAMAS_POR_EDICION = 4;
+    private static final long MEZCLA_HASH = 0x9E3779B97F4A7C15L;
+
+    private final ReentrantReadWriteLock bloqueo = new ReentrantReadWriteLock();
+
+    // trigrama codificado -> documentos que lo contienen (orden creciente)
+    private final Map<Long, ListaEnteros> listasPorTrigrama = new HashMap<>();
+    private final List<Documento> documentos = new ArrayList<>();
+    private final BitSet borrados = new BitSet();
+    // Contador de coincidencias por documento de cada hilo que busca; queda en cero entre búsquedas
+    private final ThreadLocal<int[]> coincidenciasPorHilo = ThreadLocal.withInitial(() -> new int[0]);
+    private int cantidadBorrados = 0;
+    private final Map<Integer, Integer> documentoPorLibro = new HashMap<>();
+    private final Map<Integer, Integer> documentoPorAutor = new HashMap<>();
+    private final Map<Integer, Integer> autorPorLibro = new HashMap<>();
+    private final Map<Integer, Set<Integer>> librosPorAutor = new HashMap<>();
+
+    private volatile boolean cargado = false;
+    private final AtomicLong busquedas = new AtomicLong();
+    private final AtomicLong candidatosEvaluados = new AtomicLong();
+    private final AtomicLong nanosBusqueda = new AtomicLong();
+
+    /**
+     * Reemplaza todo el contenido del índice. Se construye en paralelo: primero se
+     * normalizan los textos y se calculan sus trigramas, y después cada hilo arma las
+     * listas de una partición de los trigramas recorriendo los documentos en orden,
+     * de modo que las listas quedan ordenadas sin necesidad de combinarlas.
+     * @param libros todos los libros del catálogo
+     * @param autores todos los autores
+     */
+    public void reconstruir(Collection<Libro> libros, Collection<Autor> autores) {
+        List<Documento> nuevos = new ArrayList<>(libros.size() + autores.size());
+        for (Libro libro : libros) {
+            nuevos.add(new Documento(true, libro.getIdLibro(), libro.getTitulo()));
+        }
+        for (Autor autor : autores) {
+            nuevos.add(new Documento(false, autor.getIdAutor(), autor.getNombre()));
+        }
+        long[][] trigramas = nuevos.parallelStream()
+            .map(documento -> trigramas(documento.texto))
+            .toArray(long[][]::new);
+
+        int particiones = Runtime.getRuntime().availableProcessors();
+        List<Map<Long, ListaEnteros>> parciales = IntStream.range(0, particiones).parallel()
+            .mapToObj(particion -> {
+                Map<Long, ListaEnteros> listas = new HashMap<>();
+                for (int numero = 0; numero < trigramas.length; numero++) {
+                    for (long trigrama : trigramas[numero]) {
+                        if (Math.floorMod(Long.hashCode(trigrama), particiones) == particion) {
+                            listas.computeIfAbsent(trigrama, t -> new ListaEnteros()).agregar(numero);
+                        }
+                    }
+                }
+                return listas;
+            })
+            .collect(Collectors.toList());
+
+        bloqueo.writeLock().lock();
+        try {
+            limpiar();
+            for (Documento documento : nuevos) {
+                registrarDocumento(documento);
+            }
+            for (Map<Long, ListaEnteros> listas : parciales) {
+                listasPorTrigrama.putAll(listas);
+            }
+            for (Libro libro : libros) {
+                asociarAutor(libro.getIdLibro(), libro.getIdAutor());
+            }
+            cargado = true;
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Agrega un libro al índice o reemplaza su título si ya estaba
+     * @param libro el libro a indexar
+     */
+    public void indexarLibro(Libro libro) {
+        Documento documento = new Documento(true, libro.getIdLibro(), libro.getTitulo());
+        long[] trigramas = trigramas(documento.texto);
+        bloqueo.writeLock().lock();
+        try {
+            borrar(documentoPorLibro.get(libro.getIdLibro()));
+            desasociarAutor(libro.getIdLibro());
+            agregar(documento, trigramas);
+            asociarAutor(libro.getIdLibro(), libro.getIdAutor());
+            compactarSiHaceFalta();
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita un libro del índice
+     * @param idLibro ID del libro
+     */
+    public void eliminarLibro(int idLibro) {
+        bloqueo.writeLock().lock();
+        try {
+            borrar(documentoPorLibro.remove(idLibro));
+            desasociarAutor(idLibro);
+            compactarSiHaceFalta();
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Agrega un autor al índice o reemplaza su nombre si ya estaba
+     * @param idAutor ID del autor
+     * @param nombre nombre del autor
+     */
+    public void indexarAutor(int idAutor, String nombre) {
+        Documento documento = new Documento(false, idAutor, nombre);
+        long[] trigramas = trigramas(documento.texto);
+        bloqueo.writeLock().lock();
+        try {
+            borrar(documentoPorAutor.get(idAutor));
+            agregar(documento, trigramas);
+            compactarSiHaceFalta();
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita un autor del índice
+     * @param idAutor ID del autor
+     */
+    public void eliminarAutor(int idAutor) {
+        bloqueo.writeLock().lock();
+        try {
+            borrar(documentoPorAutor.remove(idAutor));
+            compactarSiHaceFalta();
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca libros cuyo título (o el nombre de su autor) se parezca a la consulta.
+     * La consulta se compara contra el texto completo y contra cada grupo de palabras
+     * consecutivas del mismo largo, así "soledda" encuentra "Cien años de soledad".
+     * @param consulta texto ingresado por el usuario
+     * @return IDs de libros ordenados por distancia de edición (los más parecidos primero)
+     */
+    public List<Integer> buscar(String consulta) {
+        long inicio = System.nanoTime();
+        String texto = normalizarEspacios(NormalizadorTexto.normalizar(consulta));
+        if (texto.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] palabrasConsulta = texto.split(" ");
+        long[] trigramasConsulta = trigramas(texto);
+        int distanciaMaxima = Math.min(DISTANCIA_MAXIMA, Math.max(1, texto.length() / 4));
+        // Cada edición altera a lo sumo 4 trigramas (una transposición "ab" -> "ba" cambia 4)
+        int minimoComunes = Math.max(1, trigramasConsulta.length - TRIGRAMAS_POR_EDICION * distanciaMaxima);
+
+        // Libro -> mejor distancia encontrada, y cuántos libros hay con cada distancia
+        Map<Integer, Integer> distancias = new HashMap<>();
+        int[] librosPorDistancia = new int[distanciaMaxima + 1];
+        bloqueo.readLock().lock();
+        try {
+            // Se evalúan primero los candidatos con más trigramas en común. Como cada edición
+            // altera a lo sumo 4 trigramas, la distancia de un candidato es al menos
+            // (trigramas de la consulta - comunes) / 4: cuando esa cota supera la peor distancia
+            // entre los mejores resultados ya encontrados, el resto no puede entrar al ranking.
+            ListaEnteros[] candidatosPorComunes = candidatos(trigramasConsulta, minimoComunes);
+            for (int comunes = candidatosPorComunes.length - 1; comunes >= minimoComunes; comunes--) {
+                ListaEnteros candidatos = candidatosPorComunes[comunes];
+                if (candidatos == null) {
+                    continue;
+                }
+                int cota = (trigramasConsulta.length - comunes + TRIGRAMAS_POR_EDICION - 1) / TRIGRAMAS_POR_EDICION;
+                if (cota > peorDistanciaEnRanking(librosPorDistancia)) {
+                    break;
+                }
+                candidatosEvaluados.addAndGet(candidatos.tamaño);
+                for (int i = 0; i < candidatos.tamaño; i++) {
+                    Documento documento = documentos.get(candidatos.valores[i]);
+                    int distancia = distanciaMinima(texto, palabrasConsulta.length, documento, distanciaMaxima);
+                    if (distancia > distanciaMaxima) {
+                        continue;
+                    }
+                    if (documento.esLibro) {
+                        registrarDistancia(distancias, librosPorDistancia, documento.id, distancia);
+                    } else {
+                        for (Integer idLibro : librosPorAutor.getOrDefault(documento.id, Collections.emptySet())) {
+                            registrarDistancia(distancias, librosPorDistancia, idLibro, distancia);
+                        }
+                    }
+                }
+            }
+
+            List<Integer> resultado = new ArrayList<>(distancias.keySet());
+            resultado.sort((a, b) -> {
+                int comparacion = Integer.compare(distancias.get(a), distancias.get(b));
+                if (comparacion != 0) {
+                    return comparacion;
+                }
+                return tituloDe(a).compareTo(tituloDe(b));
+            });
+            if (resultado.size() > MAXIMO_RESULTADOS) {
+                resultado = new ArrayList<>(resultado.subList(0, MAXIMO_RESULTADOS));
+            }
+            return resultado;
+        } finally {
+            bloqueo.readLock().unlock();
+            busquedas.incrementAndGet();
+            nanosBusqueda.addAndGet(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * @return true si el índice ya se cargó con reconstruir()
+     */
+    public boolean estaCargado() {
+        return cargado;
+    }
+
+    /**
+     * @return resumen en una línea con tamaño del índice, candidatos por búsqueda y tiempo medio
+     */
+    public String reporte() {
+        if (!cargado) {
+            return "Índice de trigramas: no cargado";
+        }
+        int vivos;
+        int trigramas;
+        bloqueo.readLock().lock();
+        try {
+            vivos = documentos.size() - cantidadBorrados;
+            trigramas = listasPorTrigrama.size();
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+        long cantidad = busquedas.get();
+        return "Índice de trigramas - documentos: " + vivos + ", trigramas: " + trigramas +
+               ", búsquedas: " + cantidad +
+               (cantidad == 0 ? "" : String.format(", candidatos por búsqueda: %.1f, tiempo medio: %.1f µs",
+                   candidatosEvaluados.get() / (double) cantidad, nanosBusqueda.get() / 1000.0 / cantidad));
+    }
+
+    // Documentos que comparten al menos minimoComunes trigramas con la consulta,
+    // agrupados por la cantidad de trigramas en común
+    private ListaEnteros[] candidatos(long[] trigramasConsulta, int minimoComunes) {
+        List<ListaEnteros> listas = new ArrayList<>();
+        for (long trigrama : trigramasConsulta) {
+            ListaEnteros lista = listasPorTrigrama.get(trigrama);
+            if (lista != null) {
+                listas.add(lista);
+            }
+        }
+        ListaEnteros[] porComunes = new ListaEnteros[listas.size() + 1];
+        if (listas.size() < minimoComunes) {
+            return porComunes;
+        }
+        listas.sort((a, b) -> Integer.compare(a.tamaño, b.tamaño));
+
+        // Un candidato válido aparece en alguna de las (n - minimo + 1) listas más cortas
+        int listasGeneradoras = listas.size() - minimoComunes + 1;
+        int[] coincidencias = coincidenciasPorHilo.get();
+        if (coincidencias.length < documentos.size()) {
+            coincidencias = new int[Math.max(documentos.size(), coincidencias.length * 2)];
+            coincidenciasPorHilo.set(coincidencias);
+        }
+        ListaEnteros tocados = new ListaEnteros();
+        for (int i = 0; i < listasGeneradoras; i++) {
+            ListaEnteros lista = listas.get(i);
+            for (int j = 0; j < lista.tamaño; j++) {
+                int numero = lista.valores[j];
+                if (coincidencias[numero]++ == 0) {
+                    tocados.agregar(numero);
+                }
+            }
+        }
+
+        for (int t = 0; t < tocados.tamaño; t++) {
+            int numero = tocados.valores[t];
+            int comunes = coincidencias[numero];
+            coincidencias[numero] = 0;
+            if (borrados.get(numero)) {
+                continue;
+            }
+            for (int i = listasGeneradoras; i < listas.size(); i++) {
+                // Si ni sumando todas las listas restantes se llega al mínimo, se descarta
+                if (comunes + (listas.size() - i) < minimoComunes) {
+                    break;
+                }
+                if (listas.get(i).contiene(numero)) {
+                    comunes++;
+                }
+            }
+            if (comunes >= minimoComunes) {
+                if (porComunes[comunes] == null) {
+                    porComunes[comunes] = new ListaEnteros();
+                }
+                porComunes[comunes].agregar(numero);
+            }
+        }
+        return porComunes;
+    }
+
+    private static void registrarDistancia(Map<Integer, Integer> distancias, int[] librosPorDistancia,
+                                           int idLibro, int distancia) {
+        Integer anterior = distancias.get(idLibro);
+        if (anterior == null || distancia < anterior) {
+            if (anterior != null) {
+                librosPorDistancia[anterior]--;
+            }
+            distancias.put(idLibro, distancia);
+            librosPorDistancia[distancia]++;
+        }
+    }
+
+    // Distancia del último libro que entra en el ranking, o MAX_VALUE si todavía no está completo
+    private static int peorDistanciaEnRanking(int[] librosPorDistancia) {
+        int acumulados = 0;
+        for (int distancia = 0; distancia < librosPorDistancia.length; distancia++) {
+            acumulados += librosPorDistancia[distancia];
+            if (acumulados >= MAXIMO_RESULTADOS) {
+                return distancia;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private static int distanciaMinima(String consulta, int palabrasConsulta, Documento documento, int maxima) {
+        int mejor = distanciaEdicion(consulta, documento.texto, maxima);
+        int[] inicios = documento.iniciosPalabra;
+        for (int primera = 0; primera + palabrasConsulta <= inicios.length && mejor > 0; primera++) {
+            int ultima = primera + palabrasConsulta;
+            int fin = ultima < inicios.length ? inicios[ultima] - 1 : documento.texto.length();
+            String ventana = documento.texto.substring(inicios[primera], fin);
+            mejor = Math.min(mejor, distanciaEdicion(consulta, ventana, Math.min(maxima, mejor)));
+        }
+        return mejor;
+    }
+
+    /**
+     * Distancia de edición acotada (Levenshtein con transposiciones de letras vecinas,
+     * el error de tipeo más común): deja de calcular en cuanto supera la máxima
+     * @return la distancia, o maxima + 1 si es mayor que maxima
+     */
+    static int distanciaEdicion(String a, String b, int maxima) {
+        if (Math.abs(a.length() - b.length()) > maxima) {
+            return maxima + 1;
+        }
+        int[] previa = new int[b.length() + 1];
+        int[] anterior = new int[b.length() + 1];
+        int[] actual = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            anterior[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            actual[0] = i;
+            int minimoFila = actual[0];
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int costo = c == b.charAt(j - 1) ? 0 : 1;
+                int valor = Math.min(Math.min(actual[j - 1] + 1, anterior[j] + 1), anterior[j - 1] + costo);
+                if (i > 1 && j > 1 && c == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    valor = Math.min(valor, previa[j - 2] + 1);
+                }
+                actual[j] = valor;
+                minimoFila = Math.min(minimoFila, valor);
+            }
+            if (minimoFila > maxima) {
+                return maxima + 1;
+            }
+            int[] temporal = previa;
+            previa = anterior;
+            anterior = actual;
+            actual = temporal;
+        }
+        return Math.min(anterior[b.length()], maxima + 1);
+    }
+
+    // Trigramas distintos del texto (con un espacio de relleno en cada extremo), codificados como long
+    private static long[] trigramas(String texto) {
+        String relleno = " " + texto + " ";
+        if (relleno.length() < 3) {
+            return new long[0];
+        }
+        long[] todos = new long[relleno.length() - 2];
+        for (int i = 0; i < todos.length; i++) {
+            long trigrama = ((long) relleno.charAt(i) << 32) | ((long) relleno.charAt(i + 1) << 16) | relleno.charAt(i + 2);
+            // Multiplicar por una constante impar es biyectivo y reparte bien los bits para el hash
+            todos[i] = trigrama * MEZCLA_HASH;
+        }
+        Arrays.sort(todos);
+        int distintos = 0;
+        for (int i = 0; i < todos.length; i++) {
+            if (i == 0 || todos[i] != todos[i - 1]) {
+                todos[distintos++] = todos[i];
+            }
+        }
+        return Arrays.copyOf(todos, distintos);
+    }
+
+    private static String normalizarEspacios(String texto) {
+        return String.join(" ", NormalizadorTexto.tokenizar(texto));
+    }
+
+    private String tituloDe(int idLibro) {
+        Integer numero = documentoPorLibro.get(idLibro);
+        return numero != null ? documentos.get(numero).texto : "";
+    }
+
+    private void agregar(Documento documento, long[] trigramas) {
+        int numero = registrarDocumento(documento);
+        for (long trigrama : trigramas) {
+            listasPorTrigrama.computeIfAbsent(trigrama, t -> new ListaEnteros()).agregar(numero);
+        }
+    }
+
+    private int registrarDocumento(Documento documento) {
+        int numero = documentos.size();
+        documentos.add(documento);
+        (documento.esLibro ? documentoPorLibro : documentoPorAutor).put(documento.id, numero);
+        return numero;
+    }
+
+    private void borrar(Integer numero) {
+        if (numero != null && !borrados.get(numero)) {
+            borrados.set(numero);
+            cantidadBorrados++;
+        }
+    }
+
+    private void asociarAutor(int idLibro, int idAutor) {
+        autorPorLibro.put(idLibro, idAutor);
+        librosPorAutor.computeIfAbsent(idAutor, a -> new HashSet<>()).add(idLibro);
+    }
+
+    private void desasociarAutor(int idLibro) {
+        Integer idAutor = autorPorLibro.remove(idLibro);
+        if (idAutor != null) {
+            Set<Integer> libros = librosPorAutor.get(idAutor);
+            if (libros != null) {
+                libros.remove(idLibro);
+                if (libros.isEmpty()) {
+                    librosPorAutor.remove(idAutor);
+                }
+            }
+        }
+    }
+
+    private void compactarSiHaceFalta() {
+        if (cantidadBorrados < 1000 || cantidadBorrados * 2 < documentos.size()) {
+            return;
+        }
+        List<Documento> vivos = new ArrayList<>(documentos.size() - cantidadBorrados);
+        for (int i = 0; i < documentos.size(); i++) {
+            if (!borrados.get(i)) {
+                vivos.add(documentos.get(i));
+            }
+        }
+        listasPorTrigrama.clear();
+        documentos.clear();
+        borrados.clear();
+        cantidadBorrados = 0;
+        documentoPorLibro.clear();
+        documentoPorAutor.clear();
+        for (Documento documento : vivos) {
+            agregar(documento, trigramas(documento.texto));
+        }
+    }
+
+    private void limpiar() {
+        listasPorTrigrama.clear();
+        documentos.clear();
+        borrados.clear();
+        cantidadBorrados = 0;
+        documentoPorLibro.clear();
+        documentoPorAutor.clear();
+        autorPorLibro.clear();
+        librosPorAutor.clear();
+    }
+
+    /**
+     * Título de un libro o nombre de un autor, ya normalizado
+     */
+    private static class Documento {
+        private final boolean esLibro;
+        private final int id;
+        private final String texto;
+        // Posición donde empieza cada palabra dentro de texto
+        private final int[] iniciosPalabra;
+
+        Documento(boolean esLibro, int id, String textoOriginal) {
+            this.esLibro = esLibro;
+            this.id = id;
+            this.texto = normalizarEspacios(textoOriginal);
+            ListaEnteros inicios = new ListaEnteros();
+            for (int i = 0; i < texto.length(); i++) {
+                if (i == 0 || texto.charAt(i - 1) == ' ') {
+                    inicios.agregar(i);
+                }
+            }
+            this.iniciosPalabra = Arrays.copyOf(inicios.valores, inicios.tamaño);
+        }
+    }
+
+    /**
+     * Lista creciente de enteros sin objetos intermedios (los números se agregan en orden)
+     */
+    private static class ListaEnteros {
+        private int[] valores = new int[4];
+        private int tamaño = 0;
+
+        void agregar(int valor) {
+            if (tamaño == valores.length) {
+                valores = Arrays.copyOf(valores, tamaño * 2);
+            }
+            valores[tamaño++] = valor;
+        }
+
+        boolean contiene(int valor) {
+            return Arrays.binarySearch(valores, 0, tamaño, valor) >= 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.cozybooks.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utilidad para normalizar texto antes de indexarlo o buscarlo.
+ * Pasa a minúsculas y quita los acentos y diacríticos, de modo que
+ * "García" y "garcia" producen el mismo término.
+ */
+public final class NormalizadorTexto {
+
+    private NormalizadorTexto() {}
+
+    /**
+     * Normaliza un texto: minúsculas y sin diacríticos (á -> a, ü -> u, ñ -> n)
+     * @param texto el texto original (puede ser null)
+     * @return el texto normalizado, o una cadena vacía si es null
+     */
+    public static String normalizar(String texto) {
+        if (texto == null || texto.isEmpty()) {
+            return "";
+        }
+        // NFD separa cada letra de sus marcas (á = a + acento agudo combinable)
+        String descompuesto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        StringBuilder resultado = new StringBuilder(descompuesto.length());
+        for (int i = 0; i < descompuesto.length(); i++) {
+            char c = descompuesto.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                resultado.append(Character.toLowerCase(c));
+            }
+        }
+        return resultado.toString();
+    }
+
+    /**
+     * Divide un texto normalizado en términos formados por letras y dígitos
+     * @param texto el texto original (puede ser null)
+     * @return los términos en el orden en que aparecen
+     */
+    public static List<String> tokenizar(String texto) {
+        String normalizado = normalizar(texto);
+        List<String> terminos = new ArrayList<>();
+        int inicio = -1;
+        for (int i = 0; i < normalizado.length(); i++) {
+            if (Character.isLetterOrDigit(normalizado.charAt(i))) {
+                if (inicio < 0) {
+                    inicio = i;
+                }
+            } else if (inicio >= 0) {
+                terminos.add(normalizado.substring(inicio, i));
+                inicio = -1;
+            }
+        }
+        if (inicio >= 0) {
+            terminos.add(normalizado.substring(inicio));
+        }
+        return terminos;
+    }
+
+    /**
+     * Compacta un código (por ejemplo un ISBN) quitando guiones, espacios y demás separadores
+     * @param codigo el código original (puede ser null)
+     * @return el código normalizado sin separadores
+     */
+    public static String compactar(String codigo) {
+        StringBuilder resultado = new StringBuilder();
+        for (String termino : tokenizar(codigo)) {
+            resultado.append(termino);
+        }
+        return resultado.toString();
+    }
+}
@@ -4,24 +4,33 @@ import com.cozybooks.model.Venta;
 import com.cozybooks.model.DetalleVenta;
 import com.cozybooks.model.Cliente;
 import com.cozybooks.model.Libro;
+import com.cozybooks.model.TicketVenta;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Servicio para manejo de archivos, especialmente para generar tickets de venta.
- * Genera tickets en formato TXT.
+ * Genera tickets en formato TXT (UTF-8), armados con RenderizadorTicket.
  * Mantiene métodos estáticos para compatibilidad con la arquitectura actual.
  * 
  * Para usar como implementación de GeneradorTicket, usar ArchivoService.getInstance().
  */
 public class ArchivoService {
     private static final String TICKETS_DIR = "tickets";
+    private static final String EXPORTACIONES_DIR = "exportaciones";
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
     
     // ========== MÉTODOS ESTÁTICOS (ARQUITECTURA ACTUAL) ==========
@@ -35,59 +44,77 @@ public class ArchivoService {
      * @throws IOException si hay error al escribir el archivo
      */
     public static void generarTicket(Venta venta, Cliente cliente, List<DetalleVenta> detalles, List<Libro> libros) throws IOException {
+        Path filePath = escribirTicket(venta, cliente, detalles, libros);
+        System.out.println("Ticket generado exitosamente: " + filePath.toString());
+    }
+
+    /**
+     * Escribe el ticket de una venta en formato .txt sin informarlo por consola
+     * (para generar muchos tickets seguidos)
+     * @param venta la venta para la cual generar el ticket
+     * @param cliente el cliente de la venta
+     * @param detalles los detalles de la venta
+     * @param libros los libros vendidos
+     * @return ruta del archivo generado
+     * @throws IOException si hay error al escribir el archivo
+     */
+    public static Path escribirTicket(Venta venta, Cliente cliente, List<DetalleVenta> detalles, List<Libro> libros) throws IOException {
         // Crear directorio si no existe
         Path ticketsPath = Paths.get(TICKETS_DIR);
         if (!Files.exists(ticketsPath)) {
             Files.createDirectories(ticketsPath);
         }
 
-        // Generar nombre del archivo
-        String fileName = String.format("venta_%d_%s.txt", 
-            venta.getIdVenta(), 
-            venta.getFecha().format(DATE_FORMATTER));
-        
-        Path filePath = ticketsPath.resolve(fileName);
-
-        // Escribir el ticket
-        try (FileWriter writer = new FileWriter(filePath.toFile())) {
-            writer.write("========================================\n");
-            writer.write("        COZY BOOKS - TICKET DE VENTA\n");
-            writer.write("========================================\n\n");
-            
-            writer.write("ID Venta: " + venta.getIdVenta() + "\n");
-            writer.write("Fecha: " + venta.getFecha().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")) + "\n");
-            writer.write("Cliente: " + cliente.getNombre() + "\n");
-            writer.write("Documento: " + cliente.getDocumento() + "\n");
-            if (cliente.getEmail() != null && !cliente.getEmail().isEmpty()) {
-                writer.write("Email: " + cliente.getEmail() + "\n");
+        Path filePath = ticketsPath.resolve(RenderizadorTicket.nombreArchivo(venta));
+
+        // El ticket se arma completo en memoria (UTF-8) y se escribe de una vez
+        ByteBuffer contenido = RenderizadorTicket.renderizar(venta, cliente, detalles, libros);
+        try (FileChannel canal = FileChannel.open(filePath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (contenido.hasRemaining()) {
+                canal.write(contenido);
             }
-            writer.write("Método de Pago: " + venta.getMetodoPago() + "\n");
-            writer.write("Estado: " + venta.getEstado() + "\n\n");
-            
-            writer.write("----------------------------------------\n");
-            writer.write("DETALLES DE LA VENTA:\n");
-            writer.write("----------------------------------------\n");
-            
-            for (int i = 0; i < detalles.size(); i++) {
-                DetalleVenta detalle = detalles.get(i);
-                Libro libro = libros.get(i);
-                
-                writer.write(String.format("%d. %s\n", i + 1, libro.getTitulo()));
-                writer.write(String.format("   Autor ID: %d\n", libro.getIdAutor()));
-                writer.write(String.format("   Tipo: %s\n", libro.getTipoLibro()));
-                writer.write(String.format("   Cantidad: %d\n", detalle.getCantidad()));
-                writer.write(String.format("   Precio Unitario: $%.2f\n", detalle.getPrecioUnitario()));
-                writer.write(String.format("   Subtotal: $%.2f\n\n", detalle.getSubtotal()));
+        }
+        return filePath;
+    }
+
+    /**
+     * Genera un ticket de venta en formato .txt a partir del modelo de lectura del ticket
+     * @param ticket venta, cliente, detalles y libros obtenidos con TicketRepository
+     * @throws IOException si hay error al escribir el archivo
+     */
+    public static void generarTicket(TicketVenta ticket) throws IOException {
+        generarTicket(ticket.getVenta(), ticket.getCliente(), ticket.getDetalles(), ticket.getLibros());
+    }
+
+    /**
+     * Exporta detalles de venta a un archivo CSV escribiendo fila por fila,
+     * de modo que la memoria usada no depende de la cantidad de detalles.
+     * @param detalles stream de detalles (por ejemplo DetalleVentaRepository.listarEnStream())
+     * @return ruta del archivo generado
+     * @throws IOException si hay error al escribir el archivo
+     */
+    public static Path exportarDetallesVenta(Stream<DetalleVenta> detalles) throws IOException {
+        Path exportacionesPath = Paths.get(EXPORTACIONES_DIR);
+        if (!Files.exists(exportacionesPath)) {
+            Files.createDirectories(exportacionesPath);
+        }
+
+        Path filePath = exportacionesPath.resolve(
+            "detalles_venta_" + LocalDateTime.now().format(DATE_FORMATTER) + ".csv");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8)) {
+            writer.write("id_detalle,id_venta,id_libro,cantidad,precio_unitario,subtotal\n");
+            Iterator<DetalleVenta> it = detalles.iterator();
+            while (it.hasNext()) {
+                DetalleVenta detalle = it.next();
+                writer.write(detalle.getIdDetalle() + "," + detalle.getIdVenta() + "," + detalle.getIdLibro() + "," +
+                    detalle.getCantidad() + "," + detalle.getPrecioUnitario().toPlainString() + "," +
+                    detalle.getSubtotal().toPlainString() + "\n");
             }
-            
-            writer.write("----------------------------------------\n");
-            writer.write(String.format("TOTAL: $%.2f\n", venta.getMonto()));
-            writer.write("========================================\n");
-            writer.write("¡Gracias por su compra!\n");
-            writer.write("========================================\n");
         }
 
-        System.out.println("Ticket generado exitosamente: " + filePath.toString());
+        return filePath;
     }
 
     /**
@@ -123,6 +150,13 @@ public class ArchivoService {
             ArchivoService.generarTicket(venta, cliente, detalles, libros);
         }
 
+        @Override
+        public void generarLote(List<TicketVenta> tickets) throws IOException {
+            for (TicketVenta ticket : tickets) {
+                ArchivoService.escribirTicket(ticket.getVenta(), ticket.getCliente(), ticket.getDetalles(), ticket.getLibros());
+            }
+        }
+
         @Override
         public boolean directorioTicketsExiste() {
             return ArchivoService.directorioTicketsExiste();
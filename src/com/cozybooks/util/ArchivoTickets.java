@@ -0,0 +1,922 @@
+package com.cozybooks.util;
+
+import com.cozybooks.model.Cliente;
+import com.cozybooks.model.DetalleVenta;
+import com.cozybooks.model.Libro;
+import com.cozybooks.model.TicketVenta;
+import com.cozybooks.model.Venta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Archivo de tickets de venta en segmentos de solo agregado, comprimidos por bloques.
+ *
+ * En lugar de un .txt por venta, los tickets se juntan en un bloque en memoria (cada
+ * uno con el ID de la venta y su longitud). Al llenarse, el bloque se comprime con
+ * Deflater y se agrega al segmento actual ("tickets-NNNNNNNNNN.dat") con una cabecera
+ * que indica si está comprimido, sus longitudes y el CRC del contenido original. Como
+ * cada bloque se descomprime por separado, leer un ticket descomprime un solo bloque.
+ *
+ * Un índice mapeado en memoria ("indice.idx") guarda, en la posición id_venta, el
+ * segmento, la longitud del ticket y su ubicación (desplazamiento del bloque en el
+ * segmento y posición del ticket dentro del bloque), así leer un ticket es una
+ * búsqueda directa, sin recorrer los segmentos.
+ *
+ * Los segmentos rotan al llegar a TAMAÑO_MAXIMO_SEGMENTO. Regenerar un ticket agrega
+ * una copia nueva y deja la anterior sin uso; compactar() reescribe los segmentos
+ * cerrados conservando solo los tickets vigentes. Si el índice se pierde, se reconstruye
+ * recorriendo los segmentos. El bloque abierto se escribe y el disco se sincroniza al
+ * llenarse el bloque, al rotar, compactar y cerrar, y además cuando su primer ticket lleva
+ * esperaMaximaBloqueMs sin escribirse (5 segundos por defecto, -Dcozybooks.tickets.esperaMs):
+ * en un día tranquilo el bloque tardaría horas en llenarse, y una caída pierde como mucho
+ * los tickets de esos últimos segundos (que se pueden regenerar desde la base de datos).
+ *
+ * Se usa como generador de tickets iniciando la aplicación con -Dcozybooks.tickets.archivo=true.
+ * El nivel de compresión (-Dcozybooks.tickets.nivel, 0 a 9, 6 por defecto; 0 guarda los
+ * bloques sin comprimir) y el tamaño de bloque (-Dcozybooks.tickets.bloqueKb, 64 por
+ * defecto) son configurables; bloques más grandes comprimen más pero cada lectura
+ * descomprime más datos.
+ */
+public class ArchivoTickets implements GeneradorTicket, AutoCloseable {
+    private static final String PROPIEDAD_ACTIVO = "cozybooks.tickets.archivo";
+    private static final String PROPIEDAD_NIVEL = "cozybooks.tickets.nivel";
+    private static final String PROPIEDAD_BLOQUE_KB = "cozybooks.tickets.bloqueKb";
+    private static final String PROPIEDAD_ESPERA_MS = "cozybooks.tickets.esperaMs";
+    private static final String DIRECTORIO_POR_DEFECTO = "tickets-archivo";
+    private static final String PREFIJO_SEGMENTO = "tickets-";
+    private static final String EXTENSION_SEGMENTO = ".dat";
+    private static final String NOMBRE_INDICE = "indice.idx";
+    private static final long TAMAÑO_MAXIMO_SEGMENTO = 64L * 1024 * 1024;
+    private static final int NIVEL_POR_DEFECTO = 6;
+    private static final int BLOQUE_KB_POR_DEFECTO = 64;
+    private static final long ESPERA_MAXIMA_BLOQUE_MS_POR_DEFECTO = 5 * 1000;
+
+    // "CKB0" / "CKB1": inicio de un bloque guardado tal cual / comprimido con Deflater
+    private static final int MAGICO_SIN_COMPRIMIR = 0x434B4230;
+    private static final int MAGICO_COMPRIMIDO = 0x434B4231;
+    // mágico (4) + longitud almacenada (4) + longitud original (4) + CRC del contenido original (4)
+    private static final int TAMAÑO_CABECERA = 16;
+    // ID de venta (4) + longitud (4) antes de cada ticket dentro del bloque
+    private static final int TAMAÑO_CABECERA_TICKET = 8;
+    // segmento (4) + longitud (4) + ubicación (8); segmento 0 = sin ticket
+    private static final int TAMAÑO_ENTRADA = 16;
+    private static final int ENTRADAS_INICIALES = 64 * 1024;
+    private static final int ENTRADAS_MAXIMAS = Integer.MAX_VALUE / TAMAÑO_ENTRADA;
+    // La ubicación guarda la posición dentro del bloque en los bits bajos
+    private static final int BITS_POSICION_EN_BLOQUE = 24;
+    private static final int TAMAÑO_MAXIMO_BLOQUE = 1 << (BITS_POSICION_EN_BLOQUE - 1);
+
+    private static ArchivoTickets instancia = null;
+
+    private final Path directorio;
+    private final int nivelCompresion;
+    private final int tamañoBloque;
+    private final long esperaMaximaBloqueMs;
+    private final ByteBuffer cabecera = ByteBuffer.allocate(TAMAÑO_CABECERA);
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel segmento;
+    private int numeroSegmento;
+    private long tamañoSegmento;
+    private FileChannel canalIndice;
+    private MappedByteBuffer indice;
+    private int capacidadIndice;
+    private Deflater compresor;
+    private Inflater descompresor;
+
+    // Bloque abierto: tickets todavía no escritos en el segmento
+    private ByteBuffer bloque;
+    private byte[] comprimido;
+    private int[] pendientesVenta = new int[64];
+    private int[] pendientesPosicion = new int[64];
+    private int cantidadPendientes = 0;
+    // Cuándo entró el primer ticket del bloque abierto (System.nanoTime)
+    private long inicioBloqueAbierto;
+    // Escribe el bloque abierto cuando lleva esperaMaximaBloqueMs sin llenarse
+    private ScheduledExecutorService sincronizador;
+    private volatile String ultimoErrorSincronizacion = null;
+
+    // Último bloque leído, para no descomprimirlo de nuevo al extraer tickets vecinos
+    private int segmentoEnCache = 0;
+    private long desplazamientoEnCache = -1;
+    private byte[] bloqueEnCache = null;
+
+    private long ticketsAgregados = 0;
+    private long bloquesEscritos = 0;
+    private long bytesOriginales = 0;
+    private long bytesAlmacenados = 0;
+    private long nanosCompresion = 0;
+    private long bytesDescomprimidos = 0;
+    private long nanosDescompresion = 0;
+    private long compactaciones = 0;
+    private long bytesLiberados = 0;
+    private long bloquesPorTiempo = 0;
+
+    /**
+     * Crea un archivo con el nivel de compresión y el tamaño de bloque configurados
+     * (o los valores por defecto)
+     * @param directorio directorio de los segmentos y del índice (se crea al agregar el primer ticket)
+     */
+    public ArchivoTickets(Path directorio) {
+        this(directorio, Integer.getInteger(PROPIEDAD_NIVEL, NIVEL_POR_DEFECTO),
+            Integer.getInteger(PROPIEDAD_BLOQUE_KB, BLOQUE_KB_POR_DEFECTO) * 1024,
+            Long.getLong(PROPIEDAD_ESPERA_MS, ESPERA_MAXIMA_BLOQUE_MS_POR_DEFECTO));
+    }
+
+    /**
+     * @param directorio directorio de los segmentos y del índice (se crea al agregar el primer ticket)
+     * @param nivelCompresion nivel de Deflater, de 0 (sin comprimir) a 9
+     * @param tamañoBloque bytes de tickets por bloque antes de comprimirlo
+     */
+    public ArchivoTickets(Path directorio, int nivelCompresion, int tamañoBloque) {
+        this(directorio, nivelCompresion, tamañoBloque, ESPERA_MAXIMA_BLOQUE_MS_POR_DEFECTO);
+    }
+
+    /**
+     * @param directorio directorio de los segmentos y del índice (se crea al agregar el primer ticket)
+     * @param nivelCompresion nivel de Deflater, de 0 (sin comprimir) a 9
+     * @param tamañoBloque bytes de tickets por bloque antes de comprimirlo
+     * @param esperaMaximaBloqueMs tiempo máximo que un ticket espera en el bloque abierto antes de escribirse
+     */
+    public ArchivoTickets(Path directorio, int nivelCompresion, int tamañoBloque, long esperaMaximaBloqueMs) {
+        if (nivelCompresion < Deflater.NO_COMPRESSION || nivelCompresion > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("El nivel de compresión debe estar entre 0 y 9: " + nivelCompresion);
+        }
+        if (tamañoBloque < 1024 || tamañoBloque > TAMAÑO_MAXIMO_BLOQUE) {
+            throw new IllegalArgumentException("El tamaño de bloque debe estar entre 1 KB y " +
+                (TAMAÑO_MAXIMO_BLOQUE / 1024) + " KB: " + tamañoBloque);
+        }
+        if (esperaMaximaBloqueMs <= 0) {
+            throw new IllegalArgumentException("La espera máxima del bloque debe ser positiva: " + esperaMaximaBloqueMs);
+        }
+        this.directorio = directorio;
+        this.nivelCompresion = nivelCompresion;
+        this.tamañoBloque = tamañoBloque;
+        this.esperaMaximaBloqueMs = esperaMaximaBloqueMs;
+    }
+
+    /**
+     * @return true si la aplicación se inició con -Dcozybooks.tickets.archivo=true
+     */
+    public static boolean estaActivo() {
+        return Boolean.getBoolean(PROPIEDAD_ACTIVO);
+    }
+
+    /**
+     * Obtiene el archivo de tickets compartido, en el directorio "tickets-archivo"
+     * @return el archivo de tickets (los archivos se abren recién al usarlo)
+     */
+    public static synchronized ArchivoTickets getInstance() {
+        if (instancia == null) {
+            instancia = new ArchivoTickets(Paths.get(DIRECTORIO_POR_DEFECTO));
+        }
+        return instancia;
+    }
+
+    /**
+     * Escribe el bloque abierto, sincroniza y cierra el archivo de tickets compartido
+     */
+    public static synchronized void cerrarInstancia() {
+        if (instancia != null) {
+            try {
+                instancia.close();
+            } catch (IOException e) {
+                System.err.println("Error al cerrar el archivo de tickets: " + e.getMessage());
+            }
+            instancia = null;
+        }
+    }
+
+    // ========== IMPLEMENTACIÓN DE LA INTERFAZ ==========
+
+    @Override
+    public void generarTicket(Venta venta, Cliente cliente, List<DetalleVenta> detalles, List<Libro> libros) throws IOException {
+        agregar(venta.getIdVenta(), RenderizadorTicket.renderizar(venta, cliente, detalles, libros));
+        System.out.println("Ticket archivado exitosamente: venta " + venta.getIdVenta());
+    }
+
+    /**
+     * Renderiza el lote fuera del bloqueo (así varios hilos pueden renderizar a la vez)
+     * y lo agrega al archivo de una sola vez
+     */
+    @Override
+    public void generarLote(List<TicketVenta> tickets) throws IOException {
+        int[] ventas = new int[tickets.size()];
+        int[] posiciones = new int[tickets.size() + 1];
+        ByteBuffer contenidos = ByteBuffer.allocate(tickets.size() * 1024);
+        for (int i = 0; i < tickets.size(); i++) {
+            TicketVenta ticket = tickets.get(i);
+            ByteBuffer contenido = RenderizadorTicket.renderizar(ticket.getVenta(), ticket.getCliente(),
+                ticket.getDetalles(), ticket.getLibros());
+            if (contenidos.remaining() < contenido.remaining()) {
+                int capacidad = Math.max(contenidos.capacity() * 2, contenidos.position() + contenido.remaining());
+                contenidos = ByteBuffer.allocate(capacidad).put(contenidos.flip());
+            }
+            ventas[i] = ticket.getVenta().getIdVenta();
+            posiciones[i] = contenidos.position();
+            contenidos.put(contenido);
+        }
+        posiciones[tickets.size()] = contenidos.position();
+
+        byte[] datos = contenidos.array();
+        synchronized (this) {
+            for (int i = 0; i < ventas.length; i++) {
+                agregar(ventas[i], ByteBuffer.wrap(datos, posiciones[i], posiciones[i + 1] - posiciones[i]));
+            }
+        }
+    }
+
+    @Override
+    public boolean directorioTicketsExiste() {
+        return Files.isDirectory(directorio);
+    }
+
+    @Override
+    public void crearDirectorioTickets() throws IOException {
+        Files.createDirectories(directorio);
+    }
+
+    // ========== ESCRITURA Y LECTURA ==========
+
+    /**
+     * Agrega un ticket al bloque abierto; el índice lo registra cuando el bloque se escribe.
+     * Si la venta ya tenía un ticket, el índice pasa a apuntar al nuevo.
+     * @param idVenta ID de la venta
+     * @param contenido contenido del ticket (se consume)
+     * @throws IOException si falla la escritura del bloque anterior
+     */
+    public synchronized void agregar(int idVenta, ByteBuffer contenido) throws IOException {
+        if (idVenta <= 0 || idVenta >= ENTRADAS_MAXIMAS) {
+            throw new IllegalArgumentException("ID de venta fuera de rango para el archivo de tickets: " + idVenta);
+        }
+        if (contenido.remaining() > TAMAÑO_MAXIMO_BLOQUE - TAMAÑO_CABECERA_TICKET) {
+            throw new IllegalArgumentException("Ticket demasiado grande para el archivo: " + contenido.remaining() + " bytes");
+        }
+        abrir();
+        escribir(idVenta, contenido);
+        ticketsAgregados++;
+    }
+
+    private void escribir(int idVenta, ByteBuffer contenido) throws IOException {
+        int necesario = TAMAÑO_CABECERA_TICKET + contenido.remaining();
+        if (bloque.position() > 0 && bloque.position() + necesario > tamañoBloque) {
+            cerrarBloque();
+        }
+        if (bloque.remaining() < necesario) {
+            // Un ticket más grande que el bloque ocupa un bloque propio
+            bloque = ByteBuffer.allocate(bloque.position() + necesario).put(bloque.flip());
+        }
+        if (cantidadPendientes == pendientesVenta.length) {
+            pendientesVenta = Arrays.copyOf(pendientesVenta, cantidadPendientes * 2);
+            pendientesPosicion = Arrays.copyOf(pendientesPosicion, cantidadPendientes * 2);
+        }
+        if (cantidadPendientes == 0) {
+            inicioBloqueAbierto = System.nanoTime();
+        }
+        pendientesVenta[cantidadPendientes] = idVenta;
+        pendientesPosicion[cantidadPendientes] = bloque.position();
+        cantidadPendientes++;
+        bloque.putInt(idVenta).putInt(contenido.remaining()).put(contenido);
+    }
+
+    /**
+     * Comprime el bloque abierto, lo agrega al segmento y registra sus tickets en el índice
+     */
+    private void cerrarBloque() throws IOException {
+        int original = bloque.position();
+        if (original == 0) {
+            return;
+        }
+        byte[] datos = bloque.array();
+        crc.reset();
+        crc.update(datos, 0, original);
+
+        int magico = MAGICO_SIN_COMPRIMIR;
+        byte[] almacenar = datos;
+        int almacenado = original;
+        if (nivelCompresion > Deflater.NO_COMPRESSION) {
+            long inicio = System.nanoTime();
+            int comprimidos = comprimir(datos, original);
+            nanosCompresion += System.nanoTime() - inicio;
+            // Si no se gana espacio se guarda tal cual
+            if (comprimidos < original) {
+                magico = MAGICO_COMPRIMIDO;
+                almacenar = comprimido;
+                almacenado = comprimidos;
+            }
+        }
+
+        if (tamañoSegmento > 0 && tamañoSegmento + TAMAÑO_CABECERA + almacenado > TAMAÑO_MAXIMO_SEGMENTO) {
+            rotarSegmento();
+        }
+        cabecera.clear();
+        cabecera.putInt(magico).putInt(almacenado).putInt(original).putInt((int) crc.getValue());
+        cabecera.flip();
+        ByteBuffer[] partes = { cabecera, ByteBuffer.wrap(almacenar, 0, almacenado) };
+        try {
+            while (partes[0].hasRemaining() || partes[1].hasRemaining()) {
+                segmento.write(partes);
+            }
+        } catch (IOException e) {
+            // Se descarta lo escrito a medias: el reintento vuelve a escribir el bloque
+            // (que sigue abierto) en tamañoSegmento, donde lo espera el índice
+            try {
+                segmento.truncate(tamañoSegmento);
+                segmento.position(tamañoSegmento);
+            } catch (IOException limpieza) {
+                e.addSuppressed(limpieza);
+            }
+            throw e;
+        }
+        long desplazamiento = tamañoSegmento;
+        tamañoSegmento += TAMAÑO_CABECERA + almacenado;
+
+        for (int i = 0; i < cantidadPendientes; i++) {
+            int posicion = pendientesPosicion[i];
+            ponerEntrada(pendientesVenta[i], numeroSegmento, bloque.getInt(posicion + 4),
+                ubicacion(desplazamiento, posicion));
+        }
+        bloquesEscritos++;
+        bytesOriginales += original;
+        bytesAlmacenados += TAMAÑO_CABECERA + almacenado;
+        cantidadPendientes = 0;
+        if (bloque.capacity() > tamañoBloque) {
+            bloque = ByteBuffer.allocate(tamañoBloque);
+        } else {
+            bloque.clear();
+        }
+    }
+
+    private int comprimir(byte[] datos, int longitud) {
+        compresor.reset();
+        compresor.setInput(datos, 0, longitud);
+        compresor.finish();
+        int total = 0;
+        while (!compresor.finished()) {
+            if (total == comprimido.length) {
+                comprimido = Arrays.copyOf(comprimido, comprimido.length * 2);
+            }
+            total += compresor.deflate(comprimido, total, comprimido.length - total);
+        }
+        return total;
+    }
+
+    /**
+     * Lee el ticket de una venta con una única búsqueda en el índice, descomprimiendo
+     * solo el bloque que lo contiene
+     * @param idVenta ID de la venta
+     * @return contenido del ticket en UTF-8, o null si la venta no tiene ticket archivado
+     * @throws IOException si falla la lectura o el ticket está dañado
+     */
+    public synchronized byte[] leer(int idVenta) throws IOException {
+        if (idVenta <= 0 || !Files.isDirectory(directorio)) {
+            return null;
+        }
+        abrir();
+        // El ticket más reciente puede estar todavía en el bloque abierto
+        for (int i = cantidadPendientes - 1; i >= 0; i--) {
+            if (pendientesVenta[i] == idVenta) {
+                return copiarTicket(bloque.array(), pendientesPosicion[i], idVenta, -1);
+            }
+        }
+        if (idVenta >= capacidadIndice) {
+            return null;
+        }
+        int base = idVenta * TAMAÑO_ENTRADA;
+        int numero = indice.getInt(base);
+        if (numero == 0) {
+            return null;
+        }
+        int longitud = indice.getInt(base + 4);
+        long ubicacion = indice.getLong(base + 8);
+        byte[] datos = leerBloque(numero, ubicacion >>> BITS_POSICION_EN_BLOQUE);
+        return copiarTicket(datos, (int) (ubicacion & ((1L << BITS_POSICION_EN_BLOQUE) - 1)), idVenta, longitud);
+    }
+
+    private static byte[] copiarTicket(byte[] datos, int posicion, int idVenta, int longitudEsperada) throws IOException {
+        ByteBuffer ticket = ByteBuffer.wrap(datos);
+        if (posicion + TAMAÑO_CABECERA_TICKET > datos.length || ticket.getInt(posicion) != idVenta) {
+            throw new IOException("El índice del ticket de la venta " + idVenta + " no coincide con el archivo");
+        }
+        int longitud = ticket.getInt(posicion + 4);
+        if ((longitudEsperada >= 0 && longitud != longitudEsperada) ||
+                posicion + TAMAÑO_CABECERA_TICKET + longitud > datos.length) {
+            throw new IOException("El índice del ticket de la venta " + idVenta + " no coincide con el archivo");
+        }
+        int inicio = posicion + TAMAÑO_CABECERA_TICKET;
+        return Arrays.copyOfRange(datos, inicio, inicio + longitud);
+    }
+
+    /**
+     * Lee y descomprime el bloque en la posición indicada (con caché del último bloque leído)
+     */
+    private byte[] leerBloque(int numero, long desplazamiento) throws IOException {
+        if (numero == segmentoEnCache && desplazamiento == desplazamientoEnCache) {
+            return bloqueEnCache;
+        }
+        byte[] datos;
+        try (FileChannel canal = FileChannel.open(rutaSegmento(numero), StandardOpenOption.READ)) {
+            datos = leerBloque(canal, numero, desplazamiento);
+        }
+        segmentoEnCache = numero;
+        desplazamientoEnCache = desplazamiento;
+        bloqueEnCache = datos;
+        return datos;
+    }
+
+    private byte[] leerBloque(FileChannel canal, int numero, long desplazamiento) throws IOException {
+        ByteBuffer lectura = ByteBuffer.allocate(TAMAÑO_CABECERA);
+        if (!leerCabecera(canal, desplazamiento, canal.size(), lectura)) {
+            throw new IOException("Bloque incompleto en el segmento " + numero + ", posición " + desplazamiento);
+        }
+        int magico = lectura.getInt(0);
+        int almacenado = lectura.getInt(4);
+        int original = lectura.getInt(8);
+        int esperado = lectura.getInt(12);
+
+        ByteBuffer contenido = ByteBuffer.allocate(almacenado);
+        while (contenido.hasRemaining()) {
+            if (canal.read(contenido, desplazamiento + TAMAÑO_CABECERA + contenido.position()) < 0) {
+                throw new IOException("Bloque incompleto en el segmento " + numero + ", posición " + desplazamiento);
+            }
+        }
+        byte[] datos;
+        if (magico == MAGICO_COMPRIMIDO) {
+            long inicio = System.nanoTime();
+            datos = new byte[original];
+            descompresor.reset();
+            descompresor.setInput(contenido.array());
+            try {
+                int total = 0;
+                while (total < original && !descompresor.finished()) {
+                    int leidos = descompresor.inflate(datos, total, original - total);
+                    if (leidos == 0 && (descompresor.needsInput() || descompresor.needsDictionary())) {
+                        break;
+                    }
+                    total += leidos;
+                }
+                if (total != original) {
+                    throw new IOException("Bloque truncado en el segmento " + numero + ", posición " + desplazamiento);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Bloque dañado en el segmento " + numero + ", posición " + desplazamiento, e);
+            }
+            nanosDescompresion += System.nanoTime() - inicio;
+            bytesDescomprimidos += original;
+        } else {
+            datos = contenido.array();
+        }
+        crc.reset();
+        crc.update(datos, 0, datos.length);
+        if ((int) crc.getValue() != esperado) {
+            throw new IOException("Bloque dañado en el segmento " + numero + ", posición " + desplazamiento + " (CRC inválido)");
+        }
+        return datos;
+    }
+
+    /**
+     * Extrae el ticket de una venta a un archivo .txt
+     * @param idVenta ID de la venta
+     * @param destino archivo a escribir
+     * @return true si se extrajo, false si la venta no tiene ticket archivado
+     * @throws IOException si falla la lectura o la escritura
+     */
+    public boolean extraer(int idVenta, Path destino) throws IOException {
+        byte[] contenido = leer(idVenta);
+        if (contenido == null) {
+            return false;
+        }
+        Path carpeta = destino.toAbsolutePath().getParent();
+        if (carpeta != null) {
+            Files.createDirectories(carpeta);
+        }
+        Files.write(destino, contenido);
+        return true;
+    }
+
+    // ========== MANTENIMIENTO ==========
+
+    /**
+     * Escribe el bloque abierto, cierra el segmento actual (si tiene tickets) y empieza uno nuevo
+     * @throws IOException si falla la sincronización o la creación del segmento
+     */
+    public synchronized void rotar() throws IOException {
+        abrir();
+        cerrarBloque();
+        if (tamañoSegmento > 0) {
+            rotarSegmento();
+        }
+    }
+
+    /**
+     * Reescribe los segmentos cerrados conservando solo los tickets a los que apunta
+     * el índice y elimina los originales. Bloquea la escritura de tickets mientras dura.
+     * @return bytes liberados
+     * @throws IOException si falla la lectura o la escritura de algún segmento
+     */
+    public synchronized long compactar() throws IOException {
+        rotar();
+        int primerSegmentoNuevo = numeroSegmento;
+        long liberados = 0;
+        ByteBuffer lectura = ByteBuffer.allocate(TAMAÑO_CABECERA);
+        for (Path ruta : segmentos(directorio)) {
+            int numero = numeroDe(ruta);
+            if (numero >= primerSegmentoNuevo) {
+                continue;
+            }
+            long escritosAntes = bytesAlmacenados;
+            long tamañoOriginal;
+            try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+                tamañoOriginal = canal.size();
+                long desplazamiento = 0;
+                while (leerCabecera(canal, desplazamiento, tamañoOriginal, lectura)) {
+                    long siguiente = desplazamiento + TAMAÑO_CABECERA + lectura.getInt(4);
+                    byte[] datos = leerBloque(canal, numero, desplazamiento);
+                    ByteBuffer tickets = ByteBuffer.wrap(datos);
+                    while (tickets.remaining() >= TAMAÑO_CABECERA_TICKET) {
+                        int posicion = tickets.position();
+                        int idVenta = tickets.getInt();
+                        int longitud = tickets.getInt();
+                        if (esVigente(idVenta, numero, ubicacion(desplazamiento, posicion))) {
+                            escribir(idVenta, ByteBuffer.wrap(datos, tickets.position(), longitud));
+                        }
+                        tickets.position(tickets.position() + longitud);
+                    }
+                    desplazamiento = siguiente;
+                }
+            }
+            // Las copias y el índice tienen que estar en disco antes de borrar el original
+            cerrarBloque();
+            sincronizar();
+            Files.deleteIfExists(ruta);
+            if (segmentoEnCache == numero) {
+                desplazamientoEnCache = -1;
+            }
+            liberados += tamañoOriginal - (bytesAlmacenados - escritosAntes);
+        }
+        compactaciones++;
+        bytesLiberados += liberados;
+        return liberados;
+    }
+
+    /**
+     * Vuelve a armar el índice recorriendo todos los segmentos en orden.
+     * Se usa automáticamente si falta el archivo del índice.
+     * @return cantidad de tickets indexados
+     * @throws IOException si falla la lectura de algún segmento
+     */
+    public synchronized int reconstruirIndice() throws IOException {
+        abrir();
+        cerrarBloque();
+        return indexarSegmentos();
+    }
+
+    /**
+     * Escribe el bloque abierto y fuerza a disco el segmento actual y el índice
+     * @throws IOException si falla la escritura o la sincronización
+     */
+    public synchronized void sincronizar() throws IOException {
+        if (segmento != null) {
+            cerrarBloque();
+            segmento.force(false);
+            indice.force();
+        }
+    }
+
+    // Tarea del sincronizador: escribe el bloque abierto si su primer ticket ya esperó demasiado
+    private synchronized void sincronizarBloqueVencido() {
+        if (segmento == null || cantidadPendientes == 0 ||
+                System.nanoTime() - inicioBloqueAbierto < TimeUnit.MILLISECONDS.toNanos(esperaMaximaBloqueMs)) {
+            return;
+        }
+        try {
+            sincronizar();
+            bloquesPorTiempo++;
+            ultimoErrorSincronizacion = null;
+        } catch (IOException e) {
+            // El bloque sigue abierto; se reintenta en el próximo ciclo
+            ultimoErrorSincronizacion = e.getMessage();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (sincronizador != null) {
+            sincronizador.shutdown();
+            sincronizador = null;
+        }
+        if (segmento == null) {
+            return;
+        }
+        sincronizar();
+        segmento.close();
+        canalIndice.close();
+        compresor.end();
+        descompresor.end();
+        segmento = null;
+        canalIndice = null;
+        indice = null;
+        bloqueEnCache = null;
+        desplazamientoEnCache = -1;
+    }
+
+    /**
+     * @return resumen del archivo de tickets y de la compresión en esta sesión
+     */
+    public synchronized String reporte() {
+        if (!Files.isDirectory(directorio)) {
+            return "Archivo de tickets: sin crear (" + directorio + ")";
+        }
+        long cantidadSegmentos = 0;
+        long bytes = 0;
+        try {
+            for (Path ruta : segmentos(directorio)) {
+                cantidadSegmentos++;
+                bytes += Files.size(ruta);
+            }
+        } catch (IOException e) {
+            return "Archivo de tickets: no se pudo leer " + directorio + " (" + e.getMessage() + ")";
+        }
+        return "Archivo de tickets: " + cantidadSegmentos + " segmentos, " +
+               String.format("%.1f MB", bytes / (1024.0 * 1024.0)) +
+               ", tickets agregados: " + ticketsAgregados +
+               ", compactaciones: " + compactaciones +
+               String.format(" (%.1f MB liberados)", bytesLiberados / (1024.0 * 1024.0)) + "\n" +
+               "Compresión: nivel " + nivelCompresion + ", bloques de " + (tamañoBloque / 1024) + " KB" +
+               ", bloques escritos: " + bloquesEscritos + " (" + bloquesPorTiempo + " por tiempo)" +
+               ", relación: " + (bytesAlmacenados == 0 ? "N/A" :
+                   String.format("%.1fx", (double) bytesOriginales / bytesAlmacenados)) +
+               ", compresión: " + megabytesPorSegundo(bytesOriginales, nanosCompresion) +
+               ", descompresión: " + megabytesPorSegundo(bytesDescomprimidos, nanosDescompresion) +
+               (ultimoErrorSincronizacion == null ? "" :
+                   "\nÚltimo error al escribir el bloque abierto: " + ultimoErrorSincronizacion);
+    }
+
+    private static String megabytesPorSegundo(long bytes, long nanos) {
+        if (nanos == 0) {
+            return "N/A";
+        }
+        return String.format("%.1f MB/s", bytes / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0));
+    }
+
+    // ========== INTERNOS ==========
+
+    private void abrir() throws IOException {
+        if (segmento != null) {
+            return;
+        }
+        Files.createDirectories(directorio);
+        Path rutaIndice = directorio.resolve(NOMBRE_INDICE);
+        boolean indiceExistente = Files.exists(rutaIndice);
+        canalIndice = FileChannel.open(rutaIndice, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            capacidadIndice = (int) Math.max(ENTRADAS_INICIALES, canalIndice.size() / TAMAÑO_ENTRADA);
+            indice = canalIndice.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacidadIndice * TAMAÑO_ENTRADA);
+
+            List<Path> existentes = segmentos(directorio);
+            numeroSegmento = existentes.isEmpty() ? 1 : numeroDe(existentes.get(existentes.size() - 1));
+            segmento = FileChannel.open(rutaSegmento(numeroSegmento), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!formatoReconocido(segmento)) {
+                throw new IOException("El segmento " + rutaSegmento(numeroSegmento) + " no tiene un formato reconocido");
+            }
+
+            compresor = new Deflater(nivelCompresion);
+            descompresor = new Inflater();
+            if (bloque == null) {
+                bloque = ByteBuffer.allocate(tamañoBloque);
+                comprimido = new byte[tamañoBloque / 2];
+            }
+
+            // Un bloque a medio escribir al final del último segmento (aunque sea el primero) se descarta
+            tamañoSegmento = finDeBloquesCompletos(segmento);
+            boolean truncado = segmento.size() > tamañoSegmento;
+            segmento.truncate(tamañoSegmento);
+            segmento.position(tamañoSegmento);
+
+            if (!indiceExistente && !existentes.isEmpty()) {
+                indexarSegmentos();
+            } else if (truncado) {
+                quitarEntradasDesde(numeroSegmento, tamañoSegmento);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Queda cerrado: el próximo uso vuelve a intentar abrirlo desde cero
+            liberar(e);
+            throw e;
+        }
+
+        if (sincronizador == null) {
+            sincronizador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread hilo = new Thread(r, "cozybooks-tickets-sincronizacion");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+            long periodo = Math.max(1, esperaMaximaBloqueMs / 2);
+            sincronizador.scheduleWithFixedDelay(this::sincronizarBloqueVencido, periodo, periodo, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Cierra canales y libera compresores sin sincronizar; los errores se agregan a la causa
+    private void liberar(Exception causa) {
+        for (AutoCloseable canal : new AutoCloseable[] { segmento, canalIndice }) {
+            if (canal != null) {
+                try {
+                    canal.close();
+                } catch (Exception e) {
+                    causa.addSuppressed(e);
+                }
+            }
+        }
+        if (compresor != null) {
+            compresor.end();
+        }
+        if (descompresor != null) {
+            descompresor.end();
+        }
+        segmento = null;
+        canalIndice = null;
+        indice = null;
+        compresor = null;
+        descompresor = null;
+        bloqueEnCache = null;
+        desplazamientoEnCache = -1;
+    }
+
+    /**
+     * Un segmento vacío o que empieza con un mágico de bloque es de este archivo, aunque su
+     * primer bloque (o su cabecera) esté incompleto; uno que no llega a tener un mágico
+     * completo o que empieza con otro contenido no
+     */
+    private static boolean formatoReconocido(FileChannel canal) throws IOException {
+        long tamaño = canal.size();
+        if (tamaño == 0) {
+            return true;
+        }
+        ByteBuffer magico = ByteBuffer.allocate(4);
+        if (tamaño < magico.capacity()) {
+            return false;
+        }
+        while (magico.hasRemaining()) {
+            if (canal.read(magico, magico.position()) < 0) {
+                return false;
+            }
+        }
+        int valor = magico.getInt(0);
+        return valor == MAGICO_COMPRIMIDO || valor == MAGICO_SIN_COMPRIMIR;
+    }
+
+    // Borra las entradas del índice que apuntan a bloques descartados al truncar el segmento
+    private void quitarEntradasDesde(int numero, long fin) {
+        for (int base = TAMAÑO_ENTRADA; base < capacidadIndice * TAMAÑO_ENTRADA; base += TAMAÑO_ENTRADA) {
+            if (indice.getInt(base) == numero && indice.getLong(base + 8) >>> BITS_POSICION_EN_BLOQUE >= fin) {
+                indice.putInt(base, 0);
+            }
+        }
+        indice.force();
+    }
+
+    private void rotarSegmento() throws IOException {
+        segmento.force(false);
+        segmento.close();
+        numeroSegmento++;
+        segmento = FileChannel.open(rutaSegmento(numeroSegmento), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        tamañoSegmento = 0;
+    }
+
+    private int indexarSegmentos() throws IOException {
+        for (int i = 0; i < capacidadIndice * TAMAÑO_ENTRADA; i += 8) {
+            indice.putLong(i, 0L);
+        }
+        int indexados = 0;
+        ByteBuffer lectura = ByteBuffer.allocate(TAMAÑO_CABECERA);
+        for (Path ruta : segmentos(directorio)) {
+            int numero = numeroDe(ruta);
+            try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+                long desplazamiento = 0;
+                long tamaño = canal.size();
+                while (leerCabecera(canal, desplazamiento, tamaño, lectura)) {
+                    long siguiente = desplazamiento + TAMAÑO_CABECERA + lectura.getInt(4);
+                    ByteBuffer tickets = ByteBuffer.wrap(leerBloque(canal, numero, desplazamiento));
+                    while (tickets.remaining() >= TAMAÑO_CABECERA_TICKET) {
+                        int posicion = tickets.position();
+                        int idVenta = tickets.getInt();
+                        int longitud = tickets.getInt();
+                        if (idVenta > 0 && idVenta < ENTRADAS_MAXIMAS) {
+                            ponerEntrada(idVenta, numero, longitud, ubicacion(desplazamiento, posicion));
+                            indexados++;
+                        }
+                        tickets.position(tickets.position() + longitud);
+                    }
+                    desplazamiento = siguiente;
+                }
+            }
+        }
+        indice.force();
+        return indexados;
+    }
+
+    private long finDeBloquesCompletos(FileChannel canal) throws IOException {
+        ByteBuffer lectura = ByteBuffer.allocate(TAMAÑO_CABECERA);
+        long desplazamiento = 0;
+        long tamaño = canal.size();
+        while (leerCabecera(canal, desplazamiento, tamaño, lectura)) {
+            desplazamiento += TAMAÑO_CABECERA + lectura.getInt(4);
+        }
+        return desplazamiento;
+    }
+
+    /**
+     * Lee la cabecera de bloque en la posición indicada; false si no hay un bloque completo ahí
+     */
+    private static boolean leerCabecera(FileChannel canal, long desplazamiento, long tamaño, ByteBuffer lectura) throws IOException {
+        if (desplazamiento + TAMAÑO_CABECERA > tamaño) {
+            return false;
+        }
+        lectura.clear();
+        while (lectura.hasRemaining()) {
+            if (canal.read(lectura, desplazamiento + lectura.position()) < 0) {
+                return false;
+            }
+        }
+        int magico = lectura.getInt(0);
+        int almacenado = lectura.getInt(4);
+        return (magico == MAGICO_COMPRIMIDO || magico == MAGICO_SIN_COMPRIMIR) &&
+               almacenado >= 0 && desplazamiento + TAMAÑO_CABECERA + almacenado <= tamaño;
+    }
+
+    private static long ubicacion(long desplazamientoBloque, int posicionEnBloque) {
+        return (desplazamientoBloque << BITS_POSICION_EN_BLOQUE) | posicionEnBloque;
+    }
+
+    private boolean esVigente(int idVenta, int numero, long ubicacion) {
+        if (idVenta <= 0 || idVenta >= capacidadIndice) {
+            return false;
+        }
+        int base = idVenta * TAMAÑO_ENTRADA;
+        return indice.getInt(base) == numero && indice.getLong(base + 8) == ubicacion;
+    }
+
+    private void ponerEntrada(int idVenta, int numero, int longitud, long ubicacion) throws IOException {
+        if (idVenta >= capacidadIndice) {
+            ampliarIndice(idVenta + 1);
+        }
+        int base = idVenta * TAMAÑO_ENTRADA;
+        indice.putInt(base + 4, longitud);
+        indice.putLong(base + 8, ubicacion);
+        // El segmento va último: una entrada con segmento distinto de 0 siempre está completa
+        indice.putInt(base, numero);
+    }
+
+    private void ampliarIndice(int entradasNecesarias) throws IOException {
+        long nuevaCapacidad = Math.max((long) capacidadIndice * 2, entradasNecesarias);
+        capacidadIndice = (int) Math.min(nuevaCapacidad, ENTRADAS_MAXIMAS);
+        indice.force();
+        indice = canalIndice.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacidadIndice * TAMAÑO_ENTRADA);
+    }
+
+    private Path rutaSegmento(int numero) {
+        return directorio.resolve(String.format("%s%010d%s", PREFIJO_SEGMENTO, numero, EXTENSION_SEGMENTO));
+    }
+
+    private static List<Path> segmentos(Path directorio) throws IOException {
+        List<Path> rutas = new ArrayList<>();
+        if (!Files.isDirectory(directorio)) {
+            return rutas;
+        }
+        try (DirectoryStream<Path> contenido = Files.newDirectoryStream(directorio,
+                PREFIJO_SEGMENTO + "*" + EXTENSION_SEGMENTO)) {
+            for (Path ruta : contenido) {
+                rutas.add(ruta);
+            }
+        }
+        // El número está rellenado con ceros, así el orden alfabético es el de creación
+        Collections.sort(rutas);
+        return rutas;
+    }
+
+    private static int numeroDe(Path segmento) {
+        String nombre = segmento.getFileName().toString();
+        return Integer.parseInt(nombre.substring(PREFIJO_SEGMENTO.length(), nombre.length() - EXTENSION_SEGMENTO.length()));
+    }
+}
@@ -0,0 +1,125 @@
+package com.cozybooks.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Caché en memoria acotada, segura para múltiples hilos, con expulsión LRU
+ * (menos usado recientemente) y tiempo de vida por entrada.
+ * Lleva contadores de aciertos, fallos y expulsiones para poder reportarlos.
+ */
+public class CacheLRU<K, V> {
+    private final String nombre;
+    private final int capacidad;
+    private final long tiempoVidaMs;
+    // Orden de acceso: la primera entrada es la menos usada recientemente
+    private final LinkedHashMap<K, Entrada<V>> entradas = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long aciertos = 0;
+    private long fallos = 0;
+    private long expulsiones = 0;
+
+    /**
+     * @param nombre nombre de la caché para los reportes
+     * @param capacidad máximo de entradas
+     * @param tiempoVidaMs tiempo tras el cual una entrada se considera vencida
+     */
+    public CacheLRU(String nombre, int capacidad, long tiempoVidaMs) {
+        this.nombre = nombre;
+        this.capacidad = capacidad;
+        this.tiempoVidaMs = tiempoVidaMs;
+    }
+
+    /**
+     * Obtiene un valor de la caché
+     * @param clave la clave buscada
+     * @return el valor, o null si no está o venció
+     */
+    public synchronized V obtener(K clave) {
+        Entrada<V> entrada = entradas.get(clave);
+        if (entrada == null) {
+            fallos++;
+            return null;
+        }
+        if (entrada.vencida(tiempoVidaMs)) {
+            entradas.remove(clave);
+            expulsiones++;
+            fallos++;
+            return null;
+        }
+        aciertos++;
+        return entrada.valor;
+    }
+
+    /**
+     * Guarda un valor, expulsando la entrada menos usada si se supera la capacidad
+     * @param clave la clave
+     * @param valor el valor a guardar
+     */
+    public synchronized void guardar(K clave, V valor) {
+        entradas.put(clave, new Entrada<>(valor));
+        if (entradas.size() > capacidad) {
+            Iterator<K> it = entradas.keySet().iterator();
+            it.next();
+            it.remove();
+            expulsiones++;
+        }
+    }
+
+    /**
+     * Elimina una entrada de la caché
+     * @param clave la clave a invalidar
+     * @return el valor que estaba guardado, o null si no había
+     */
+    public synchronized V invalidar(K clave) {
+        Entrada<V> entrada = entradas.remove(clave);
+        return entrada != null ? entrada.valor : null;
+    }
+
+    /**
+     * Vacía la caché (los contadores se conservan)
+     */
+    public synchronized void limpiar() {
+        entradas.clear();
+    }
+
+    public synchronized int tamaño() {
+        return entradas.size();
+    }
+
+    public synchronized long getAciertos() {
+        return aciertos;
+    }
+
+    public synchronized long getFallos() {
+        return fallos;
+    }
+
+    public synchronized long getExpulsiones() {
+        return expulsiones;
+    }
+
+    /**
+     * @return resumen en una línea con tamaño, aciertos, fallos y expulsiones
+     */
+    public synchronized String reporte() {
+        long total = aciertos + fallos;
+        return nombre + " - entradas: " + entradas.size() + "/" + capacidad +
+               ", aciertos: " + aciertos + ", fallos: " + fallos + ", expulsiones: " + expulsiones +
+               ", tasa de aciertos: " + (total == 0 ? "N/A" : String.format("%.1f%%", aciertos * 100.0 / total));
+    }
+
+    private static class Entrada<V> {
+        private final V valor;
+        private final long creada;
+
+        Entrada(V valor) {
+            this.valor = valor;
+            this.creada = System.currentTimeMillis();
+        }
+
+        boolean vencida(long tiempoVidaMs) {
+            return System.currentTimeMillis() - creada > tiempoVidaMs;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.cozybooks.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché LRU de PreparedStatement de una conexión física, indexada por el texto SQL.
+ *
+ * Los repositorios preparan siempre las mismas sentencias constantes; con esta caché
+ * la sentencia se prepara una sola vez por conexión y close() la devuelve a la caché
+ * en lugar de cerrarla. Con useServerPrepStmts el servidor tampoco vuelve a analizarla;
+ * al expulsarla se cierra y el driver libera la sentencia del servidor. Es la única caché
+ * de sentencias: la del driver (cachePrepStmts) no se activa.
+ *
+ * Una conexión física es usada por un solo hilo a la vez (el que la tiene prestada),
+ * por lo que la caché no necesita sincronización propia.
+ */
+class CacheSentencias {
+    private final Connection fisica;
+    private final int capacidad;
+    private final Contadores contadores;
+    // Orden de acceso: la primera entrada es la menos usada recientemente
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Contadores compartidos por las cachés de todas las conexiones de un pool
+     */
+    static class Contadores {
+        final AtomicLong aciertos = new AtomicLong();
+        final AtomicLong fallos = new AtomicLong();
+        final AtomicLong expulsiones = new AtomicLong();
+    }
+
+    CacheSentencias(Connection fisica, int capacidad, Contadores contadores) {
+        this.fisica = fisica;
+        this.capacidad = capacidad;
+        this.contadores = contadores;
+    }
+
+    /**
+     * Obtiene la sentencia para el SQL indicado, reutilizándola si ya fue preparada
+     * @param propietaria conexión (envoltorio) que se informará como dueña de la sentencia
+     * @param sql texto SQL
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS / NO_GENERATED_KEYS, o null si no se indicó
+     * @return sentencia lista para usar; close() la devuelve a la caché
+     * @throws SQLException si hay error al preparar la sentencia
+     */
+    PreparedStatement preparar(Connection propietaria, String sql, Integer autoGeneratedKeys) throws SQLException {
+        String clave = (autoGeneratedKeys == null ? "" : autoGeneratedKeys.toString()) + ":" + sql;
+        Entrada entrada = entradas.get(clave);
+
+        if (entrada != null && !entrada.enUso) {
+            contadores.aciertos.incrementAndGet();
+            return entrada.prestar(propietaria);
+        }
+
+        contadores.fallos.incrementAndGet();
+        if (entrada != null || capacidad <= 0) {
+            // La misma sentencia ya está abierta en esta conexión: se entrega una sin caché
+            return crear(sql, autoGeneratedKeys);
+        }
+
+        entrada = new Entrada(clave, crear(sql, autoGeneratedKeys));
+        entradas.put(clave, entrada);
+        expulsarExcedentes();
+        return entrada.prestar(propietaria);
+    }
+
+    /**
+     * @return cantidad de sentencias preparadas guardadas en esta conexión
+     */
+    int tamaño() {
+        return entradas.size();
+    }
+
+    private PreparedStatement crear(String sql, Integer autoGeneratedKeys) throws SQLException {
+        return autoGeneratedKeys == null
+            ? fisica.prepareStatement(sql)
+            : fisica.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    private void expulsarExcedentes() {
+        Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator();
+        while (entradas.size() > capacidad && it.hasNext()) {
+            Entrada entrada = it.next().getValue();
+            if (!entrada.enUso) {
+                it.remove();
+                entrada.cerrar();
+                contadores.expulsiones.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Sentencia guardada en la caché
+     */
+    private class Entrada {
+        private final String clave;
+        private final PreparedStatement sentencia;
+        private boolean enUso;
+
+        Entrada(String clave, PreparedStatement sentencia) {
+            this.clave = clave;
+            this.sentencia = sentencia;
+        }
+
+        PreparedStatement prestar(Connection propietaria) {
+            enUso = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                CacheSentencias.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new SentenciaPrestada(this, propietaria));
+        }
+
+        /**
+         * Limpia la sentencia para su próximo uso, incluida la configuración que haya
+         * cambiado quien la tuvo prestada (fetch size del streaming, máximo de filas,
+         * timeout); si falla, se descarta de la caché
+         */
+        void devolver() {
+            enUso = false;
+            try {
+                sentencia.clearParameters();
+                sentencia.clearBatch();
+                sentencia.clearWarnings();
+                sentencia.setFetchSize(0);
+                sentencia.setMaxRows(0);
+                sentencia.setQueryTimeout(0);
+            } catch (SQLException e) {
+                entradas.remove(clave);
+                cerrar();
+            }
+        }
+
+        void cerrar() {
+            try {
+                sentencia.close();
+            } catch (SQLException e) {
+                // La sentencia se descarta de todas formas
+            }
+        }
+    }
+
+    /**
+     * Envoltorio entregado al repositorio: close() devuelve la sentencia a la caché
+     */
+    private static class SentenciaPrestada implements InvocationHandler {
+        private final Entrada entrada;
+        private final Connection propietaria;
+        private boolean cerrada = false;
+
+        SentenciaPrestada(Entrada entrada, Connection propietaria) {
+            this.entrada = entrada;
+            this.propietaria = propietaria;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!cerrada) {
+                        cerrada = true;
+                        entrada.devolver();
+                    }
+                    return null;
+                case "isClosed":
+                    return cerrada;
+                case "getConnection":
+                    // Dentro de una transacción, la vista de la transacción (su close() no devuelve la conexión)
+                    return DBConnection.conexionVisible(propietaria);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SentenciaPrestada[" + entrada.clave + "]";
+                default:
+                    break;
+            }
+
+            if (cerrada) {
+                throw new SQLException("La sentencia ya fue cerrada.");
+            }
+            try {
+                return method.invoke(entrada.sentencia, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
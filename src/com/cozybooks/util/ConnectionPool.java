@@ -0,0 +1,454 @@
+package com.cozybooks.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool de conexiones JDBC acotado y seguro para múltiples hilos.
+ *
+ * Las conexiones entregadas son envoltorios de la conexión física: al llamar
+ * a close() la conexión vuelve al pool en lugar de cerrarse, por lo que los
+ * repositorios pueden seguir usando try-with-resources sin pagar un nuevo
+ * handshake con MySQL en cada operación.
+ *
+ * Características:
+ * - Tamaño mínimo y máximo de conexiones físicas
+ * - Expulsión de conexiones ociosas por encima del mínimo
+ * - Validación al prestar (si la conexión estuvo ociosa un tiempo)
+ * - Tiempo máximo de espera al pedir una conexión con el pool agotado
+ * - Caché de PreparedStatement por conexión (ver CacheSentencias)
+ */
+public class ConnectionPool {
+    // Una conexión usada hace menos de este tiempo se entrega sin validar (evita un ping por préstamo)
+    private static final long VALIDACION_TRAS_MS = 1000;
+    private static final int VALIDACION_TIMEOUT_SEGUNDOS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int tamañoMinimo;
+    private final int tamañoMaximo;
+    private final long tiempoOciosoMaximoMs;
+    private final long tiempoEsperaMaximoMs;
+    private final int tamañoCacheSentencias;
+    private final CacheSentencias.Contadores contadoresSentencias = new CacheSentencias.Contadores();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition disponible = lock.newCondition();
+    // Conexiones libres; la primera es la usada más recientemente
+    private final Deque<ConexionFisica> libres = new ArrayDeque<>();
+    private int totalConexiones = 0;
+    private volatile boolean cerrado = false;
+
+    private final ScheduledExecutorService mantenimiento;
+
+    /**
+     * Crea el pool y abre las conexiones mínimas
+     * @param url URL JDBC
+     * @param user usuario de la base de datos
+     * @param password contraseña del usuario
+     * @param tamañoMinimo conexiones que se mantienen abiertas aunque estén ociosas
+     * @param tamañoMaximo máximo de conexiones físicas abiertas a la vez
+     * @param tiempoOciosoMaximoMs tiempo tras el cual una conexión ociosa (por encima del mínimo) se cierra
+     * @param tiempoEsperaMaximoMs tiempo máximo de espera por una conexión libre
+     * @param tamañoCacheSentencias sentencias preparadas que se guardan por conexión (0 para desactivar)
+     * @throws SQLException si no se pueden abrir las conexiones mínimas
+     */
+    public ConnectionPool(String url, String user, String password, int tamañoMinimo, int tamañoMaximo,
+                          long tiempoOciosoMaximoMs, long tiempoEsperaMaximoMs,
+                          int tamañoCacheSentencias) throws SQLException {
+        if (tamañoMinimo < 0 || tamañoMaximo <= 0 || tamañoMinimo > tamañoMaximo) {
+            throw new IllegalArgumentException("Tamaños de pool inválidos: mínimo=" + tamañoMinimo + ", máximo=" + tamañoMaximo);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.tamañoMinimo = tamañoMinimo;
+        this.tamañoMaximo = tamañoMaximo;
+        this.tiempoOciosoMaximoMs = tiempoOciosoMaximoMs;
+        this.tiempoEsperaMaximoMs = tiempoEsperaMaximoMs;
+        this.tamañoCacheSentencias = tamañoCacheSentencias;
+
+        completarMinimo();
+
+        this.mantenimiento = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "cozybooks-pool-mantenimiento");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        long periodo = Math.max(1000, tiempoOciosoMaximoMs / 2);
+        this.mantenimiento.scheduleWithFixedDelay(this::mantener, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Presta una conexión del pool. Debe cerrarse (close) para devolverla.
+     * @return conexión lista para usar
+     * @throws SQLException si el pool está cerrado, se agota el tiempo de espera o falla la conexión
+     */
+    public Connection getConnection() throws SQLException {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(tiempoEsperaMaximoMs);
+
+        while (true) {
+            ConexionFisica candidata = null;
+            boolean crearNueva = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (cerrado) {
+                        throw new SQLException("El pool de conexiones está cerrado.");
+                    }
+                    if (!libres.isEmpty()) {
+                        candidata = libres.pollFirst();
+                        break;
+                    }
+                    if (totalConexiones < tamañoMaximo) {
+                        totalConexiones++;
+                        crearNueva = true;
+                        break;
+                    }
+                    long restante = limite - System.nanoTime();
+                    if (restante <= 0) {
+                        throw new SQLException("Tiempo de espera agotado al obtener una conexión (" +
+                            tamañoMaximo + " conexiones en uso).");
+                    }
+                    try {
+                        disponible.awaitNanos(restante);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrumpido mientras se esperaba una conexión.");
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (crearNueva) {
+                try {
+                    candidata = abrirConexion();
+                } catch (SQLException e) {
+                    descartar(null);
+                    throw e;
+                }
+                return envolver(candidata);
+            }
+
+            if (esValida(candidata)) {
+                return envolver(candidata);
+            }
+            // Conexión rota: se descarta y se intenta con otra
+            descartar(candidata);
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones libres y rechaza nuevos préstamos.
+     * Las conexiones prestadas se cierran al ser devueltas.
+     */
+    public void close() {
+        List<ConexionFisica> aCerrar;
+        lock.lock();
+        try {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            aCerrar = new ArrayList<>(libres);
+            totalConexiones -= libres.size();
+            libres.clear();
+            disponible.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        mantenimiento.shutdownNow();
+        for (ConexionFisica conexion : aCerrar) {
+            conexion.cerrarSilenciosamente();
+        }
+    }
+
+    public boolean isClosed() {
+        return cerrado;
+    }
+
+    /**
+     * @return número de conexiones físicas abiertas (libres + prestadas)
+     */
+    public int getTotalConexiones() {
+        lock.lock();
+        try {
+            return totalConexiones;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return número de conexiones libres en el pool
+     */
+    public int getConexionesLibres() {
+        lock.lock();
+        try {
+            return libres.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return veces que una sentencia se tomó de la caché sin volver a prepararla
+     */
+    public long getAciertosCacheSentencias() {
+        return contadoresSentencias.aciertos.get();
+    }
+
+    /**
+     * @return veces que una sentencia tuvo que prepararse
+     */
+    public long getFallosCacheSentencias() {
+        return contadoresSentencias.fallos.get();
+    }
+
+    /**
+     * @return sentencias cerradas por exceder la capacidad de la caché
+     */
+    public long getExpulsionesCacheSentencias() {
+        return contadoresSentencias.expulsiones.get();
+    }
+
+    // ========== MANEJO INTERNO ==========
+
+    private ConexionFisica abrirConexion() throws SQLException {
+        Connection fisica = DriverManager.getConnection(url, user, password);
+        return new ConexionFisica(fisica, new CacheSentencias(fisica, tamañoCacheSentencias, contadoresSentencias));
+    }
+
+    private boolean esValida(ConexionFisica conexion) {
+        if (System.currentTimeMillis() - conexion.ultimoUso < VALIDACION_TRAS_MS) {
+            return true;
+        }
+        try {
+            return conexion.fisica.isValid(VALIDACION_TIMEOUT_SEGUNDOS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve una conexión al pool, restaurando su estado por defecto
+     */
+    private void devolver(ConexionFisica conexion) {
+        boolean reutilizable = restablecer(conexion);
+
+        lock.lock();
+        try {
+            if (reutilizable && !cerrado) {
+                conexion.ultimoUso = System.currentTimeMillis();
+                libres.addFirst(conexion);
+                disponible.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        descartar(conexion);
+    }
+
+    /**
+     * Deshace cualquier transacción pendiente para que el siguiente préstamo
+     * reciba la conexión en modo autocommit.
+     */
+    private boolean restablecer(ConexionFisica conexion) {
+        try {
+            if (conexion.fisica.isClosed()) {
+                return false;
+            }
+            if (!conexion.fisica.getAutoCommit()) {
+                conexion.fisica.rollback();
+                conexion.fisica.setAutoCommit(true);
+            }
+            if (conexion.fisica.isReadOnly()) {
+                conexion.fisica.setReadOnly(false);
+            }
+            conexion.fisica.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Cierra una conexión física y libera su lugar en el pool
+     * @param conexion la conexión a cerrar, o null si la conexión nunca llegó a abrirse
+     */
+    private void descartar(ConexionFisica conexion) {
+        if (conexion != null) {
+            conexion.cerrarSilenciosamente();
+        }
+        lock.lock();
+        try {
+            totalConexiones--;
+            disponible.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tarea periódica: cierra conexiones ociosas por encima del mínimo
+     * y repone conexiones hasta el mínimo.
+     */
+    private void mantener() {
+        List<ConexionFisica> expulsadas = new ArrayList<>();
+        long ahora = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            if (cerrado) {
+                return;
+            }
+            // Las menos usadas recientemente están al final de la cola
+            Iterator<ConexionFisica> it = libres.descendingIterator();
+            while (it.hasNext() && totalConexiones > tamañoMinimo) {
+                ConexionFisica conexion = it.next();
+                if (ahora - conexion.ultimoUso >= tiempoOciosoMaximoMs) {
+                    it.remove();
+                    totalConexiones--;
+                    expulsadas.add(conexion);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (ConexionFisica conexion : expulsadas) {
+            conexion.cerrarSilenciosamente();
+        }
+
+        try {
+            completarMinimo();
+        } catch (SQLException e) {
+            System.err.println("Error al reponer conexiones del pool: " + e.getMessage());
+        }
+    }
+
+    private void completarMinimo() throws SQLException {
+        while (true) {
+            lock.lock();
+            try {
+                if (cerrado || totalConexiones >= tamañoMinimo) {
+                    return;
+                }
+                totalConexiones++;
+            } finally {
+                lock.unlock();
+            }
+
+            ConexionFisica nueva;
+            try {
+                nueva = abrirConexion();
+            } catch (SQLException e) {
+                descartar(null);
+                throw e;
+            }
+            devolver(nueva);
+        }
+    }
+
+    private Connection envolver(ConexionFisica conexion) {
+        return (Connection) Proxy.newProxyInstance(
+            ConnectionPool.class.getClassLoader(),
+            new Class<?>[] { Connection.class },
+            new ConexionPrestada(conexion));
+    }
+
+    /**
+     * Conexión física abierta contra MySQL junto con su caché de sentencias y su último uso
+     */
+    private static class ConexionFisica {
+        private final Connection fisica;
+        private final CacheSentencias sentencias;
+        private volatile long ultimoUso;
+
+        ConexionFisica(Connection fisica, CacheSentencias sentencias) {
+            this.fisica = fisica;
+            this.sentencias = sentencias;
+            this.ultimoUso = System.currentTimeMillis();
+        }
+
+        void cerrarSilenciosamente() {
+            try {
+                fisica.close();
+            } catch (SQLException e) {
+                // La conexión se descarta de todas formas
+            }
+        }
+    }
+
+    /**
+     * Envoltorio entregado a los repositorios: close() devuelve la conexión al pool
+     * y cualquier uso posterior falla como si la conexión estuviera cerrada.
+     */
+    private class ConexionPrestada implements InvocationHandler {
+        private ConexionFisica conexion;
+
+        ConexionPrestada(ConexionFisica conexion) {
+            this.conexion = conexion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (conexion != null) {
+                        ConexionFisica devuelta = conexion;
+                        conexion = null;
+                        devolver(devuelta);
+                    }
+                    return null;
+                case "isClosed":
+                    return conexion == null || conexion.fisica.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexionPrestada[" + (conexion != null ? conexion.fisica : "devuelta") + "]";
+                default:
+                    break;
+            }
+
+            if (conexion == null) {
+                throw new SQLException("La conexión ya fue devuelta al pool.");
+            }
+            if (method.getName().equals("prepareStatement")) {
+                Class<?>[] tipos = method.getParameterTypes();
+                if (tipos.length == 1) {
+                    return conexion.sentencias.preparar((Connection) proxy, (String) args[0], null);
+                }
+                if (tipos.length == 2 && tipos[1] == int.class) {
+                    return conexion.sentencias.preparar((Connection) proxy, (String) args[0], (Integer) args[1]);
+                }
+            }
+            try {
+                return method.invoke(conexion.fisica, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,31 +1,52 @@
 package com.cozybooks.util;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Clase utilitaria para manejar la conexión a la base de datos MySQL
  * Configurada para usar el usuario root
+ *
+ * Las conexiones provienen de un pool (ConnectionPool): cerrar la conexión
+ * obtenida con getConnection() la devuelve al pool en lugar de cerrarla.
+ * Las transacciones quedan ligadas al hilo que las inicia (ver beginTransaction()).
  */
 public class DBConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/cozy_books?useSSL=false&serverTimezone=UTC";
+    private static final String URL = "jdbc:mysql://localhost:3306/cozy_books?useSSL=false&serverTimezone=UTC" +
+        "&rewriteBatchedStatements=true" +
+        // Las sentencias preparadas se reutilizan con la caché del pool (CacheSentencias, con
+        // sus contadores); la del driver (cachePrepStmts) queda desactivada para no duplicarla
+        "&useServerPrepStmts=true";
     private static final String USER = "root";
     private static final String PASSWORD = "1234";
-    
-    private static Connection connection = null;
+
+    // Configuración del pool de conexiones
+    private static final int POOL_TAMAÑO_MINIMO = 2;
+    private static final int POOL_TAMAÑO_MAXIMO = 10;
+    private static final long POOL_TIEMPO_OCIOSO_MS = 5 * 60 * 1000;
+    private static final long POOL_TIEMPO_ESPERA_MS = 10 * 1000;
+    private static final int POOL_CACHE_SENTENCIAS = 64;
+
+    private static volatile ConnectionPool pool = null;
+
+    // Transacción activa del hilo actual (null si se trabaja en modo autocommit)
+    private static final ThreadLocal<Transaccion> TRANSACCION_ACTUAL = new ThreadLocal<>();
 
     /**
-     * Obtiene una conexión a la base de datos
-     * @return Connection objeto de conexión
+     * Inicializa el pool de conexiones si aún no existe
      * @throws SQLException si hay error al conectar
      */
-    public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
+    public static synchronized void inicializar() throws SQLException {
+        if (pool == null || pool.isClosed()) {
             try {
                 // Cargar el driver de MySQL
                 Class.forName("com.mysql.cj.jdbc.Driver");
-                connection = DriverManager.getConnection(URL, USER, PASSWORD);
+                pool = new ConnectionPool(URL, USER, PASSWORD, POOL_TAMAÑO_MINIMO, POOL_TAMAÑO_MAXIMO,
+                    POOL_TIEMPO_OCIOSO_MS, POOL_TIEMPO_ESPERA_MS, POOL_CACHE_SENTENCIAS);
                 System.out.println("Conexión a la base de datos establecida correctamente.");
             } catch (ClassNotFoundException e) {
                 throw new SQLException("Driver de MySQL no encontrado: " + e.getMessage());
@@ -33,20 +54,55 @@ public class DBConnection {
                 throw new SQLException("Error al conectar con la base de datos: " + e.getMessage());
             }
         }
-        return connection;
     }
 
     /**
-     * Cierra la conexión a la base de datos
+     * Obtiene una conexión del pool. Al cerrarla se devuelve al pool.
+     * Si el hilo tiene una transacción activa, devuelve la conexión de esa transacción.
+     * @return Connection objeto de conexión
+     * @throws SQLException si hay error al conectar
      */
-    public static void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                System.out.println("Conexión a la base de datos cerrada.");
-            } catch (SQLException e) {
-                System.err.println("Error al cerrar la conexión: " + e.getMessage());
-            }
+    public static Connection getConnection() throws SQLException {
+        Transaccion transaccion = TRANSACCION_ACTUAL.get();
+        if (transaccion != null) {
+            return transaccion.vista;
+        }
+        return obtenerPool().getConnection();
+    }
+
+    /**
+     * Obtiene una conexión propia del pool aunque el hilo tenga una transacción activa.
+     * Se usa para lecturas largas (streaming) que no pueden compartir la conexión
+     * de la transacción. Al cerrarla se devuelve al pool.
+     * @return Connection objeto de conexión
+     * @throws SQLException si hay error al conectar
+     */
+    public static Connection getConexionExclusiva() throws SQLException {
+        return obtenerPool().getConnection();
+    }
+
+    /**
+     * Conexión que debe ver quien recibe una sentencia preparada sobre la conexión indicada:
+     * la vista de la transacción del hilo si la conexión es la de esa transacción, o la
+     * misma conexión en caso contrario
+     * @param conexion conexión del pool sobre la que se preparó la sentencia
+     * @return conexión a informar en Statement.getConnection()
+     */
+    static Connection conexionVisible(Connection conexion) {
+        Transaccion transaccion = TRANSACCION_ACTUAL.get();
+        if (transaccion != null && transaccion.conexion == conexion) {
+            return transaccion.vista;
+        }
+        return conexion;
+    }
+
+    /**
+     * Cierra el pool y todas sus conexiones
+     */
+    public static synchronized void closeConnection() {
+        if (pool != null) {
+            pool.close();
+            System.out.println("Conexión a la base de datos cerrada.");
         }
     }
 
@@ -55,45 +111,210 @@ public class DBConnection {
      * @return true si la conexión está activa, false en caso contrario
      */
     public static boolean isConnectionActive() {
-        try {
-            return connection != null && !connection.isClosed();
+        try (Connection conn = getConnection()) {
+            return conn.isValid(2);
         } catch (SQLException e) {
             return false;
         }
     }
 
     /**
-     * Inicia una transacción
-     * @throws SQLException si hay error al iniciar la transacción
+     * Genera un reporte del estado del pool de conexiones y de la caché de sentencias
+     * @return reporte en texto, una métrica por línea
+     */
+    public static String reporteEstadisticas() {
+        ConnectionPool actual = pool;
+        if (actual == null) {
+            return "Pool de conexiones no inicializado.";
+        }
+        long aciertos = actual.getAciertosCacheSentencias();
+        long fallos = actual.getFallosCacheSentencias();
+        long total = aciertos + fallos;
+        return "Conexiones abiertas: " + actual.getTotalConexiones() + " (libres: " + actual.getConexionesLibres() + ")\n" +
+               "Sentencias preparadas - aciertos: " + aciertos + ", fallos: " + fallos +
+               ", expulsiones: " + actual.getExpulsionesCacheSentencias() +
+               ", tasa de aciertos: " + (total == 0 ? "N/A" : String.format("%.1f%%", aciertos * 100.0 / total));
+    }
+
+    /**
+     * Inicia una transacción ligada al hilo actual.
+     * Mientras esté activa, getConnection() devuelve siempre la misma conexión
+     * (cerrarla no tiene efecto), de modo que todos los repositorios llamados
+     * desde este hilo participan de la misma transacción.
+     * @throws SQLException si hay error al iniciar la transacción o ya hay una activa
      */
     public static void beginTransaction() throws SQLException {
-        Connection conn = getConnection();
-        if (conn.getAutoCommit()) {
+        if (TRANSACCION_ACTUAL.get() != null) {
+            throw new SQLException("Ya existe una transacción activa en este hilo.");
+        }
+        Connection conn = obtenerPool().getConnection();
+        try {
             conn.setAutoCommit(false);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
         }
+        TRANSACCION_ACTUAL.set(new Transaccion(conn));
     }
 
     /**
-     * Confirma una transacción
+     * Confirma la transacción del hilo actual y devuelve su conexión al pool
      * @throws SQLException si hay error al confirmar la transacción
      */
     public static void commitTransaction() throws SQLException {
-        Connection conn = getConnection();
-        if (!conn.getAutoCommit()) {
-            conn.commit();
-            conn.setAutoCommit(true);
+        Transaccion transaccion = TRANSACCION_ACTUAL.get();
+        if (transaccion == null) {
+            return;
+        }
+        try {
+            transaccion.conexion.commit();
+        } catch (SQLException e) {
+            // Al devolver la conexión el pool revierte lo que no llegó a confirmarse
+            try {
+                finalizarTransaccion(transaccion);
+            } finally {
+                for (Runnable accion : transaccion.alRevertir) {
+                    accion.run();
+                }
+            }
+            throw e;
+        }
+        finalizarTransaccion(transaccion);
+        for (Runnable accion : transaccion.alConfirmar) {
+            accion.run();
         }
     }
 
     /**
-     * Revierte una transacción
+     * Revierte la transacción del hilo actual y devuelve su conexión al pool
      * @throws SQLException si hay error al revertir la transacción
      */
     public static void rollbackTransaction() throws SQLException {
-        Connection conn = getConnection();
-        if (!conn.getAutoCommit()) {
-            conn.rollback();
-            conn.setAutoCommit(true);
+        Transaccion transaccion = TRANSACCION_ACTUAL.get();
+        if (transaccion == null) {
+            return;
+        }
+        try {
+            transaccion.conexion.rollback();
+        } finally {
+            try {
+                finalizarTransaccion(transaccion);
+            } finally {
+                for (Runnable accion : transaccion.alRevertir) {
+                    accion.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifica si el hilo actual tiene una transacción activa
+     * @return true si hay una transacción en curso en este hilo
+     */
+    public static boolean enTransaccion() {
+        return TRANSACCION_ACTUAL.get() != null;
+    }
+
+    /**
+     * Registra una acción a ejecutar cuando termine la transacción del hilo actual
+     * (tras el commit o el rollback). Si no hay transacción activa se ejecuta de inmediato.
+     * Se usa, por ejemplo, para invalidar cachés cuando los cambios ya son visibles.
+     * @param accion la acción a ejecutar
+     */
+    public static void alFinalizarTransaccion(Runnable accion) {
+        Transaccion transaccion = TRANSACCION_ACTUAL.get();
+        if (transaccion == null) {
+            accion.run();
+        } else {
+            transaccion.alFinalizar.add(accion);
+        }
+    }
+
+    /**
+     * Registra una acción a ejecutar solo si la transacción del hilo actual se confirma
+     * (se descarta si se revierte). Si no hay transacción activa se ejecuta de inmediato.
+     * @param accion la acción a ejecutar
+     */
+    public static void alConfirmarTransaccion(Runnable accion) {
+        Transaccion transaccion = TRANSACCION_ACTUAL.get();
+        if (transaccion == null) {
+            accion.run();
+        } else {
+            transaccion.alConfirmar.add(accion);
+        }
+    }
+
+    /**
+     * Registra una acción a ejecutar solo si la transacción del hilo actual se revierte
+     * (o falla su commit). Si no hay transacción activa no se ejecuta.
+     * Se usa para deshacer cambios hechos fuera de la base de datos durante la transacción.
+     * @param accion la acción a ejecutar
+     */
+    public static void alRevertirTransaccion(Runnable accion) {
+        Transaccion transaccion = TRANSACCION_ACTUAL.get();
+        if (transaccion != null) {
+            transaccion.alRevertir.add(accion);
+        }
+    }
+
+    private static void finalizarTransaccion(Transaccion transaccion) throws SQLException {
+        TRANSACCION_ACTUAL.remove();
+        try {
+            // Al cerrarla, el pool restablece el autocommit (y revierte si el commit falló)
+            transaccion.conexion.close();
+        } finally {
+            for (Runnable accion : transaccion.alFinalizar) {
+                accion.run();
+            }
+        }
+    }
+
+    private static ConnectionPool obtenerPool() throws SQLException {
+        ConnectionPool actual = pool;
+        if (actual == null || actual.isClosed()) {
+            inicializar();
+            actual = pool;
+        }
+        return actual;
+    }
+
+    /**
+     * Conexión prestada para una transacción junto con la vista que se entrega
+     * a los repositorios, cuyo close() no devuelve la conexión al pool.
+     */
+    private static class Transaccion {
+        private final Connection conexion;
+        private final Connection vista;
+        private final List<Runnable> alFinalizar = new ArrayList<>();
+        private final List<Runnable> alConfirmar = new ArrayList<>();
+        private final List<Runnable> alRevertir = new ArrayList<>();
+
+        Transaccion(Connection conexion) {
+            this.conexion = conexion;
+            this.vista = (Connection) Proxy.newProxyInstance(
+                DBConnection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "commit":
+                        case "rollback":
+                        case "setAutoCommit":
+                            throw new SQLException("La transacción se controla con DBConnection (" +
+                                method.getName() + " no permitido).");
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            try {
+                                return method.invoke(conexion, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
         }
     }
 }
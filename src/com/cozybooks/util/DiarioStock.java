@@ -0,0 +1,320 @@
+package com.cozybooks.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Diario local (write-ahead log) de variaciones de stock.
+ *
+ * Cada variación se agrega como un registro de tamaño fijo con un número de
+ * secuencia creciente y un CRC, en segmentos "diario-NNNNNNNNNN.log". Un
+ * registro se considera durable recién después de sincronizar(secuencia):
+ * los hilos que sincronizan a la vez comparten un mismo force() del archivo
+ * (group commit), así miles de variaciones por segundo no cuestan un fsync cada una.
+ *
+ * Un registro puede pertenecer a una transacción de la base de datos (ver
+ * reservarSecuencia()): quien recupera el diario decide si aplicarlo según esa
+ * transacción se haya confirmado o no.
+ *
+ * rotar() cierra el segmento actual para que, una vez volcado su contenido a la
+ * base de datos, pueda eliminarse con eliminarSegmentosCerrados().
+ */
+public class DiarioStock implements AutoCloseable {
+    // secuencia (8) + transacción (8) + ID de libro (4) + variación (4) + CRC de los 24 bytes anteriores (4)
+    private static final int TAMAÑO_REGISTRO = 28;
+    /** Transacción de los registros que no pertenecen a ninguna */
+    public static final long SIN_TRANSACCION = 0L;
+    private static final String PREFIJO_SEGMENTO = "diario-";
+    private static final String EXTENSION_SEGMENTO = ".log";
+
+    private final Path directorio;
+    private final ByteBuffer buffer = ByteBuffer.allocate(TAMAÑO_REGISTRO);
+    private final CRC32 crc = new CRC32();
+    private final Object bloqueoSincronizacion = new Object();
+
+    private FileChannel segmento;
+    private long numeroSegmento;
+    private long ultimaSecuencia;
+    private long ultimaSecuenciaSegmentoAnterior;
+    private volatile long sincronizadaHasta;
+    // Segmentos cerrados por rotar() -> última secuencia que contienen
+    private final TreeMap<Long, Long> ultimaSecuenciaPorSegmento = new TreeMap<>();
+
+    private final AtomicLong sincronizaciones = new AtomicLong();
+
+    /**
+     * Registro leído de un segmento del diario
+     */
+    public static class Registro {
+        private final long secuencia;
+        private final long transaccion;
+        private final int idLibro;
+        private final int variacion;
+
+        Registro(long secuencia, long transaccion, int idLibro, int variacion) {
+            this.secuencia = secuencia;
+            this.transaccion = transaccion;
+            this.idLibro = idLibro;
+            this.variacion = variacion;
+        }
+
+        public long getSecuencia() {
+            return secuencia;
+        }
+
+        /**
+         * @return transacción a la que pertenece el registro, o SIN_TRANSACCION
+         */
+        public long getTransaccion() {
+            return transaccion;
+        }
+
+        public int getIdLibro() {
+            return idLibro;
+        }
+
+        public int getVariacion() {
+            return variacion;
+        }
+    }
+
+    /**
+     * Abre un diario nuevo en el directorio. Los segmentos existentes deben haberse
+     * recuperado (leer) y eliminado antes, ya que el nuevo continúa la numeración.
+     * @param directorio directorio de los segmentos (se crea si no existe)
+     * @param ultimaSecuencia última secuencia ya utilizada; el primer registro usará la siguiente
+     * @throws IOException si no se puede crear el segmento
+     */
+    public DiarioStock(Path directorio, long ultimaSecuencia) throws IOException {
+        this.directorio = directorio;
+        this.ultimaSecuencia = ultimaSecuencia;
+        this.ultimaSecuenciaSegmentoAnterior = ultimaSecuencia;
+        this.sincronizadaHasta = ultimaSecuencia;
+        Files.createDirectories(directorio);
+        List<Path> existentes = segmentos(directorio);
+        this.numeroSegmento = existentes.isEmpty() ? 1 : numeroDe(existentes.get(existentes.size() - 1)) + 1;
+        this.segmento = abrirSegmento(numeroSegmento);
+    }
+
+    /**
+     * Agrega una variación al diario. No es durable hasta llamar a sincronizar().
+     * @param idLibro ID del libro
+     * @param variacion cantidad sumada al stock (negativa si se descontó)
+     * @return secuencia asignada al registro
+     * @throws IOException si falla la escritura
+     */
+    public long registrar(int idLibro, int variacion) throws IOException {
+        return registrar(idLibro, variacion, SIN_TRANSACCION);
+    }
+
+    /**
+     * Agrega una variación que pertenece a una transacción. No es durable hasta llamar a sincronizar().
+     * @param idLibro ID del libro
+     * @param variacion cantidad sumada al stock (negativa si se descontó)
+     * @param transaccion identificador obtenido con reservarSecuencia(), o SIN_TRANSACCION
+     * @return secuencia asignada al registro
+     * @throws IOException si falla la escritura
+     */
+    public synchronized long registrar(int idLibro, int variacion, long transaccion) throws IOException {
+        long secuencia = ultimaSecuencia + 1;
+        buffer.clear();
+        buffer.putLong(secuencia).putLong(transaccion).putInt(idLibro).putInt(variacion);
+        crc.reset();
+        crc.update(buffer.array(), 0, TAMAÑO_REGISTRO - 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmento.write(buffer);
+        }
+        ultimaSecuencia = secuencia;
+        return secuencia;
+    }
+
+    /**
+     * Reserva una secuencia sin escribir ningún registro, para identificar una transacción:
+     * es única y menor que la de todos los registros que se agreguen después
+     * @return la secuencia reservada
+     */
+    public synchronized long reservarSecuencia() {
+        return ++ultimaSecuencia;
+    }
+
+    /**
+     * Espera a que el registro con la secuencia indicada (y todos los anteriores)
+     * estén en disco. Un único force() cubre a todos los hilos que esperan a la vez.
+     * @param secuencia secuencia devuelta por registrar()
+     * @throws IOException si falla la sincronización
+     */
+    public void sincronizar(long secuencia) throws IOException {
+        if (sincronizadaHasta >= secuencia) {
+            return;
+        }
+        synchronized (bloqueoSincronizacion) {
+            if (sincronizadaHasta >= secuencia) {
+                return;
+            }
+            long objetivo;
+            FileChannel canal;
+            synchronized (this) {
+                objetivo = ultimaSecuencia;
+                canal = segmento;
+            }
+            canal.force(false);
+            sincronizaciones.incrementAndGet();
+            sincronizadaHasta = objetivo;
+        }
+    }
+
+    /**
+     * Cierra el segmento actual (ya sincronizado) y abre uno nuevo.
+     * Si el segmento actual está vacío no hace nada.
+     * @return última secuencia contenida en los segmentos cerrados
+     * @throws IOException si falla la sincronización o la creación del segmento
+     */
+    public long rotar() throws IOException {
+        // Mismo orden de bloqueo que sincronizar(): nadie fuerza el segmento mientras se cierra
+        synchronized (bloqueoSincronizacion) {
+            synchronized (this) {
+                if (ultimaSecuencia == ultimaSecuenciaSegmentoAnterior) {
+                    return ultimaSecuencia;
+                }
+                segmento.force(false);
+                sincronizadaHasta = ultimaSecuencia;
+                segmento.close();
+                ultimaSecuenciaPorSegmento.put(numeroSegmento, ultimaSecuencia);
+                numeroSegmento++;
+                segmento = abrirSegmento(numeroSegmento);
+                ultimaSecuenciaSegmentoAnterior = ultimaSecuencia;
+                return ultimaSecuencia;
+            }
+        }
+    }
+
+    /**
+     * Elimina los segmentos cerrados por rotar() cuyo contenido ya está en la base de datos.
+     * Se conservan los que tengan registros desde la secuencia indicada en adelante
+     * (por ejemplo de transacciones que todavía no terminaron).
+     * @param conservarDesde secuencia del primer registro que todavía puede hacer falta
+     * @throws IOException si no se puede eliminar algún segmento
+     */
+    public synchronized void eliminarSegmentosCerrados(long conservarDesde) throws IOException {
+        Iterator<Map.Entry<Long, Long>> it = ultimaSecuenciaPorSegmento.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Long> cerrado = it.next();
+            if (cerrado.getValue() >= conservarDesde) {
+                break;
+            }
+            Files.deleteIfExists(rutaSegmento(cerrado.getKey()));
+            it.remove();
+        }
+    }
+
+    /**
+     * @return cantidad de force() realizados (cada uno confirma un grupo de registros)
+     */
+    public long getSincronizaciones() {
+        return sincronizaciones.get();
+    }
+
+    public synchronized long getUltimaSecuencia() {
+        return ultimaSecuencia;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (bloqueoSincronizacion) {
+            synchronized (this) {
+                segmento.force(false);
+                sincronizadaHasta = ultimaSecuencia;
+                segmento.close();
+            }
+        }
+    }
+
+    /**
+     * Lee todos los registros de los segmentos de un directorio, en orden.
+     * La lectura de cada segmento se detiene en el primer registro incompleto o
+     * con CRC inválido (escritura interrumpida por una caída).
+     * @param directorio directorio de los segmentos
+     * @return registros válidos en orden de secuencia
+     * @throws IOException si no se pueden leer los segmentos
+     */
+    public static List<Registro> leer(Path directorio) throws IOException {
+        List<Registro> registros = new ArrayList<>();
+        if (!Files.isDirectory(directorio)) {
+            return registros;
+        }
+        CRC32 crc = new CRC32();
+        for (Path ruta : segmentos(directorio)) {
+            ByteBuffer contenido = ByteBuffer.wrap(Files.readAllBytes(ruta));
+            while (contenido.remaining() >= TAMAÑO_REGISTRO) {
+                int inicio = contenido.position();
+                long secuencia = contenido.getLong();
+                long transaccion = contenido.getLong();
+                int idLibro = contenido.getInt();
+                int variacion = contenido.getInt();
+                int esperado = contenido.getInt();
+                crc.reset();
+                crc.update(contenido.array(), inicio, TAMAÑO_REGISTRO - 4);
+                if ((int) crc.getValue() != esperado) {
+                    break;
+                }
+                registros.add(new Registro(secuencia, transaccion, idLibro, variacion));
+            }
+        }
+        return registros;
+    }
+
+    /**
+     * Elimina todos los segmentos de un directorio (después de recuperarlos)
+     * @param directorio directorio de los segmentos
+     * @throws IOException si no se puede eliminar algún segmento
+     */
+    public static void eliminarSegmentos(Path directorio) throws IOException {
+        if (!Files.isDirectory(directorio)) {
+            return;
+        }
+        for (Path ruta : segmentos(directorio)) {
+            Files.deleteIfExists(ruta);
+        }
+    }
+
+    private FileChannel abrirSegmento(long numero) throws IOException {
+        return FileChannel.open(rutaSegmento(numero), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path rutaSegmento(long numero) {
+        return directorio.resolve(String.format("%s%010d%s", PREFIJO_SEGMENTO, numero, EXTENSION_SEGMENTO));
+    }
+
+    private static List<Path> segmentos(Path directorio) throws IOException {
+        List<Path> rutas = new ArrayList<>();
+        try (DirectoryStream<Path> contenido = Files.newDirectoryStream(directorio,
+                PREFIJO_SEGMENTO + "*" + EXTENSION_SEGMENTO)) {
+            for (Path ruta : contenido) {
+                rutas.add(ruta);
+            }
+        }
+        // El número está rellenado con ceros, así el orden alfabético es el de creación
+        Collections.sort(rutas);
+        return rutas;
+    }
+
+    private static long numeroDe(Path segmento) {
+        String nombre = segmento.getFileName().toString();
+        return Long.parseLong(nombre.substring(PREFIJO_SEGMENTO.length(), nombre.length() - EXTENSION_SEGMENTO.length()));
+    }
+}
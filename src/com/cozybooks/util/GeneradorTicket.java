@@ -4,6 +4,7 @@ import com.cozybooks.model.Venta;
 import com.cozybooks.model.DetalleVenta;
 import com.cozybooks.model.Cliente;
 import com.cozybooks.model.Libro;
+import com.cozybooks.model.TicketVenta;
 
 import java.io.IOException;
 import java.util.List;
@@ -28,6 +29,31 @@ public interface GeneradorTicket {
                       List<DetalleVenta> detalles, 
                       List<Libro> libros) throws IOException;
     
+    /**
+     * Genera un ticket de venta a partir del modelo de lectura del ticket.
+     * 
+     * @param ticket venta, cliente, detalles y libros de la venta
+     * @throws IOException si hay error al escribir el archivo
+     */
+    default void generarTicket(TicketVenta ticket) throws IOException {
+        generarTicket(ticket.getVenta(), ticket.getCliente(), ticket.getDetalles(), ticket.getLibros());
+    }
+    
+    /**
+     * Genera los tickets de un lote, por ejemplo al regenerar los tickets de un rango de fechas.
+     * Las implementaciones pueden escribir el lote de una vez. Se llama desde hilos en segundo
+     * plano, así que no debe informar cada ticket por consola: las implementaciones cuyo
+     * generarTicket() imprime deben sobrescribirlo.
+     * 
+     * @param tickets tickets a generar
+     * @throws IOException si hay error al escribir algún ticket
+     */
+    default void generarLote(List<TicketVenta> tickets) throws IOException {
+        for (TicketVenta ticket : tickets) {
+            generarTicket(ticket);
+        }
+    }
+    
     /**
      * Verifica si el directorio de tickets existe.
      * 
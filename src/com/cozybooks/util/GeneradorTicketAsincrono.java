@@ -0,0 +1,286 @@
+package com.cozybooks.util;
+
+import com.cozybooks.model.Cliente;
+import com.cozybooks.model.DetalleVenta;
+import com.cozybooks.model.Libro;
+import com.cozybooks.model.TicketVenta;
+import com.cozybooks.model.Venta;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de tickets que escribe en segundo plano.
+ *
+ * Envuelve otro GeneradorTicket (por defecto ArchivoService) y le delega cada ticket
+ * desde un pool de hilos, así la caja no espera la escritura en disco para atender
+ * al siguiente cliente. La cola es acotada: si se llena, el ticket se escribe en el
+ * hilo que lo envía, lo que frena a quien produce más rápido de lo que se escribe.
+ * Un ticket que falla se reintenta con espera creciente antes de darse por fallido.
+ *
+ * Los hilos de escritura no imprimen nada (la consola es del menú): los tickets
+ * fallidos y el último error quedan en reporte(). Solo el ticket que escribe el
+ * propio emisor, con la cola llena, se informa por consola.
+ */
+public class GeneradorTicketAsincrono implements GeneradorTicket {
+    private static final int HILOS_POR_DEFECTO = 2;
+    private static final int CAPACIDAD_COLA_POR_DEFECTO = 256;
+    private static final int MAXIMO_INTENTOS = 3;
+    private static final long ESPERA_REINTENTO_MS = 200;
+    private static final long ESPERA_DETENCION_MS = 30 * 1000;
+
+    private static GeneradorTicketAsincrono instancia = null;
+
+    private final GeneradorTicket destino;
+    private final ThreadPoolExecutor trabajadores;
+    private final ScheduledExecutorService reintentos;
+    // Reintentos programados que todavía no se despacharon; detener() resuelve los que queden
+    private final Set<Reintento> reintentosProgramados = ConcurrentHashMap.newKeySet();
+
+    // Tickets enviados cuyo resultado todavía no se completó (en cola, en proceso o esperando reintento)
+    private final AtomicInteger pendientes = new AtomicInteger();
+    private final AtomicLong generados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private final AtomicLong reintentados = new AtomicLong();
+    private final AtomicLong escritosPorElEmisor = new AtomicLong();
+    private final AtomicLong nanosEscritura = new AtomicLong();
+    private volatile int colaMaxima = 0;
+    private volatile String ultimoError = null;
+
+    /**
+     * @param destino generador que escribe efectivamente los tickets
+     * @param hilos cantidad de hilos de escritura
+     * @param capacidadCola tickets que pueden esperar en cola antes de frenar al emisor
+     */
+    public GeneradorTicketAsincrono(GeneradorTicket destino, int hilos, int capacidadCola) {
+        this.destino = destino;
+        AtomicInteger numeroHilo = new AtomicInteger();
+        this.trabajadores = new ThreadPoolExecutor(hilos, hilos, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(capacidadCola),
+            r -> {
+                Thread hilo = new Thread(r, "cozybooks-tickets-" + numeroHilo.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            },
+            (tarea, ejecutor) -> {
+                if (ejecutor.isShutdown()) {
+                    throw new RejectedExecutionException("El generador de tickets está detenido.");
+                }
+                // Cola llena: lo escribe quien lo envía
+                escritosPorElEmisor.incrementAndGet();
+                ((Escritura) tarea).ejecutarEnEmisor();
+            });
+        this.reintentos = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "cozybooks-tickets-reintentos");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    /**
+     * Obtiene el generador compartido, que escribe con ArchivoTickets si está activo
+     * o con ArchivoService (un .txt por venta) en caso contrario
+     * @return el generador de tickets en segundo plano
+     */
+    public static synchronized GeneradorTicketAsincrono getInstance() {
+        if (instancia == null) {
+            GeneradorTicket destino = ArchivoTickets.estaActivo() ? ArchivoTickets.getInstance() : ArchivoService.getInstance();
+            instancia = new GeneradorTicketAsincrono(destino, HILOS_POR_DEFECTO, CAPACIDAD_COLA_POR_DEFECTO);
+        }
+        return instancia;
+    }
+
+    /**
+     * Detiene el generador compartido después de escribir los tickets pendientes
+     */
+    public static synchronized void detenerInstancia() {
+        if (instancia != null) {
+            instancia.detener();
+            instancia = null;
+        }
+    }
+
+    /**
+     * Encola un ticket para escribirlo en segundo plano
+     * @param ticket venta, cliente, detalles y libros de la venta
+     * @return resultado que se completa cuando el ticket se escribió o falló definitivamente
+     */
+    public CompletableFuture<Void> enviar(TicketVenta ticket) {
+        CompletableFuture<Void> resultado = new CompletableFuture<>();
+        pendientes.incrementAndGet();
+        resultado.whenComplete((r, error) -> pendientes.decrementAndGet());
+        try {
+            trabajadores.execute(new Escritura(ticket, resultado, 1));
+        } catch (RejectedExecutionException e) {
+            fallar(resultado, e);
+        }
+        colaMaxima = Math.max(colaMaxima, trabajadores.getQueue().size());
+        return resultado;
+    }
+
+    @Override
+    public void generarTicket(Venta venta, Cliente cliente, List<DetalleVenta> detalles, List<Libro> libros) {
+        enviar(new TicketVenta(venta, cliente, detalles, libros));
+    }
+
+    @Override
+    public void generarTicket(TicketVenta ticket) {
+        enviar(ticket);
+    }
+
+    @Override
+    public boolean directorioTicketsExiste() {
+        return destino.directorioTicketsExiste();
+    }
+
+    @Override
+    public void crearDirectorioTickets() throws IOException {
+        destino.crearDirectorioTickets();
+    }
+
+    /**
+     * Espera a que se escriban los tickets pendientes (con un límite de tiempo) y detiene los hilos.
+     * Los reintentos que sigan programados se intentan una última vez en el hilo que detiene;
+     * si fallan cuentan como fallidos en reporte().
+     */
+    public void detener() {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ESPERA_DETENCION_MS);
+        try {
+            while (pendientes.get() > 0 && System.nanoTime() < limite) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reintentos.shutdownNow();
+        for (Reintento reintento : new ArrayList<>(reintentosProgramados)) {
+            if (reintentosProgramados.remove(reintento)) {
+                reintento.ultimoIntento();
+            }
+        }
+        trabajadores.shutdown();
+    }
+
+    /**
+     * @return resumen de la cola de tickets y de las escrituras realizadas
+     */
+    public String reporte() {
+        long cantidad = generados.get();
+        return "Tickets en cola: " + trabajadores.getQueue().size() + " (máximo: " + colaMaxima + ")" +
+               ", escribiéndose: " + trabajadores.getActiveCount() + ", pendientes: " + pendientes.get() + "\n" +
+               "Tickets generados: " + cantidad + ", fallidos: " + fallidos.get() +
+               ", reintentos: " + reintentados.get() + ", escritos por la caja (cola llena): " + escritosPorElEmisor.get() +
+               ", tiempo medio de escritura: " + (cantidad == 0 ? "N/A" :
+                   String.format("%.2f ms", nanosEscritura.get() / 1_000_000.0 / cantidad)) +
+               (ultimoError == null ? "" : "\nÚltimo ticket fallido: " + ultimoError +
+                   " (puede regenerarse desde el menú de ventas)");
+    }
+
+    private void escribir(TicketVenta ticket, CompletableFuture<Void> resultado, int intento, boolean enEmisor) {
+        long inicio = System.nanoTime();
+        try {
+            // generarLote() escribe sin informar por consola
+            destino.generarLote(Collections.singletonList(ticket));
+            nanosEscritura.addAndGet(System.nanoTime() - inicio);
+            generados.incrementAndGet();
+            resultado.complete(null);
+            if (enEmisor) {
+                System.out.println("Ticket generado exitosamente: venta " + ticket.getVenta().getIdVenta());
+            }
+        } catch (Exception e) {
+            if (intento >= MAXIMO_INTENTOS) {
+                ultimoError = "venta " + ticket.getVenta().getIdVenta() + ": " + e.getMessage();
+                fallar(resultado, e);
+                return;
+            }
+            reintentados.incrementAndGet();
+            long espera = ESPERA_REINTENTO_MS << (intento - 1);
+            Reintento reintento = new Reintento(ticket, resultado, intento + 1, e);
+            reintentosProgramados.add(reintento);
+            try {
+                reintentos.schedule(reintento, espera, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException rechazo) {
+                if (reintentosProgramados.remove(reintento)) {
+                    fallar(resultado, e);
+                }
+            }
+        }
+    }
+
+    private void fallar(CompletableFuture<Void> resultado, Exception error) {
+        fallidos.incrementAndGet();
+        resultado.completeExceptionally(error);
+    }
+
+    /**
+     * Reintento programado de un ticket: lo despacha a los hilos de escritura, salvo que
+     * detener() ya lo haya tomado
+     */
+    private final class Reintento implements Runnable {
+        private final TicketVenta ticket;
+        private final CompletableFuture<Void> resultado;
+        private final int intento;
+        private final Exception error;
+
+        Reintento(TicketVenta ticket, CompletableFuture<Void> resultado, int intento, Exception error) {
+            this.ticket = ticket;
+            this.resultado = resultado;
+            this.intento = intento;
+            this.error = error;
+        }
+
+        @Override
+        public void run() {
+            if (!reintentosProgramados.remove(this)) {
+                return;
+            }
+            try {
+                trabajadores.execute(new Escritura(ticket, resultado, intento));
+            } catch (RejectedExecutionException rechazo) {
+                fallar(resultado, error);
+            }
+        }
+
+        // Al detener: un intento más en el hilo actual; si falla, el ticket queda como fallido
+        void ultimoIntento() {
+            escribir(ticket, resultado, MAXIMO_INTENTOS, false);
+        }
+    }
+
+    /**
+     * Escritura de un ticket (un intento); el manejador de cola llena la ejecuta en el hilo del emisor
+     */
+    private final class Escritura implements Runnable {
+        private final TicketVenta ticket;
+        private final CompletableFuture<Void> resultado;
+        private final int intento;
+
+        Escritura(TicketVenta ticket, CompletableFuture<Void> resultado, int intento) {
+            this.ticket = ticket;
+            this.resultado = resultado;
+            this.intento = intento;
+        }
+
+        @Override
+        public void run() {
+            escribir(ticket, resultado, intento, false);
+        }
+
+        void ejecutarEnEmisor() {
+            escribir(ticket, resultado, intento, true);
+        }
+    }
+}
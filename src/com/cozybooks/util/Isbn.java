@@ -0,0 +1,107 @@
+package com.cozybooks.util;
+
+/**
+ * Utilidad para normalizar ISBN.
+ * Convierte un ISBN-10 o ISBN-13 escrito con o sin guiones/espacios en su forma
+ * canónica ISBN-13 empaquetada en un long (por ejemplo "978-0307474728" y
+ * "0307474720" dan ambos 9780307474728), de modo que dos formas de escribir
+ * el mismo libro producen la misma clave.
+ */
+public final class Isbn {
+    /** Valor devuelto cuando el texto no es un ISBN válido */
+    public static final long INVALIDO = -1L;
+
+    private Isbn() {}
+
+    /**
+     * Canoniza un ISBN verificando su dígito de control
+     * @param isbn el ISBN tal como fue ingresado (puede ser null)
+     * @return el ISBN-13 como número, o INVALIDO si no es un ISBN-10/13 válido
+     */
+    public static long canonizar(String isbn) {
+        if (isbn == null) {
+            return INVALIDO;
+        }
+        int[] digitos = new int[13];
+        int cantidad = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (cantidad == 13) {
+                return INVALIDO;
+            }
+            if (c >= '0' && c <= '9') {
+                digitos[cantidad++] = c - '0';
+            } else if ((c == 'X' || c == 'x') && cantidad == 9) {
+                // La X solo puede ser el dígito de control de un ISBN-10
+                digitos[cantidad++] = 10;
+            } else {
+                return INVALIDO;
+            }
+        }
+
+        if (cantidad == 10) {
+            return convertirIsbn10(digitos);
+        }
+        if (cantidad == 13 && controlIsbn13(digitos) == digitos[12]) {
+            return empaquetar(digitos);
+        }
+        return INVALIDO;
+    }
+
+    /**
+     * @param isbn el ISBN tal como fue ingresado
+     * @return true si es un ISBN-10 o ISBN-13 válido
+     */
+    public static boolean esValido(String isbn) {
+        return canonizar(isbn) != INVALIDO;
+    }
+
+    /**
+     * Formatea un ISBN canónico como texto de 13 dígitos sin guiones
+     * @param isbn ISBN devuelto por canonizar()
+     * @return los 13 dígitos
+     */
+    public static String formatear(long isbn) {
+        return String.format("%013d", isbn);
+    }
+
+    private static long convertirIsbn10(int[] digitos) {
+        int suma = 0;
+        for (int i = 0; i < 10; i++) {
+            suma += digitos[i] * (10 - i);
+        }
+        if (suma % 11 != 0) {
+            return INVALIDO;
+        }
+        // ISBN-13 = prefijo 978 + los primeros 9 dígitos + nuevo dígito de control
+        int[] isbn13 = new int[13];
+        isbn13[0] = 9;
+        isbn13[1] = 7;
+        isbn13[2] = 8;
+        System.arraycopy(digitos, 0, isbn13, 3, 9);
+        isbn13[12] = controlIsbn13(isbn13);
+        return empaquetar(isbn13);
+    }
+
+    private static int controlIsbn13(int[] digitos) {
+        int suma = 0;
+        for (int i = 0; i < 12; i++) {
+            if (digitos[i] > 9) {
+                return -1;
+            }
+            suma += digitos[i] * (i % 2 == 0 ? 1 : 3);
+        }
+        return (10 - suma % 10) % 10;
+    }
+
+    private static long empaquetar(int[] digitos) {
+        long valor = 0;
+        for (int digito : digitos) {
+            valor = valor * 10 + digito;
+        }
+        return valor;
+    }
+}
@@ -0,0 +1,161 @@
+package com.cozybooks.util;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de claves long a valores int sin objetos intermedios (ni Long ni Integer ni nodos),
+ * con direccionamiento abierto y sondeo lineal sobre dos arreglos paralelos.
+ * Las claves se comparan completas, así que dos claves distintas nunca se confunden
+ * aunque caigan en la misma posición. Seguro para múltiples hilos.
+ */
+public class MapaLongEntero {
+    /** Valor devuelto por obtener() cuando la clave no está */
+    public static final int SIN_VALOR = -1;
+
+    // Se agranda al superar este porcentaje de ocupación, para que los sondeos sean cortos
+    private static final double OCUPACION_MAXIMA = 0.5;
+    private static final long CLAVE_LIBRE = Long.MIN_VALUE;
+
+    private long[] claves;
+    private int[] valores;
+    private int tamaño = 0;
+
+    /**
+     * @param capacidadInicial cantidad de claves que se espera guardar
+     */
+    public MapaLongEntero(int capacidadInicial) {
+        int capacidad = Integer.highestOneBit(Math.max(16, (int) (capacidadInicial / OCUPACION_MAXIMA)) - 1) << 1;
+        inicializar(capacidad);
+    }
+
+    /**
+     * @param clave la clave (cualquier long salvo Long.MIN_VALUE)
+     * @return el valor asociado, o SIN_VALOR si la clave no está
+     */
+    public synchronized int obtener(long clave) {
+        int mascara = claves.length - 1;
+        for (int i = posicion(clave, mascara); ; i = (i + 1) & mascara) {
+            if (claves[i] == clave) {
+                return valores[i];
+            }
+            if (claves[i] == CLAVE_LIBRE) {
+                return SIN_VALOR;
+            }
+        }
+    }
+
+    /**
+     * Asocia un valor a una clave, reemplazando el anterior si existía
+     * @param clave la clave (cualquier long salvo Long.MIN_VALUE)
+     * @param valor el valor
+     */
+    public synchronized void guardar(long clave, int valor) {
+        if (clave == CLAVE_LIBRE) {
+            throw new IllegalArgumentException("Clave no permitida: " + clave);
+        }
+        if (tamaño + 1 > claves.length * OCUPACION_MAXIMA) {
+            redimensionar(claves.length * 2);
+        }
+        int mascara = claves.length - 1;
+        int i = posicion(clave, mascara);
+        while (claves[i] != CLAVE_LIBRE && claves[i] != clave) {
+            i = (i + 1) & mascara;
+        }
+        if (claves[i] == CLAVE_LIBRE) {
+            claves[i] = clave;
+            tamaño++;
+        }
+        valores[i] = valor;
+    }
+
+    /**
+     * Quita una clave solo si todavía está asociada al valor indicado
+     * (para descartar entradas obsoletas sin pisar una actualización concurrente)
+     * @param clave la clave
+     * @param valor el valor esperado
+     * @return true si se quitó
+     */
+    public synchronized boolean quitarSi(long clave, int valor) {
+        int mascara = claves.length - 1;
+        for (int i = posicion(clave, mascara); ; i = (i + 1) & mascara) {
+            if (claves[i] == CLAVE_LIBRE) {
+                return false;
+            }
+            if (claves[i] == clave) {
+                if (valores[i] != valor) {
+                    return false;
+                }
+                borrarPosicion(i);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Vacía el mapa conservando su capacidad
+     */
+    public synchronized void limpiar() {
+        Arrays.fill(claves, CLAVE_LIBRE);
+        tamaño = 0;
+    }
+
+    public synchronized int tamaño() {
+        return tamaño;
+    }
+
+    public synchronized int capacidad() {
+        return claves.length;
+    }
+
+    // Borrado con desplazamiento hacia atrás: reubica las claves siguientes del mismo
+    // grupo para que ninguna búsqueda se corte en el hueco (no hacen falta lápidas)
+    private void borrarPosicion(int hueco) {
+        int mascara = claves.length - 1;
+        int i = hueco;
+        while (true) {
+            i = (i + 1) & mascara;
+            if (claves[i] == CLAVE_LIBRE) {
+                break;
+            }
+            int ideal = posicion(claves[i], mascara);
+            // Se mueve si su posición ideal no está entre el hueco (exclusive) e i (inclusive)
+            boolean entre = hueco <= i ? (hueco < ideal && ideal <= i) : (hueco < ideal || ideal <= i);
+            if (!entre) {
+                claves[hueco] = claves[i];
+                valores[hueco] = valores[i];
+                hueco = i;
+            }
+        }
+        claves[hueco] = CLAVE_LIBRE;
+        tamaño--;
+    }
+
+    private void redimensionar(int capacidad) {
+        long[] clavesAnteriores = claves;
+        int[] valoresAnteriores = valores;
+        inicializar(capacidad);
+        int mascara = capacidad - 1;
+        for (int j = 0; j < clavesAnteriores.length; j++) {
+            if (clavesAnteriores[j] != CLAVE_LIBRE) {
+                int i = posicion(clavesAnteriores[j], mascara);
+                while (claves[i] != CLAVE_LIBRE) {
+                    i = (i + 1) & mascara;
+                }
+                claves[i] = clavesAnteriores[j];
+                valores[i] = valoresAnteriores[j];
+            }
+        }
+    }
+
+    private void inicializar(int capacidad) {
+        claves = new long[capacidad];
+        valores = new int[capacidad];
+        Arrays.fill(claves, CLAVE_LIBRE);
+    }
+
+    // Los ISBN consecutivos difieren en pocos bits: se mezclan antes de tomar la posición
+    private static int posicion(long clave, int mascara) {
+        long mezcla = clave * 0x9E3779B97F4A7C15L;
+        return (int) (mezcla >>> 32) & mascara;
+    }
+}
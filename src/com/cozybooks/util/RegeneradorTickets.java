@@ -0,0 +1,162 @@
+package com.cozybooks.util;
+
+import com.cozybooks.model.TicketVenta;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Regenera en paralelo los tickets de muchas ventas (por ejemplo, después de cambiar
+ * el formato del ticket).
+ *
+ * Un solo hilo recorre los tickets (típicamente el stream de una consulta) y los agrupa
+ * en lotes; cada lote se renderiza y se escribe en un hilo del pool con
+ * GeneradorTicket.generarLote(). Los lotes son independientes entre sí y pueden terminar
+ * en cualquier orden. Hay como mucho dos lotes por hilo en vuelo, así leer la base de
+ * datos más rápido de lo que se escribe no acumula tickets en memoria.
+ */
+public class RegeneradorTickets {
+    private static final int TAMAÑO_LOTE_POR_DEFECTO = 256;
+    private static final long INTERVALO_PROGRESO_NANOS = 1_000_000_000L;
+
+    private final GeneradorTicket destino;
+    private final int hilos;
+    private final int tamañoLote;
+
+    /**
+     * Avance o resultado final de una regeneración
+     */
+    public static class Resultado {
+        private final long regenerados;
+        private final long fallidos;
+        private final long nanos;
+        private final String primerError;
+
+        Resultado(long regenerados, long fallidos, long nanos, String primerError) {
+            this.regenerados = regenerados;
+            this.fallidos = fallidos;
+            this.nanos = nanos;
+            this.primerError = primerError;
+        }
+
+        public long getRegenerados() {
+            return regenerados;
+        }
+
+        public long getFallidos() {
+            return fallidos;
+        }
+
+        public double getSegundos() {
+            return nanos / 1_000_000_000.0;
+        }
+
+        public double getTicketsPorSegundo() {
+            return nanos == 0 ? 0 : regenerados / getSegundos();
+        }
+
+        /**
+         * @return mensaje del primer lote que falló, o null si no falló ninguno
+         */
+        public String getPrimerError() {
+            return primerError;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d tickets regenerados en %.1f s (%.0f tickets/s), %d fallidos",
+                regenerados, getSegundos(), getTicketsPorSegundo(), fallidos);
+        }
+    }
+
+    /**
+     * Crea un regenerador con un hilo por procesador y lotes de 256 tickets
+     * @param destino generador que escribe los tickets
+     */
+    public RegeneradorTickets(GeneradorTicket destino) {
+        this(destino, Runtime.getRuntime().availableProcessors(), TAMAÑO_LOTE_POR_DEFECTO);
+    }
+
+    /**
+     * @param destino generador que escribe los tickets
+     * @param hilos cantidad de hilos que renderizan y escriben
+     * @param tamañoLote tickets por lote
+     */
+    public RegeneradorTickets(GeneradorTicket destino, int hilos, int tamañoLote) {
+        this.destino = destino;
+        this.hilos = hilos;
+        this.tamañoLote = tamañoLote;
+    }
+
+    /**
+     * Regenera todos los tickets del stream. Un lote que falla se cuenta como fallido
+     * y la regeneración continúa con los demás.
+     * @param tickets tickets a regenerar (el llamador se encarga de cerrar el stream)
+     * @param progreso recibe el avance como mucho una vez por segundo (puede ser null)
+     * @return cantidad de tickets regenerados y fallidos, y tiempo total
+     */
+    public Resultado regenerar(Stream<TicketVenta> tickets, Consumer<Resultado> progreso) {
+        // Pool fijo: cada lote es una tarea independiente que bloquea en la escritura, sin subtareas
+        // que repartir, así que un ForkJoinPool no aporta nada (y los hilos virtuales requieren Java 21)
+        AtomicInteger numeroHilo = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r, "cozybooks-regeneracion-" + numeroHilo.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        int maximoEnVuelo = hilos * 2;
+        Semaphore enVuelo = new Semaphore(maximoEnVuelo);
+        AtomicLong regenerados = new AtomicLong();
+        AtomicLong fallidos = new AtomicLong();
+        AtomicReference<String> primerError = new AtomicReference<>();
+
+        long inicio = System.nanoTime();
+        long ultimoAviso = inicio;
+        try {
+            List<TicketVenta> lote = new ArrayList<>(tamañoLote);
+            Iterator<TicketVenta> it = tickets.iterator();
+            while (it.hasNext()) {
+                lote.add(it.next());
+                if (lote.size() < tamañoLote && it.hasNext()) {
+                    continue;
+                }
+                List<TicketVenta> enviado = lote;
+                lote = new ArrayList<>(tamañoLote);
+                enVuelo.acquire();
+                pool.execute(() -> {
+                    try {
+                        destino.generarLote(enviado);
+                        regenerados.addAndGet(enviado.size());
+                    } catch (Exception e) {
+                        fallidos.addAndGet(enviado.size());
+                        primerError.compareAndSet(null, e.getMessage());
+                    } finally {
+                        enVuelo.release();
+                    }
+                });
+
+                long ahora = System.nanoTime();
+                if (progreso != null && ahora - ultimoAviso >= INTERVALO_PROGRESO_NANOS) {
+                    ultimoAviso = ahora;
+                    progreso.accept(new Resultado(regenerados.get(), fallidos.get(), ahora - inicio, primerError.get()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Se esperan los lotes en vuelo aunque la lectura haya fallado
+            enVuelo.acquireUninterruptibly(maximoEnVuelo);
+            pool.shutdown();
+        }
+        return new Resultado(regenerados.get(), fallidos.get(), System.nanoTime() - inicio, primerError.get());
+    }
+}
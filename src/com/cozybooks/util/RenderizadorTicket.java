@@ -0,0 +1,164 @@
+package com.cozybooks.util;
+
+import com.cozybooks.model.Cliente;
+import com.cozybooks.model.DetalleVenta;
+import com.cozybooks.model.Libro;
+import com.cozybooks.model.Venta;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Arma el contenido de un ticket de venta en UTF-8.
+ *
+ * Cada hilo reutiliza su propio StringBuilder, codificador y buffer de bytes, así
+ * renderizar miles de tickets no crea un Writer, un String.format por línea ni un
+ * DateTimeFormatter por ticket. El buffer devuelto es del hilo que llamó y sigue
+ * siendo válido hasta su siguiente llamada a renderizar().
+ */
+public final class RenderizadorTicket {
+    private static final DateTimeFormatter FECHA_TICKET = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    private static final DateTimeFormatter FECHA_ARCHIVO = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+    private static final String SEPARADOR_DOBLE = "========================================\n";
+    private static final String SEPARADOR_SIMPLE = "----------------------------------------\n";
+    private static final int CAPACIDAD_INICIAL = 2048;
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private static final class Buffers {
+        final StringBuilder texto = new StringBuilder(CAPACIDAD_INICIAL);
+        final CharsetEncoder codificador = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(CAPACIDAD_INICIAL * 3);
+    }
+
+    private RenderizadorTicket() {
+    }
+
+    /**
+     * Renderiza el ticket de una venta
+     * @param venta la venta
+     * @param cliente el cliente de la venta
+     * @param detalles los detalles de la venta
+     * @param libros los libros vendidos, en el mismo orden que los detalles
+     * @return contenido del ticket en UTF-8, listo para leer (propio del hilo que llamó)
+     */
+    public static ByteBuffer renderizar(Venta venta, Cliente cliente, List<DetalleVenta> detalles, List<Libro> libros) {
+        Buffers buffers = BUFFERS.get();
+        StringBuilder sb = buffers.texto;
+        sb.setLength(0);
+
+        sb.append(SEPARADOR_DOBLE)
+          .append("        COZY BOOKS - TICKET DE VENTA\n")
+          .append(SEPARADOR_DOBLE).append('\n');
+
+        sb.append("ID Venta: ").append(venta.getIdVenta()).append('\n');
+        sb.append("Fecha: ");
+        FECHA_TICKET.formatTo(venta.getFecha(), sb);
+        sb.append('\n');
+        sb.append("Cliente: ").append(cliente.getNombre()).append('\n');
+        sb.append("Documento: ").append(cliente.getDocumento()).append('\n');
+        if (cliente.getEmail() != null && !cliente.getEmail().isEmpty()) {
+            sb.append("Email: ").append(cliente.getEmail()).append('\n');
+        }
+        sb.append("Método de Pago: ").append(venta.getMetodoPago()).append('\n');
+        sb.append("Estado: ").append(venta.getEstado()).append("\n\n");
+
+        sb.append(SEPARADOR_SIMPLE)
+          .append("DETALLES DE LA VENTA:\n")
+          .append(SEPARADOR_SIMPLE);
+
+        for (int i = 0; i < detalles.size(); i++) {
+            DetalleVenta detalle = detalles.get(i);
+            Libro libro = libros.get(i);
+
+            sb.append(i + 1).append(". ").append(libro.getTitulo()).append('\n');
+            sb.append("   Autor ID: ").append(libro.getIdAutor()).append('\n');
+            sb.append("   Tipo: ").append(libro.getTipoLibro()).append('\n');
+            sb.append("   Cantidad: ").append(detalle.getCantidad()).append('\n');
+            sb.append("   Precio Unitario: $");
+            agregarImporte(sb, detalle.getPrecioUnitario());
+            sb.append('\n');
+            sb.append("   Subtotal: $");
+            agregarImporte(sb, detalle.getSubtotal());
+            sb.append("\n\n");
+        }
+
+        sb.append(SEPARADOR_SIMPLE);
+        sb.append("TOTAL: $");
+        agregarImporte(sb, venta.getMonto());
+        sb.append('\n');
+        sb.append(SEPARADOR_DOBLE)
+          .append("¡Gracias por su compra!\n")
+          .append(SEPARADOR_DOBLE);
+
+        return codificar(buffers);
+    }
+
+    /**
+     * @param venta la venta
+     * @return nombre del archivo del ticket, "venta_ID_yyyy-MM-dd_HH-mm-ss.txt"
+     */
+    public static String nombreArchivo(Venta venta) {
+        StringBuilder sb = new StringBuilder(40);
+        sb.append("venta_").append(venta.getIdVenta()).append('_');
+        FECHA_ARCHIVO.formatTo(venta.getFecha(), sb);
+        return sb.append(".txt").toString();
+    }
+
+    /**
+     * Agrega un importe con dos decimales (redondeo HALF_UP, punto decimal)
+     * sin pasar por String.format ni por un String intermedio
+     */
+    static void agregarImporte(StringBuilder sb, BigDecimal importe) {
+        if (importe == null) {
+            sb.append("null");
+            return;
+        }
+        BigDecimal redondeado = importe.setScale(2, RoundingMode.HALF_UP);
+        if (redondeado.precision() > 18) {
+            // No entra en un long: caso que no se da en una venta real
+            sb.append(redondeado.toPlainString());
+            return;
+        }
+        long centavos = redondeado.unscaledValue().longValue();
+        if (centavos < 0) {
+            sb.append('-');
+            centavos = -centavos;
+        }
+        sb.append(centavos / 100).append('.');
+        int decimales = (int) (centavos % 100);
+        if (decimales < 10) {
+            sb.append('0');
+        }
+        sb.append(decimales);
+    }
+
+    private static ByteBuffer codificar(Buffers buffers) {
+        StringBuilder sb = buffers.texto;
+        int necesario = (int) (sb.length() * buffers.codificador.maxBytesPerChar());
+        if (buffers.bytes.capacity() < necesario) {
+            buffers.bytes = ByteBuffer.allocate(necesario);
+        }
+        ByteBuffer bytes = buffers.bytes;
+        bytes.clear();
+        CharsetEncoder codificador = buffers.codificador;
+        codificador.reset();
+        CoderResult resultado = codificador.encode(CharBuffer.wrap(sb), bytes, true);
+        if (!resultado.isUnderflow()) {
+            throw new IllegalStateException("No se pudo codificar el ticket: " + resultado);
+        }
+        codificador.flush(bytes);
+        bytes.flip();
+        return bytes;
+    }
+}
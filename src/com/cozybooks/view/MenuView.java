@@ -4,6 +4,16 @@ import com.cozybooks.controller.AutorController;
 import com.cozybooks.controller.ClienteController;
 import com.cozybooks.controller.LibroController;
 import com.cozybooks.controller.VentaController;
+import com.cozybooks.repository.AutorRepository;
+import com.cozybooks.repository.ClienteRepository;
+import com.cozybooks.repository.EscritorVentas;
+import com.cozybooks.repository.LibroRepository;
+import com.cozybooks.repository.ReservaStockRepository;
+import com.cozybooks.repository.StockEnMemoria;
+import com.cozybooks.repository.VentaRepository;
+import com.cozybooks.util.ArchivoTickets;
+import com.cozybooks.util.DBConnection;
+import com.cozybooks.util.GeneradorTicketAsincrono;
 
 import java.util.Scanner;
 
@@ -53,6 +63,7 @@ public class MenuView {
         System.out.println("2. Clientes");
         System.out.println("3. Libros");
         System.out.println("4. Ventas");
+        System.out.println("5. Estadísticas del Sistema");
         System.out.println("0. Salir");
         System.out.print("\nSeleccione una opción: ");
     }
@@ -77,6 +88,9 @@ public class MenuView {
                 case 4:
                     mostrarSubmenuVentas();
                     break;
+                case 5:
+                    mostrarEstadisticas();
+                    break;
                 case 0:
                     ejecutando = false;
                     break;
@@ -97,6 +111,34 @@ public class MenuView {
         }
     }
 
+    /**
+     * Muestra las métricas de rendimiento del sistema
+     */
+    private void mostrarEstadisticas() {
+        System.out.println("\n=== ESTADÍSTICAS DEL SISTEMA ===");
+        System.out.println("\n--- Base de datos ---");
+        System.out.println(DBConnection.reporteEstadisticas());
+        System.out.println("\n--- Catálogo de libros ---");
+        System.out.println(LibroRepository.reporteCache());
+        System.out.println(ReservaStockRepository.reporte());
+        System.out.println(StockEnMemoria.reporte());
+        System.out.println("\n--- Ventas ---");
+        System.out.println(EscritorVentas.getInstance().reporte());
+        System.out.println("Ventas PENDIENTE huérfanas eliminadas: " + VentaRepository.getPendientesEliminadas());
+        String errorLimpieza = VentaRepository.getUltimoErrorLimpieza();
+        if (errorLimpieza != null) {
+            System.out.println("Último error de la limpieza de ventas PENDIENTE: " + errorLimpieza);
+        }
+        System.out.println(GeneradorTicketAsincrono.getInstance().reporte());
+        if (ArchivoTickets.estaActivo()) {
+            System.out.println(ArchivoTickets.getInstance().reporte());
+        }
+        System.out.println("\n--- Clientes ---");
+        System.out.println(ClienteRepository.reporteCache());
+        System.out.println("\n--- Autores ---");
+        System.out.println(AutorRepository.reporteCache());
+    }
+
     /**
      * Muestra el submenú de Autores
      */
@@ -223,6 +265,7 @@ public class MenuView {
             System.out.println("3. Eliminar Libro");
             System.out.println("4. Listar Libros");
             System.out.println("5. Buscar Libro");
+            System.out.println("6. Autocompletar Título o Autor");
             System.out.println("0. Volver al menú principal");
             System.out.print("\nSeleccione una opción: ");
             
@@ -245,6 +288,9 @@ public class MenuView {
                     case 5:
                         libroController.buscarLibro();
                         break;
+                    case 6:
+                        libroController.autocompletar();
+                        break;
                     case 0:
                         continuar = false;
                         break;
@@ -279,6 +325,10 @@ public class MenuView {
             System.out.println("4. Listar Ventas");
             System.out.println("5. Buscar Venta");
             System.out.println("6. Generar Ticket");
+            System.out.println("7. Exportar Detalles de Venta (CSV)");
+            System.out.println("8. Extraer Ticket del Archivo");
+            System.out.println("9. Mantenimiento del Archivo de Tickets");
+            System.out.println("10. Regenerar Tickets por Rango de Fechas");
             System.out.println("0. Volver al menú principal");
             System.out.print("\nSeleccione una opción: ");
             
@@ -306,6 +356,18 @@ public class MenuView {
                         int idVenta = Integer.parseInt(scanner.nextLine().trim());
                         ventaController.generarTicket(idVenta);
                         break;
+                    case 7:
+                        ventaController.exportarDetalles();
+                        break;
+                    case 8:
+                        ventaController.extraerTicketArchivado();
+                        break;
+                    case 9:
+                        ventaController.mantenerArchivoTickets();
+                        break;
+                    case 10:
+                        ventaController.regenerarTickets();
+                        break;
                     case 0:
                         continuar = false;
                         break;